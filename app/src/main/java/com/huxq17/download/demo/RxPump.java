@@ -3,159 +3,77 @@ package com.huxq17.download.demo;
 
 import androidx.annotation.NonNull;
 
-import com.huxq17.download.PumpFactory;
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.DeliveryExecutors;
 import com.huxq17.download.core.DownloadInfo;
-import com.huxq17.download.core.service.IDownloadManager;
+import com.huxq17.download.core.DownloadListener;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import io.reactivex.Observable;
-import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.functions.Cancellable;
 
+/**
+ * A reactive view of the downloads. The queries of {@link Pump} are plain method calls,
+ * only the progress is offered as a stream.
+ */
 public class RxPump {
     /**
-     * Delete a download info by Tag
-     *
-     * @param tag tag
-     */
-    public static Observable<Boolean> deleteByTag(final String tag) {
-        return Observable.create(new ObservableOnSubscribe<Boolean>() {
-            @Override
-            public void subscribe(ObservableEmitter<Boolean> e) {
-                PumpFactory.getService(IDownloadManager.class).deleteByTag(tag);
-                e.onNext(true);
-                e.onComplete();
-            }
-        });
-    }
-
-    /**
-     * Delete a download info by unique download id. this method may delete a group of tasks.
-     *
-     * @param id unique download id,default is download url.
-     */
-    public static Observable<Boolean> deleteById(@NonNull final String id) {
-        return Observable.create(new ObservableOnSubscribe<Boolean>() {
-            @Override
-            public void subscribe(ObservableEmitter<Boolean> e) {
-                PumpFactory.getService(IDownloadManager.class).deleteById(id);
-                e.onNext(true);
-                e.onComplete();
-            }
-        });
-    }
-
-    /**
-     * Get a list of all download list.
-     *
-     * @return
-     */
-    public static Observable<List<DownloadInfo>> getAllDownloadList() {
-        return Observable.create(new ObservableOnSubscribe<List<DownloadInfo>>() {
-            @Override
-            public void subscribe(ObservableEmitter<List<DownloadInfo>> e) {
-                e.onNext(PumpFactory.getService(IDownloadManager.class).getAllDownloadList());
-                e.onComplete();
-            }
-        });
-    }
-
-    public static Observable<List<DownloadInfo>> getDownloadingList() {
-        return Observable.create(new ObservableOnSubscribe<List<DownloadInfo>>() {
-            @Override
-            public void subscribe(ObservableEmitter<List<DownloadInfo>> e) {
-                e.onNext(PumpFactory.getService(IDownloadManager.class).getDownloadingList());
-                e.onComplete();
-            }
-        });
-    }
-
-    public static Observable<List<DownloadInfo>> getDownloadedList() {
-        return Observable.create(new ObservableOnSubscribe<List<DownloadInfo>>() {
-            @Override
-            public void subscribe(ObservableEmitter<List<DownloadInfo>> e) {
-                e.onNext(PumpFactory.getService(IDownloadManager.class).getDownloadedList());
-                e.onComplete();
-            }
-        });
-    }
-
-    /**
-     * Get download list filter by tag.
-     *
-     * @param tag tag
-     * @return
-     */
-    public static Observable<List<DownloadInfo>> getDownloadListByTag(final String tag) {
-        return Observable.create(new ObservableOnSubscribe<List<DownloadInfo>>() {
-            @Override
-            public void subscribe(ObservableEmitter<List<DownloadInfo>> e) {
-                e.onNext(PumpFactory.getService(IDownloadManager.class).getDownloadListByTag(tag));
-                e.onComplete();
-            }
-        });
-    }
-
-    /**
-     * Get downloadInfo by unique download id.
+     * Observe the progress of a download off the main thread. The current download info is emitted on subscribe,
+     * a slow subscriber only receives the latest one,and the flow completes once the download is
+     * finished,failed,paused,stopped or deleted,at once if it already is.
+     * An id which isn't known fails the flow with {@link NoSuchElementException},
+     * so subscribe after the request has been submitted and admitted.
      *
      * @param id unique download id,default is download url.
-     * @return
      */
-    public static Observable<DownloadInfo> getDownloadInfoById(@NonNull final String id) {
-        return Observable.create(new ObservableOnSubscribe<DownloadInfo>() {
+    public static Flowable<DownloadInfo> observe(@NonNull final String id) {
+        return Flowable.create(new FlowableOnSubscribe<DownloadInfo>() {
             @Override
-            public void subscribe(ObservableEmitter<DownloadInfo> e) {
-                DownloadInfo downloadInfo =PumpFactory.getService(IDownloadManager.class).getDownloadInfoById(id);
-                if(downloadInfo!=null){
-                    e.onNext(downloadInfo);
-                    e.onComplete();
-                }else{
-                    e.onError(new Exception(id+"'s downloadInfo is null."));
+            public void subscribe(final FlowableEmitter<DownloadInfo> e) {
+                final AtomicBoolean hasEvent = new AtomicBoolean();
+                final DownloadListener downloadListener = new DownloadListener() {
+                    @Override
+                    public void onProgress(int progress) {
+                        hasEvent.set(true);
+                        emit(e, getDownloadInfo());
+                    }
+                };
+                e.setCancellable(new Cancellable() {
+                    @Override
+                    public void cancel() {
+                        Pump.unSubscribe(downloadListener);
+                    }
+                });
+                downloadListener.setWatchedIds(id);
+                //Subscribed before the query,so an end between the two isn't missed.
+                Pump.subscribe(downloadListener, DeliveryExecutors.direct());
+                DownloadInfo downloadInfo = Pump.getDownloadInfoById(id);
+                if (downloadInfo == null) {
+                    e.onError(new NoSuchElementException("No download of id " + id));
+                } else if (!hasEvent.get()) {
+                    emit(e, downloadInfo);
                 }
             }
-        });
+        }, BackpressureStrategy.LATEST);
     }
 
-    /**
-     * Check url whether download success
-     *
-     * @param id unique download id,default is download url.
-     * @return true If Pump has downloaded
-     */
-    public static Observable<Boolean> hasDownloadSucceed(@NonNull final String id) {
-        return Observable.create(new ObservableOnSubscribe<Boolean>() {
-            @Override
-            public void subscribe(ObservableEmitter<Boolean> e) {
-                e.onNext(PumpFactory.getService(IDownloadManager.class).hasDownloadSucceed(id));
+    private static void emit(FlowableEmitter<DownloadInfo> e, DownloadInfo downloadInfo) {
+        e.onNext(downloadInfo);
+        switch (downloadInfo.getStatus()) {
+            case FINISHED:
+            case FAILED:
+            case PAUSED:
+            case STOPPED:
+            case DELETED:
                 e.onComplete();
-            }
-        });
+                break;
+            default:
+                break;
+        }
     }
-
-    /**
-     * If url had download successful,return the local file
-     *
-     * @param id unique download id,default is download url.
-     * @return the file has downloaded.
-     */
-    public static Observable<File> getFileIfSucceed(@NonNull final String id) {
-        return Observable.create(new ObservableOnSubscribe<File>() {
-            @Override
-            public void subscribe(ObservableEmitter<File> e) {
-                File file = PumpFactory.getService(IDownloadManager.class).getFileIfSucceed(id);
-                if(file!=null){
-                    e.onNext(file);
-                    e.onComplete();
-                }else{
-                    e.onError(new FileNotFoundException(id+" have not download successful yet."));
-                }
-
-            }
-        });
-    }
-
 }
@@ -1,6 +1,5 @@
 package com.huxq17.download.demo.remote;
 
-import android.annotation.SuppressLint;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -26,7 +25,6 @@ import com.huxq17.download.Pump;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadListener;
 import com.huxq17.download.demo.R;
-import com.huxq17.download.demo.RxPump;
 import com.huxq17.download.demo.Utils;
 import com.huxq17.download.utils.LogUtil;
 
@@ -35,6 +33,7 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableSource;
@@ -107,7 +106,12 @@ public class RemoteDownloadListActivity extends AppCompatActivity {
         downloadObserver.enable();
         recyclerView = findViewById(R.id.rvDownloadList);
 
-        Observable<Map<String, DownloadInfo>> downloadList = RxPump.getAllDownloadList()
+        Observable<Map<String, DownloadInfo>> downloadList = Observable.fromCallable(new Callable<List<DownloadInfo>>() {
+                    @Override
+                    public List<DownloadInfo> call() {
+                        return Pump.getAllDownloadList();
+                    }
+                })
                 .concatMap(new Function<List<DownloadInfo>, ObservableSource<DownloadInfo>>() {
                     @Override
                     public ObservableSource<DownloadInfo> apply(List<DownloadInfo> downloadInfoList) {
@@ -179,7 +183,6 @@ public class RemoteDownloadListActivity extends AppCompatActivity {
             return new DownloadViewHolder(v, this);
         }
 
-        @SuppressLint("CheckResult")
         @Override
         public void onBindViewHolder(@NonNull final DownloadViewHolder viewHolder, int i) {
             final Music music = musicList.get(i);
@@ -188,21 +191,8 @@ public class RemoteDownloadListActivity extends AppCompatActivity {
                 downloadInfo.setExtraData(viewHolder);
             }
             map.put(music.id, viewHolder);
-            RxPump.getDownloadInfoById(music.id)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new Consumer<DownloadInfo>() {
-                        @Override
-                        public void accept(DownloadInfo downloadInfo) throws Exception {
-                            music.downloadInfo = downloadInfo;
-                            viewHolder.bindData(music);
-                        }
-                    }, new Consumer<Throwable>() {
-                        @Override
-                        public void accept(Throwable throwable) throws Exception {
-                            viewHolder.bindData(music);
-                        }
-                    });
+            //The download info is kept up to date by downloadObserver.
+            viewHolder.bindData(music);
         }
 
         public void delete(DownloadViewHolder viewHolder) {
@@ -0,0 +1,53 @@
+package com.huxq17.download.core;
+
+import android.content.Context;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.config.DownloadConfigService;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.core.service.IMessageCenter;
+import com.huxq17.download.utils.LogUtil;
+import com.huxq17.download.utils.ReflectUtil;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Registers the services the engine needs without DownloadProvider,which is only started on a device.
+ */
+public class BenchmarkEnvironment {
+    private static boolean isInitialized;
+
+    public static synchronized void init() {
+        if (isInitialized) {
+            return;
+        }
+        LogUtil.mEnableLog = false;
+        PumpFactory.addService(IDownloadConfigService.class, ReflectUtil.newInstance(DownloadConfigService.class));
+        PumpFactory.addService(IMessageCenter.class, new IMessageCenter() {
+            @Override
+            public void start(Context context) {
+            }
+
+            @Override
+            public void register(DownloadListener downloadListener) {
+            }
+
+            @Override
+            public void register(DownloadListener downloadListener, Executor executor) {
+            }
+
+            @Override
+            public void unRegister(String url) {
+            }
+
+            @Override
+            public void unRegister(DownloadListener downloadListener) {
+            }
+
+            @Override
+            public void notifyProgressChanged(DownloadDetailsInfo downloadInfo) {
+            }
+        });
+        isInitialized = true;
+    }
+}
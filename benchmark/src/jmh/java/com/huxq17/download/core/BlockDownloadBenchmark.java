@@ -0,0 +1,86 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.core.task.DownloadBlockTask;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Measures the read/write loop of {@link DownloadBlockTask} against an in-process HTTP server.
+ */
+@State(Scope.Thread)
+public class BlockDownloadBenchmark {
+    @Param({"65536", "4194304"})
+    public int contentLength;
+
+    private MockWebServer server;
+    private OkHttpClient okHttpClient;
+    private File downloadDir;
+    private String url;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkEnvironment.init();
+        final byte[] body = new byte[contentLength];
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(new Buffer().write(body));
+            }
+        });
+        server.start();
+        url = server.url("/block").toString();
+        okHttpClient = new OkHttpClient();
+        downloadDir = new File(System.getProperty("java.io.tmpdir"), "pump-block-benchmark");
+        downloadDir.mkdirs();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+        FileUtil.deleteDir(downloadDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTempDir() {
+        FileUtil.deleteDir(new File(downloadDir, ".block.temp"));
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        DownloadRequest downloadRequest = new DownloadRequest(DownloadRequest.newRequest(url,
+                new File(downloadDir, "block").getAbsolutePath()));
+        DownloadDetailsInfo downloadInfo = new DownloadDetailsInfo(url, null);
+        downloadRequest.setDownloadInfo(downloadInfo);
+        downloadInfo.setDownloadRequest(downloadRequest);
+        downloadInfo.setThreadNum(1);
+        downloadInfo.setContentLength(contentLength);
+        new DownloadTask(downloadRequest);
+        DownloadConnection connection = new OkHttpDownloadConnection(okHttpClient,
+                downloadRequest.getHttpRequestBuilder());
+        connection.connect();
+        DownloadBlockTask blockTask = new DownloadBlockTask(downloadRequest, 0, connection);
+        blockTask.run();
+        return downloadInfo.getCompletedSize();
+    }
+}
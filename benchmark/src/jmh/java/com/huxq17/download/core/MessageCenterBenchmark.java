@@ -0,0 +1,55 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadInfoSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures delivering one progress snapshot to N listeners,the work done on the main thread per message.
+ */
+@State(Scope.Thread)
+public class MessageCenterBenchmark {
+    @Param({"1", "10", "100"})
+    public int listenerCount;
+
+    private MessageCenter messageCenter;
+    private DownloadDetailsInfo downloadInfo;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        BenchmarkEnvironment.init();
+        messageCenter = new MessageCenter();
+        for (int i = 0; i < listenerCount; i++) {
+            DownloadListener downloadListener = new DownloadListener() {
+                @Override
+                public void onProgress(int progress) {
+                    blackhole.consume(progress);
+                }
+            };
+            messageCenter.register(downloadListener);
+        }
+        downloadInfo = new DownloadDetailsInfo("http://localhost/id0", "/tmp/id0", null, "id0",
+                System.currentTimeMillis());
+        downloadInfo.setStatus(DownloadInfo.Status.RUNNING);
+        downloadInfo.setContentLength(100);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        downloadInfo.setCompletedSize(downloadInfo.getCompletedSize() % 100 + 1);
+        messageCenter.handleDownloadInfoSnapshot(messageCenter.getObserverIterator(), downloadInfo.snapshot());
+    }
+
+    @Benchmark
+    public void dispatchPooled() {
+        downloadInfo.setCompletedSize(downloadInfo.getCompletedSize() % 100 + 1);
+        DownloadInfoSnapshot snapshot = downloadInfo.obtainSnapshot();
+        messageCenter.handleDownloadInfoSnapshot(messageCenter.getObserverIterator(), snapshot);
+        snapshot.recycle();
+    }
+}
@@ -0,0 +1,28 @@
+package com.huxq17.download.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SpeedMonitorBenchmark {
+    private SpeedMonitor speedMonitor;
+
+    @Setup
+    public void setup() {
+        speedMonitor = new SpeedMonitor();
+    }
+
+    @Benchmark
+    public long downloadAndGetBytesPerSecond() {
+        speedMonitor.download(8092);
+        return speedMonitor.getBytesPerSecond();
+    }
+
+    @Benchmark
+    public String downloadAndGetSpeed() {
+        speedMonitor.download(8092);
+        return speedMonitor.getSpeed();
+    }
+}
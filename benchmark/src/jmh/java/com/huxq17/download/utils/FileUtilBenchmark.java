@@ -0,0 +1,58 @@
+package com.huxq17.download.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+
+/**
+ * Measures merging the block files of a 16MB download.
+ */
+@State(Scope.Thread)
+public class FileUtilBenchmark {
+    private static final int TOTAL_LENGTH = 16 * 1024 * 1024;
+    @Param({"2", "6"})
+    public int partCount;
+
+    private File tempDir;
+    private File[] partFiles;
+    private File dest;
+
+    @Setup(Level.Invocation)
+    public void createPartFiles() throws IOException {
+        LogUtil.mEnableLog = false;
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "pump-merge-benchmark");
+        tempDir.mkdirs();
+        dest = new File(tempDir, "merged");
+        partFiles = new File[partCount];
+        byte[] part = new byte[TOTAL_LENGTH / partCount];
+        for (int i = 0; i < partCount; i++) {
+            partFiles[i] = new File(tempDir, DOWNLOAD_PART + i);
+            FileOutputStream outputStream = new FileOutputStream(partFiles[i]);
+            try {
+                outputStream.write(part);
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFiles() {
+        FileUtil.deleteDir(tempDir);
+    }
+
+    @Benchmark
+    public boolean mergeFiles() {
+        return FileUtil.mergeFiles(partFiles, dest);
+    }
+}
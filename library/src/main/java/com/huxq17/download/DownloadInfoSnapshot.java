@@ -1,10 +1,29 @@
 package com.huxq17.download;
 
+import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadInfo;
 
+/**
+ * A pooled progress event,which is delivered to listeners instead of allocating a {@link DownloadInfo}
+ * for every progress update.
+ * <p>
+ * A snapshot is owned by the message center and is recycled as soon as all listeners have been called,
+ * so listeners must not keep a reference to it. Call {@link #getDownloadInfo()} to keep an immutable copy,
+ * it is built on first call and shared by all listeners of the event.
+ */
 public class DownloadInfoSnapshot {
+    private static final int MAX_POOL_SIZE = 50;
     public long completedSize;
+    public long contentLength;
+    public long decodedSize;
+    public int progress;
+    public int finished;
     public DownloadInfo.Status status;
+    public ErrorCode errorCode;
+    public long bytesPerSecond;
+    public long instantBytesPerSecond;
+    public long remainingTime;
+    public DownloadDetailsInfo downloadDetailsInfo;
     public DownloadInfo downloadInfo;
     private static DownloadInfoSnapshot sPool;
     private static int sPoolSize = 0;
@@ -24,14 +43,39 @@ public class DownloadInfoSnapshot {
         return new DownloadInfoSnapshot();
     }
 
+    public String getId() {
+        return downloadDetailsInfo.getId();
+    }
+
+    /**
+     * @return the immutable download info of this event.
+     */
+    public DownloadInfo getDownloadInfo() {
+        if (downloadInfo == null) {
+            downloadInfo = downloadDetailsInfo.snapshot(this);
+        }
+        return downloadInfo;
+    }
+
     public void recycle() {
         completedSize = 0;
+        contentLength = 0;
+        decodedSize = 0;
+        progress = 0;
+        finished = 0;
         status = null;
+        errorCode = null;
+        bytesPerSecond = 0;
+        instantBytesPerSecond = 0;
+        remainingTime = 0;
+        downloadDetailsInfo = null;
         downloadInfo = null;
         synchronized (DownloadInfoSnapshot.class) {
-            next = sPool;
-            sPool = this;
-            sPoolSize++;
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
         }
     }
 
@@ -49,4 +93,4 @@ public class DownloadInfoSnapshot {
     public static int getPoolSize() {
         return sPoolSize;
     }
-}
\ No newline at end of file
+}
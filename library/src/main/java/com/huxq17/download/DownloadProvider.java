@@ -71,6 +71,46 @@ public class DownloadProvider extends ContentProvider {
         public static final String ETAG = "eTag";
     }
 
+    public static final class ContentCacheTable {
+        public static final String TABLE_NAME = "content_cache";
+        public static final String URL = "url";
+        public static final String ETAG = "eTag";
+        public static final String LAST_MODIFIED = "last_modified";
+        public static final String CONTENT_HASH = "content_hash";
+        public static final String NAME = "name";
+        public static final String LENGTH = "length";
+        public static final String EXPIRES = "expires";
+        public static final String LAST_ACCESS = "last_access";
+        public static final String PINNED = "pinned";
+    }
+
+    public static final class ContentCacheBean {
+        public String url;
+        public String eTag;
+        public String lastModified;
+        public String contentHash;
+        public String name;
+        public long length;
+        public long expires;
+        public long lastAccess;
+        public boolean pinned;
+
+        public ContentCacheBean(String url, String eTag, String lastModified, String contentHash,
+                                String name, long length, long expires) {
+            this.url = url;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.name = name;
+            this.length = length;
+            this.expires = expires;
+        }
+
+        public boolean isFresh() {
+            return expires > System.currentTimeMillis();
+        }
+    }
+
     public static final class CacheBean {
         public String lastModified;
         public String eTag;
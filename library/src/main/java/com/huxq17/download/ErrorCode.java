@@ -37,5 +37,13 @@ public enum ErrorCode {
     /**
      * file's end is less than it's start.
      */
-    ERROR_FILE_OUT_LIMIT;
+    ERROR_FILE_OUT_LIMIT,
+    /**
+     * Apply patch failed or the patched file's md5 doesn't match.
+     */
+    ERROR_PATCH_FAILED,
+    /**
+     * Extract the downloaded archive failed.
+     */
+    ERROR_EXTRACT_FAILED;
 }
@@ -3,15 +3,22 @@ package com.huxq17.download;
 
 import androidx.annotation.NonNull;
 
+import com.huxq17.download.callback.Func;
 import com.huxq17.download.config.DownloadConfig;
+import com.huxq17.download.core.ContentCache;
+import com.huxq17.download.core.DeliveryExecutors;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.FairShareScheduler;
+import com.huxq17.download.core.metrics.DownloadMetrics;
 import com.huxq17.download.core.service.IDownloadManager;
 import com.huxq17.download.core.DownloadListener;
 import com.huxq17.download.core.service.IMessageCenter;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 public class Pump {
     public static DownloadConfig.Builder newConfigBuilder(){
@@ -57,6 +64,17 @@ public class Pump {
         PumpFactory.getService(IMessageCenter.class).register(downloadListener);
     }
 
+    /**
+     * subscribe {@link DownloadListener} whose callbacks are delivered on the executor instead of the main thread,
+     * see {@link DeliveryExecutors}. If the listener can't keep up,it only receives the latest state of each download.
+     *
+     * @param downloadListener downloadListener
+     * @param executor         executor to deliver callbacks
+     */
+    public static void subscribe(DownloadListener downloadListener, Executor executor) {
+        PumpFactory.getService(IMessageCenter.class).register(downloadListener, executor);
+    }
+
     /**
      * unSubscribe url download progress.
      *
@@ -94,7 +112,7 @@ public class Pump {
     }
 
     /**
-     * Delete a download by Tag,to delete a group of task.
+     * Delete a download by Tag,to delete a group of task. It returns at once,see {@link #delete(List, Func)}.
      *
      * @param tag tag th tag of group.
      */
@@ -103,7 +121,31 @@ public class Pump {
     }
 
     /**
-     * Delete a download by special download id.
+     * Delete a group of downloads in the background,see {@link #delete(List, Func)}.
+     *
+     * @param tag      the tag of group.
+     * @param callback called on the main thread with the deleted ids when the deletion is done,can be null.
+     * @return the future of the deleted ids.
+     */
+    public static Future<List<String>> deleteByTag(String tag, Func<List<String>> callback) {
+        return PumpFactory.getService(IDownloadManager.class).deleteByTag(tag, callback);
+    }
+
+    /**
+     * Delete downloads in the background. They are stopped and removed from the download lists at once,
+     * then their records are deleted in one database transaction and their files are deleted by a few threads.
+     * A download submitted again before the deletion is done starts after it.
+     *
+     * @param ids      unique download ids.
+     * @param callback called on the main thread with the deleted ids when the deletion is done,can be null.
+     * @return the future of the deleted ids.
+     */
+    public static Future<List<String>> delete(List<String> ids, Func<List<String>> callback) {
+        return PumpFactory.getService(IDownloadManager.class).delete(ids, callback);
+    }
+
+    /**
+     * Delete a download by special download id. It returns at once,see {@link #delete(List, Func)}.
      *
      * @param id unique download id,default is download url.
      */
@@ -151,6 +193,26 @@ public class Pump {
         return PumpFactory.getService(IDownloadManager.class).getDownloadListByTag(tag);
     }
 
+    /**
+     * Get the count of downloads of the tag without building the list.
+     *
+     * @param tag tag
+     */
+    public static int getDownloadCountByTag(String tag) {
+        return PumpFactory.getService(IDownloadManager.class).getDownloadCountByTag(tag);
+    }
+
+    /**
+     * Get the count of downloads in the status without building the list,
+     * a finished download whose file was deleted is counted as {@link DownloadInfo.Status#FINISHED}
+     * until it is listed.
+     *
+     * @param status status of downloads
+     */
+    public static int getDownloadCountByStatus(DownloadInfo.Status status) {
+        return PumpFactory.getService(IDownloadManager.class).getDownloadCountByStatus(status);
+    }
+
     /**
      * Get downloadInfo by unique download id.
      *
@@ -181,4 +243,32 @@ public class Pump {
         return PumpFactory.getService(IDownloadManager.class).getFileIfSucceed(id);
     }
 
+    /**
+     * Get the aggregated counters of all downloads,such as active connections,queue depth and bytes per second.
+     *
+     * @return download metrics
+     */
+    public static DownloadMetrics getDownloadMetrics() {
+        return DownloadMetrics.getInstance();
+    }
+
+    /**
+     * Get the scheduler that shares the running slots and the bandwidth among tags by weight.
+     *
+     * @return fair share scheduler
+     */
+    public static FairShareScheduler getFairShareScheduler() {
+        return FairShareScheduler.getInstance();
+    }
+
+    /**
+     * Pin the content cache entries of url,so that they are never evicted.
+     *
+     * @param url    download url
+     * @param pinned true to pin,false to unpin.
+     */
+    public static void setCachePinned(String url, boolean pinned) {
+        ContentCache.getInstance().setPinned(url, pinned);
+    }
+
 }
@@ -2,14 +2,20 @@ package com.huxq17.download.config;
 
 import com.huxq17.download.PumpFactory;
 import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DurabilityPolicy;
 import com.huxq17.download.core.connection.DownloadConnection;
 import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.core.metrics.DownloadMetricsListener;
+import com.huxq17.download.core.schedule.FifoSchedulingPolicy;
+import com.huxq17.download.core.schedule.SchedulingPolicy;
 import com.huxq17.download.core.service.IDownloadConfigService;
 import com.huxq17.download.utils.OKHttpUtil;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DownloadConfig {
     /**
@@ -20,9 +26,59 @@ public class DownloadConfig {
      * 最小可用的内存空间
      */
     private long minUsableStorageSpace = 4 * 1024L;
+    /**
+     * 相同资源的请求是否共用一次下载
+     */
+    private boolean transferSharingEnabled = true;
+    /**
+     * 下载内容缓存的最大容量，0表示不缓存
+     */
+    private long contentCacheSize = 0;
+    /**
+     * 异步传输引擎的工作线程数，0表示每个分块使用一个线程
+     */
+    private int transferWorkerCount = 0;
+    /**
+     * 小于等于该大小的文件不分块，直接下载
+     */
+    private long smallFileThreshold = 64 * 1024L;
+    /**
+     * 是否为预留的磁盘空间预先分配文件
+     */
+    private boolean spacePreallocationEnabled = false;
+    /**
+     * 所有下载共用的最大带宽（字节/秒），按标签的权重分配，0表示不限制
+     */
+    private long maxBandwidth = 0;
+    /**
+     * 标签的调度权重，未设置的标签权重为1
+     */
+    private Map<String, Integer> tagWeights = new HashMap<>();
+    /**
+     * 默认执行器选择下一个任务的调度策略
+     */
+    private SchedulingPolicy schedulingPolicy = new FifoSchedulingPolicy();
+    /**
+     * 下载数据写入存储设备的策略
+     */
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
+    /**
+     * 定期检查点的间隔（毫秒）
+     */
+    private long checkpointInterval = 2000;
+    /**
+     * 预热排队中前几个任务的主机连接，0表示不预热
+     */
+    private int prewarmCount = 0;
+    /**
+     * 写磁盘线程数，0表示由下载线程直接写文件
+     */
+    private int diskWriterCount = 0;
 
     private DownloadConnection.Factory connectionFactory;
     private List<DownloadInterceptor> interceptors = new ArrayList<>();
+    private List<DownloadMetricsListener> metricsListeners = new ArrayList<>();
+    private List<DownloadMetricsListener> unmodifiableMetricsListeners = Collections.unmodifiableList(metricsListeners);
 
     private DownloadConfig() {
     }
@@ -35,6 +91,55 @@ public class DownloadConfig {
         return minUsableStorageSpace;
     }
 
+    public boolean isTransferSharingEnabled() {
+        return transferSharingEnabled;
+    }
+
+    public long getContentCacheSize() {
+        return contentCacheSize;
+    }
+
+    public int getTransferWorkerCount() {
+        return transferWorkerCount;
+    }
+
+    public long getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
+    public boolean isSpacePreallocationEnabled() {
+        return spacePreallocationEnabled;
+    }
+
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    public int getTagWeight(String tag) {
+        Integer weight = tagWeights.get(tag);
+        return weight == null ? 1 : weight;
+    }
+
+    public SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public int getPrewarmCount() {
+        return prewarmCount;
+    }
+
+    public int getDiskWriterCount() {
+        return diskWriterCount;
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -43,6 +148,10 @@ public class DownloadConfig {
         return Collections.unmodifiableList(interceptors);
     }
 
+    public List<DownloadMetricsListener> getMetricsListeners() {
+        return unmodifiableMetricsListeners;
+    }
+
     public DownloadConnection.Factory getDownloadConnectionFactory() {
         return connectionFactory == null ? new OkHttpDownloadConnection.Factory(OKHttpUtil.get())
                 : connectionFactory;
@@ -76,11 +185,175 @@ public class DownloadConfig {
             return this;
         }
 
+        /**
+         * Set whether requests with different ids but the same url and headers share one network
+         * transfer, default true. Every request still gets its own file and progress.
+         *
+         * @param enabled true to share transfers
+         */
+        public Builder setTransferSharingEnabled(boolean enabled) {
+            downloadConfig.transferSharingEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Set the maximum size of the content cache, default 0 which disables it.
+         * Finished downloads are kept in the cache and served again without network while they are
+         * fresh,or after the server confirmed they are unchanged. Entries are keyed by url,so the requests
+         * with custom headers are neither cached nor served from the cache.
+         *
+         * @param contentCacheSize maximum size in bytes
+         */
+        public Builder setContentCacheSize(long contentCacheSize) {
+            downloadConfig.contentCacheSize = contentCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the worker count of the async transfer engine, default 0 which runs every block on its own thread.
+         * When it is greater than 0,blocks connect with OkHttp's async call and are read by this many
+         * shared workers, the count is read when the engine is first used.
+         *
+         * @param transferWorkerCount worker count of the async transfer engine
+         */
+        public Builder setTransferWorkerCount(int transferWorkerCount) {
+            downloadConfig.transferWorkerCount = transferWorkerCount;
+            return this;
+        }
+
+        /**
+         * Set the maximum content length of the small file fast path, default is 64kb.
+         * Small files are downloaded in one request without temp dir and block files, and are not resumable.
+         * Set it to -1 to disable the fast path.
+         *
+         * @param smallFileThreshold maximum content length in bytes
+         */
+        public Builder setSmallFileThreshold(long smallFileThreshold) {
+            downloadConfig.smallFileThreshold = smallFileThreshold;
+            return this;
+        }
+
+        /**
+         * Set whether the space reserved by a download is preallocated on disk, default false.
+         * Preallocation fails early if the file system can't provide the space, it is only supported
+         * since Android 5.0.
+         *
+         * @param enabled true to preallocate
+         */
+        public Builder setSpacePreallocationEnabled(boolean enabled) {
+            downloadConfig.spacePreallocationEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Set the bandwidth shared by all downloads, default 0 which is unlimited.
+         * The bandwidth is divided among the tags that are downloading by their weights,
+         * see {@link #setTagWeight(String, int)}.
+         *
+         * @param maxBandwidth bytes per second
+         */
+        public Builder setMaxBandwidth(long maxBandwidth) {
+            downloadConfig.maxBandwidth = maxBandwidth;
+            return this;
+        }
+
+        /**
+         * Set the weight of a tag, default 1. The running slots of the default executor and the bandwidth
+         * are shared among the tags in proportion to their weights,and the share of an idle tag is
+         * used by the others. Weights can be changed at runtime by {@link com.huxq17.download.core.FairShareScheduler}.
+         *
+         * @param tag    the tag of downloads,empty for the downloads without tag.
+         * @param weight weight of the tag,at least 1.
+         */
+        public Builder setTagWeight(String tag, int weight) {
+            downloadConfig.tagWeights.put(tag == null ? "" : tag, Math.max(1, weight));
+            return this;
+        }
+
+        /**
+         * Set the policy that decides which queued task the default executor runs next,
+         * default {@link FifoSchedulingPolicy}. See also {@link com.huxq17.download.core.schedule.PrioritySchedulingPolicy}
+         * and {@link com.huxq17.download.core.schedule.SrptSchedulingPolicy}.
+         * The slots are still shared among tags by weight,the policy orders the tasks within a tag.
+         *
+         * @param schedulingPolicy scheduling policy
+         */
+        public Builder setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+            if (schedulingPolicy == null) {
+                throw new IllegalArgumentException("schedulingPolicy can not be null.");
+            }
+            downloadConfig.schedulingPolicy = schedulingPolicy;
+            return this;
+        }
+
+        /**
+         * Set how downloaded data is flushed to the storage device, default {@link DurabilityPolicy#NONE}.
+         * With {@link DurabilityPolicy#PERIODIC} the block files and their lengths are synced at every
+         * checkpoint interval,in one round for all running downloads,and a download resumes from its last
+         * checkpoint after power loss. Partial downloads of another policy are downloaded again.
+         *
+         * @param durabilityPolicy durability policy
+         */
+        public Builder setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+            if (durabilityPolicy == null) {
+                throw new IllegalArgumentException("durabilityPolicy can not be null.");
+            }
+            downloadConfig.durabilityPolicy = durabilityPolicy;
+            return this;
+        }
+
+        /**
+         * Set the checkpoint interval of {@link DurabilityPolicy#PERIODIC}, default 2 seconds.
+         * A shorter interval loses less after power loss but syncs more often.
+         *
+         * @param checkpointInterval interval in milliseconds
+         */
+        public Builder setCheckpointInterval(long checkpointInterval) {
+            downloadConfig.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * Set how many queued downloads of the default executor to prewarm, default 0 which disables it.
+         * The hosts of the downloads likely to run next are resolved and connected ahead with a HEAD request,
+         * and the idle connections are kept in the OkHttp connection pool for the downloads to reuse.
+         * It only applies to the default OkHttp connections.
+         *
+         * @param prewarmCount count of queued downloads to look ahead
+         */
+        public Builder setPrewarmCount(int prewarmCount) {
+            downloadConfig.prewarmCount = prewarmCount;
+            return this;
+        }
+
+        /**
+         * Set the count of the disk writer threads, default 0 which writes on the download threads.
+         * When it is greater than 0,the downloaded data is handed to the writers and written in large chunks,
+         * so reading the network doesn't wait for the disk unless the writers fall behind.
+         * It only applies to the default OkHttp connections, the count is read when the writers are first used.
+         *
+         * @param diskWriterCount count of the disk writer threads
+         */
+        public Builder setDiskWriterCount(int diskWriterCount) {
+            downloadConfig.diskWriterCount = diskWriterCount;
+            return this;
+        }
+
         public Builder addDownloadInterceptor(DownloadInterceptor interceptor) {
             downloadConfig.interceptors.add(interceptor);
             return this;
         }
 
+        /**
+         * Add a listener to receive the metrics of every phase of downloads.
+         *
+         * @param metricsListener metrics listener
+         */
+        public Builder addMetricsListener(DownloadMetricsListener metricsListener) {
+            downloadConfig.metricsListeners.add(metricsListener);
+            return this;
+        }
+
         public Builder setDownloadConnectionFactory(DownloadConnection.Factory factory) {
             downloadConfig.connectionFactory = factory;
             return this;
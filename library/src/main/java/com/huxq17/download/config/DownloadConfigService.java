@@ -2,8 +2,12 @@ package com.huxq17.download.config;
 
 
 import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DurabilityPolicy;
 import com.huxq17.download.core.connection.DownloadConnection;
 import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.core.metrics.DownloadMetricsListener;
+import com.huxq17.download.core.schedule.FifoSchedulingPolicy;
+import com.huxq17.download.core.schedule.SchedulingPolicy;
 import com.huxq17.download.core.service.IDownloadConfigService;
 import com.huxq17.download.utils.OKHttpUtil;
 
@@ -19,6 +23,17 @@ public class DownloadConfigService implements IDownloadConfigService {
      * 最小可用的内存空间
      */
     private long minUsableStorageSpace = 4 * 1024L;
+    private boolean transferSharingEnabled = true;
+    private long contentCacheSize = 0;
+    private int transferWorkerCount = 0;
+    private long smallFileThreshold = 64 * 1024L;
+    private boolean spacePreallocationEnabled = false;
+    private long maxBandwidth = 0;
+    private SchedulingPolicy schedulingPolicy = new FifoSchedulingPolicy();
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
+    private long checkpointInterval = 2000;
+    private int prewarmCount = 0;
+    private int diskWriterCount = 0;
     private DownloadConfig downloadConfig;
     private DownloadConnection.Factory connectionFactory;
     private List<DownloadInterceptor> interceptors;
@@ -45,6 +60,101 @@ public class DownloadConfigService implements IDownloadConfigService {
         return downloadConfig.getMinUsableSpace();
     }
 
+    @Override
+    public boolean isTransferSharingEnabled() {
+        if (downloadConfig == null) {
+            return transferSharingEnabled;
+        }
+        return downloadConfig.isTransferSharingEnabled();
+    }
+
+    @Override
+    public long getContentCacheSize() {
+        if (downloadConfig == null) {
+            return contentCacheSize;
+        }
+        return downloadConfig.getContentCacheSize();
+    }
+
+    @Override
+    public int getTransferWorkerCount() {
+        if (downloadConfig == null) {
+            return transferWorkerCount;
+        }
+        return downloadConfig.getTransferWorkerCount();
+    }
+
+    @Override
+    public long getSmallFileThreshold() {
+        if (downloadConfig == null) {
+            return smallFileThreshold;
+        }
+        return downloadConfig.getSmallFileThreshold();
+    }
+
+    @Override
+    public boolean isSpacePreallocationEnabled() {
+        if (downloadConfig == null) {
+            return spacePreallocationEnabled;
+        }
+        return downloadConfig.isSpacePreallocationEnabled();
+    }
+
+    @Override
+    public long getMaxBandwidth() {
+        if (downloadConfig == null) {
+            return maxBandwidth;
+        }
+        return downloadConfig.getMaxBandwidth();
+    }
+
+    @Override
+    public int getTagWeight(String tag) {
+        if (downloadConfig == null) {
+            return 1;
+        }
+        return downloadConfig.getTagWeight(tag);
+    }
+
+    @Override
+    public SchedulingPolicy getSchedulingPolicy() {
+        if (downloadConfig == null) {
+            return schedulingPolicy;
+        }
+        return downloadConfig.getSchedulingPolicy();
+    }
+
+    @Override
+    public DurabilityPolicy getDurabilityPolicy() {
+        if (downloadConfig == null) {
+            return durabilityPolicy;
+        }
+        return downloadConfig.getDurabilityPolicy();
+    }
+
+    @Override
+    public long getCheckpointInterval() {
+        if (downloadConfig == null) {
+            return checkpointInterval;
+        }
+        return downloadConfig.getCheckpointInterval();
+    }
+
+    @Override
+    public int getPrewarmCount() {
+        if (downloadConfig == null) {
+            return prewarmCount;
+        }
+        return downloadConfig.getPrewarmCount();
+    }
+
+    @Override
+    public int getDiskWriterCount() {
+        if (downloadConfig == null) {
+            return diskWriterCount;
+        }
+        return downloadConfig.getDiskWriterCount();
+    }
 
     public List<DownloadInterceptor> getDownloadInterceptors() {
         if (downloadConfig == null) {
@@ -55,6 +165,14 @@ public class DownloadConfigService implements IDownloadConfigService {
         return interceptors;
     }
 
+    @Override
+    public List<DownloadMetricsListener> getMetricsListeners() {
+        if (downloadConfig == null) {
+            return Collections.emptyList();
+        }
+        return downloadConfig.getMetricsListeners();
+    }
+
     @Override
     public DownloadConnection.Factory getDownloadConnectionFactory() {
         if (downloadConfig == null) {
@@ -0,0 +1,158 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadConfigService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the block transfers of all downloads on a small fixed pool of workers instead of one thread per block.
+ * Blocks connect through OkHttp's async call and are read in slices,
+ * see {@link com.huxq17.download.core.task.DownloadBlockTask#enqueue()}.
+ * <p>
+ * OkHttp has no non-blocking read,so the workers only copy the bytes that are already buffered in the response
+ * source and never wait on a socket. Waiting for more bytes runs on a small fixed pool of waiters,
+ * {@link #WAITERS_PER_WORKER} per worker,see {@link #executeWaiting(Runnable)}. The waits beyond that queue up,
+ * and a stalled socket holds its waiter no longer than the read timeout of the client,
+ * so the thread count stays fixed however many blocks are running.
+ * Only the whole transfer of a custom {@link com.huxq17.download.core.connection.DownloadConnection}
+ * runs on a cached pool of blocking threads,see {@link #executeBlocking(Runnable)}.
+ * A block paced by {@link FairShareScheduler} doesn't sleep either,its next slice is delayed by
+ * {@link #schedule(Runnable, long)}.
+ */
+public class AsyncTransferEngine {
+    static final int WAITERS_PER_WORKER = 4;
+    private ExecutorService workers;
+    private ExecutorService waiters;
+    private ExecutorService blockingExecutor;
+    private ScheduledExecutorService timer;
+
+    private static AsyncTransferEngine instance = new AsyncTransferEngine();
+
+    private AsyncTransferEngine() {
+    }
+
+    public static AsyncTransferEngine getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return workers != null || getWorkerCount() > 0;
+    }
+
+    private int getWorkerCount() {
+        return PumpFactory.getService(IDownloadConfigService.class).getTransferWorkerCount();
+    }
+
+    /**
+     * Execute the command on the workers,the worker count is read when it is first used.
+     *
+     * @return false if the engine has been shut down.
+     */
+    public synchronized boolean execute(Runnable command) {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(Math.max(1, getWorkerCount()), new TransferThreadFactory("AsyncTransferEngine-worker-"));
+        }
+        try {
+            workers.execute(command);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Execute the command which waits for the network on the waiters,it never occupies a worker.
+     * The command should wait on a socket with a read timeout.
+     *
+     * @return false if the engine has been shut down.
+     */
+    public synchronized boolean executeWaiting(Runnable command) {
+        if (waiters == null) {
+            waiters = Executors.newFixedThreadPool(Math.max(1, getWorkerCount()) * WAITERS_PER_WORKER,
+                    new TransferThreadFactory("AsyncTransferEngine-waiter-"));
+        }
+        try {
+            waiters.execute(command);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Execute the command which runs a custom connection,it never occupies a worker.
+     *
+     * @return false if the engine has been shut down.
+     */
+    public synchronized boolean executeBlocking(Runnable command) {
+        if (blockingExecutor == null) {
+            blockingExecutor = Executors.newCachedThreadPool(new TransferThreadFactory("AsyncTransferEngine-blocking-"));
+        }
+        try {
+            blockingExecutor.execute(command);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run the command on the timer thread after the delay,it should only hand the work to {@link #execute(Runnable)}.
+     *
+     * @param delay nanoseconds to wait.
+     * @return false if the engine has been shut down.
+     */
+    public synchronized boolean schedule(Runnable command, long delay) {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new TransferThreadFactory("AsyncTransferEngine-timer-"));
+        }
+        try {
+            timer.schedule(command, delay, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        if (waiters != null) {
+            waiters.shutdownNow();
+            waiters = null;
+        }
+        if (blockingExecutor != null) {
+            blockingExecutor.shutdownNow();
+            blockingExecutor = null;
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private static class TransferThreadFactory implements ThreadFactory {
+        private AtomicInteger count = new AtomicInteger(0);
+        private final String namePrefix;
+
+        TransferThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r);
+            t.setName(namePrefix + count.addAndGet(1));
+            return t;
+        }
+    }
+}
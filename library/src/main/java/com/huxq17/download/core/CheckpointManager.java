@@ -0,0 +1,247 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.FileUtil;
+import com.huxq17.download.utils.LogUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Makes resume crash consistent under {@link DurabilityPolicy#PERIODIC}. At every checkpoint interval the block
+ * files of all running downloads are synced in one round,then the synced lengths are written to a checkpoint file
+ * in the temp dir of each download,and the download infos are written to the database in one transaction.
+ * {@link #restore(DownloadDetailsInfo)} cuts the block files back to the last checkpoint before a download resumes,
+ * so bytes that may not have reached the storage device are downloaded again instead of being trusted.
+ * The first checkpoint is taken when the download is registered.
+ */
+public class CheckpointManager {
+    private static final String CHECKPOINT_FILE = "pump_checkpoint";
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final long MIN_CHECKPOINT_INTERVAL = 100;
+    private final List<DownloadDetailsInfo> downloadInfos = new ArrayList<>();
+    /**
+     * Held by a checkpoint round,so that a download is not synced after it is unregistered.
+     */
+    private final Object roundLock = new Object();
+    private ScheduledExecutorService executor;
+
+    private static CheckpointManager instance = new CheckpointManager();
+
+    private CheckpointManager() {
+    }
+
+    public static CheckpointManager getInstance() {
+        return instance;
+    }
+
+    private static DurabilityPolicy getDurabilityPolicy() {
+        return PumpFactory.getService(IDownloadConfigService.class).getDurabilityPolicy();
+    }
+
+    public boolean isEnabled() {
+        return getDurabilityPolicy() == DurabilityPolicy.PERIODIC;
+    }
+
+    /**
+     * Take a checkpoint of the download now,then periodically until it is unregistered.
+     */
+    public void register(DownloadDetailsInfo downloadInfo) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (roundLock) {
+            checkpointBlocks(downloadInfo);
+        }
+        synchronized (this) {
+            downloadInfos.add(downloadInfo);
+            if (executor == null) {
+                long interval = Math.max(MIN_CHECKPOINT_INTERVAL,
+                        PumpFactory.getService(IDownloadConfigService.class).getCheckpointInterval());
+                executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "pump-checkpoint");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkpointAll();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Take the last checkpoint of the download,its blocks must not be written any more.
+     */
+    public void unregister(DownloadDetailsInfo downloadInfo) {
+        boolean isRegistered;
+        synchronized (this) {
+            isRegistered = downloadInfos.remove(downloadInfo);
+        }
+        if (isRegistered) {
+            synchronized (roundLock) {
+                checkpoint(Collections.singletonList(downloadInfo));
+            }
+        }
+    }
+
+    private void checkpointAll() {
+        synchronized (roundLock) {
+            List<DownloadDetailsInfo> infos;
+            synchronized (this) {
+                infos = new ArrayList<>(downloadInfos);
+            }
+            if (!infos.isEmpty()) {
+                checkpoint(infos);
+            }
+        }
+    }
+
+    private void checkpoint(List<DownloadDetailsInfo> infos) {
+        List<DownloadDetailsInfo> checkpointedInfos = new ArrayList<>(infos.size());
+        for (DownloadDetailsInfo downloadInfo : infos) {
+            if (checkpointBlocks(downloadInfo)) {
+                checkpointedInfos.add(downloadInfo);
+            }
+        }
+        if (!checkpointedInfos.isEmpty()) {
+            DBService.getInstance().updateInfos(checkpointedInfos);
+        }
+    }
+
+    /**
+     * Sync the block files of the download and write their lengths to its checkpoint file.
+     *
+     * @return true if the checkpoint was written.
+     */
+    private boolean checkpointBlocks(DownloadDetailsInfo downloadInfo) {
+        File tempDir = downloadInfo.getTempDir();
+        int threadNum = downloadInfo.getThreadNum();
+        if (downloadInfo.isDeleted() || tempDir == null || !tempDir.exists() || threadNum <= 0) {
+            return false;
+        }
+        long[] lengths = new long[threadNum];
+        boolean isSynced = true;
+        for (int i = 0; i < threadNum && isSynced; i++) {
+            File blockFile = new File(tempDir, DOWNLOAD_PART + i);
+            //The length is read before syncing,all of these bytes are on the device after it.
+            lengths[i] = blockFile.length();
+            isSynced = lengths[i] == 0 || FileUtil.sync(blockFile);
+        }
+        return isSynced && writeCheckpoint(tempDir, downloadInfo.getContentLength(), lengths);
+    }
+
+    private boolean writeCheckpoint(File tempDir, long contentLength, long[] lengths) {
+        File tempFile = new File(tempDir, CHECKPOINT_FILE + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tempFile);
+            DataOutputStream dos = new DataOutputStream(fos);
+            dos.writeInt(CHECKPOINT_VERSION);
+            dos.writeLong(contentLength);
+            dos.writeInt(lengths.length);
+            for (long length : lengths) {
+                dos.writeLong(length);
+            }
+            dos.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            LogUtil.e("write checkpoint failed: " + e.getMessage());
+            return false;
+        } finally {
+            closeQuietly(fos);
+        }
+        //Replace the old checkpoint in place,there is always one to resume from.
+        //The rename is only durable once the entries of the dir are synced too.
+        return tempFile.renameTo(new File(tempDir, CHECKPOINT_FILE)) && FileUtil.syncDir(tempDir);
+    }
+
+    /**
+     * @return the block lengths of the checkpoint,or null if there is no checkpoint of this layout.
+     */
+    private long[] readCheckpoint(File tempDir, long contentLength, int threadNum) {
+        File checkpointFile = new File(tempDir, CHECKPOINT_FILE);
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new FileInputStream(checkpointFile));
+            if (dis.readInt() != CHECKPOINT_VERSION || dis.readLong() != contentLength
+                    || dis.readInt() != threadNum) {
+                return null;
+            }
+            long[] lengths = new long[threadNum];
+            for (int i = 0; i < threadNum; i++) {
+                lengths[i] = dis.readLong();
+            }
+            return lengths;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(dis);
+        }
+    }
+
+    /**
+     * Cut the block files of the download back to its last checkpoint,or delete them if the checkpoint is of
+     * another length or block count. Without a checkpoint,e.g. the blocks were written before the policy was
+     * enabled,the block files are resumed as they are.
+     */
+    public void restore(DownloadDetailsInfo downloadInfo) {
+        if (!isEnabled()) {
+            return;
+        }
+        File tempDir = downloadInfo.getTempDir();
+        if (tempDir == null || !tempDir.exists()) {
+            return;
+        }
+        if (!new File(tempDir, CHECKPOINT_FILE).exists()) {
+            return;
+        }
+        int threadNum = downloadInfo.getThreadNum();
+        long[] lengths = threadNum > 0 ? readCheckpoint(tempDir, downloadInfo.getContentLength(), threadNum) : null;
+        if (lengths == null) {
+            LogUtil.d("checkpoint of " + downloadInfo.getName() + " doesn't match,download it again.");
+            downloadInfo.deleteTempDir();
+            return;
+        }
+        for (int i = 0; i < threadNum; i++) {
+            File blockFile = new File(tempDir, DOWNLOAD_PART + i);
+            if (blockFile.length() > lengths[i]) {
+                FileUtil.truncate(blockFile, lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Sync the finished file unless the durability policy is {@link DurabilityPolicy#NONE}.
+     *
+     * @return false if the file can't be synced.
+     */
+    public boolean syncFinishedFile(File file) {
+        return getDurabilityPolicy() == DurabilityPolicy.NONE || FileUtil.sync(file);
+    }
+}
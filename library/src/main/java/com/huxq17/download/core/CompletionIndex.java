@@ -0,0 +1,293 @@
+package com.huxq17.download.core;
+
+import android.os.FileObserver;
+
+import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.LogUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The finished downloads by id,loaded from the database once and kept current by {@link DBService}.
+ * A download file is checked the first time it is looked up,then the result is kept until a {@link FileObserver}
+ * on its directory reports a change of the file,so the lookups of unchanged files don't touch the disk.
+ * Files in directories that can't be observed are checked on every lookup.
+ */
+public class CompletionIndex {
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.MODIFY | FileObserver.ATTRIB
+            | FileObserver.CLOSE_WRITE | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    private static final int UNVERIFIED = 0;
+    private static final int VALID = 1;
+    private static final int INVALID = 2;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, DirectoryObserver> observers = new HashMap<>();
+    private volatile boolean isLoaded;
+    private boolean isObservable = true;
+
+    private static CompletionIndex instance = new CompletionIndex();
+
+    private CompletionIndex() {
+    }
+
+    public static CompletionIndex getInstance() {
+        return instance;
+    }
+
+    private static class Entry {
+        final File file;
+        final long length;
+        DirectoryObserver observer;
+        volatile int state = UNVERIFIED;
+        volatile int generation;
+
+        Entry(File file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        synchronized void invalidate() {
+            generation++;
+            state = UNVERIFIED;
+        }
+    }
+
+    /**
+     * @return the download file if the download of id finished and its file is intact,otherwise null.
+     */
+    public File getFinishedFile(String id) {
+        loadIfNeed();
+        Entry entry = id == null ? null : entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        return verify(entry) ? entry.file : null;
+    }
+
+    private void loadIfNeed() {
+        if (isLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (isLoaded) {
+                return;
+            }
+            for (DownloadDetailsInfo downloadInfo : DBService.getInstance().getFinishedInfos()) {
+                put(downloadInfo);
+            }
+            isLoaded = true;
+        }
+    }
+
+    private boolean verify(Entry entry) {
+        int state = entry.state;
+        if (state != UNVERIFIED) {
+            return state == VALID;
+        }
+        //Observe before checking,so a change during the check invalidates the result.
+        boolean isWatching = watch(entry);
+        int generation = entry.generation;
+        boolean isValid = entry.length > 0 && entry.file.exists() && entry.file.length() == entry.length;
+        if (isWatching) {
+            synchronized (entry) {
+                if (entry.generation == generation) {
+                    entry.state = isValid ? VALID : INVALID;
+                }
+            }
+        }
+        return isValid;
+    }
+
+    private synchronized boolean watch(Entry entry) {
+        if (entry.observer != null) {
+            return entry.observer.isWatching;
+        }
+        File dir = entry.file.getParentFile();
+        if (dir == null) {
+            return false;
+        }
+        String dirPath = dir.getAbsolutePath();
+        DirectoryObserver observer = observers.get(dirPath);
+        if (observer == null) {
+            if (!isObservable) {
+                return false;
+            }
+            try {
+                observer = new DirectoryObserver(dirPath);
+            } catch (LinkageError e) {
+                LogUtil.e("FileObserver is unavailable: " + e);
+                isObservable = false;
+                return false;
+            }
+            observers.put(dirPath, observer);
+        }
+        observer.add(entry);
+        entry.observer = observer;
+        return observer.isWatching;
+    }
+
+    /**
+     * Keep the entry of the download current after its info is written to the database.
+     * isLoaded is checked with the lock held,so an update during {@link #loadIfNeed()} waits for the load
+     * instead of being dropped when the load read the database before the write.
+     */
+    public void update(DownloadDetailsInfo downloadInfo) {
+        synchronized (this) {
+            if (!isLoaded) {
+                //It will be loaded from the database.
+                return;
+            }
+            if (downloadInfo.getFinished() == 1 && downloadInfo.getFilePath() != null) {
+                Entry entry = entries.get(downloadInfo.getId());
+                if (entry == null || !entry.file.getPath().equals(downloadInfo.getFilePath())
+                        || entry.length != downloadInfo.getContentLength()) {
+                    removeEntry(downloadInfo.getId());
+                    put(downloadInfo);
+                }
+            } else {
+                removeEntry(downloadInfo.getId());
+            }
+        }
+    }
+
+    public void remove(String id) {
+        synchronized (this) {
+            if (!isLoaded) {
+                return;
+            }
+            removeEntry(id);
+        }
+    }
+
+    /**
+     * Stop observing and forget the entries,they are loaded again on the next lookup.
+     */
+    public synchronized void clear() {
+        for (DirectoryObserver observer : observers.values()) {
+            observer.stop();
+        }
+        observers.clear();
+        entries.clear();
+        isLoaded = false;
+    }
+
+    private void put(DownloadDetailsInfo downloadInfo) {
+        if (downloadInfo.getFilePath() != null) {
+            entries.put(downloadInfo.getId(),
+                    new Entry(new File(downloadInfo.getFilePath()), downloadInfo.getContentLength()));
+        }
+    }
+
+    private void removeEntry(String id) {
+        Entry entry = entries.remove(id);
+        if (entry != null && entry.observer != null && entry.observer.remove(entry)) {
+            //Nothing left to observe in the directory,release the watch.
+            entry.observer.stop();
+            observers.remove(entry.observer.dirPath);
+        }
+    }
+
+    private synchronized void onObserverStopped(DirectoryObserver observer) {
+        if (observers.get(observer.dirPath) == observer) {
+            observers.remove(observer.dirPath);
+        }
+        for (Entry entry : observer.removeAll()) {
+            entry.observer = null;
+            entry.invalidate();
+        }
+    }
+
+    private class DirectoryObserver extends FileObserver {
+        final String dirPath;
+        final boolean isWatching;
+        private final Map<String, List<Entry>> entriesByName = new HashMap<>();
+
+        DirectoryObserver(String dirPath) {
+            super(dirPath, WATCH_MASK);
+            this.dirPath = dirPath;
+            isWatching = startWatchingSafely();
+        }
+
+        private boolean startWatchingSafely() {
+            if (!new File(dirPath).isDirectory()) {
+                return false;
+            }
+            try {
+                startWatching();
+                return true;
+            } catch (RuntimeException | LinkageError e) {
+                LogUtil.e("observe " + dirPath + " failed: " + e);
+                return false;
+            }
+        }
+
+        synchronized void add(Entry entry) {
+            String name = entry.file.getName();
+            List<Entry> list = entriesByName.get(name);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                entriesByName.put(name, list);
+            }
+            list.add(entry);
+        }
+
+        /**
+         * @return true if there are no entries left.
+         */
+        synchronized boolean remove(Entry entry) {
+            String name = entry.file.getName();
+            List<Entry> list = entriesByName.get(name);
+            if (list != null) {
+                list.remove(entry);
+                if (list.isEmpty()) {
+                    entriesByName.remove(name);
+                }
+            }
+            return entriesByName.isEmpty();
+        }
+
+        synchronized List<Entry> removeAll() {
+            List<Entry> removedEntries = new ArrayList<>();
+            for (List<Entry> list : entriesByName.values()) {
+                removedEntries.addAll(list);
+            }
+            entriesByName.clear();
+            return removedEntries;
+        }
+
+        void stop() {
+            if (isWatching) {
+                stopWatching();
+            }
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            event &= FileObserver.ALL_EVENTS;
+            if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+                //The watch is gone with the directory,the entries are checked and observed again on lookup.
+                stop();
+                onObserverStopped(this);
+                return;
+            }
+            if (path == null) {
+                return;
+            }
+            List<Entry> list;
+            synchronized (this) {
+                list = entriesByName.get(path);
+                list = list == null ? null : new ArrayList<>(list);
+            }
+            if (list != null) {
+                for (Entry entry : list) {
+                    entry.invalidate();
+                }
+            }
+        }
+    }
+}
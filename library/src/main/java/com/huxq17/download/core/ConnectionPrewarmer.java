@@ -0,0 +1,99 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.utils.LogUtil;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Prepares the hosts of queued downloads,so that they don't pay DNS,TCP and TLS when they start.
+ * A HEAD request is sent to the host of a queued download,which resolves the host and leaves an idle connection
+ * in the connection pool of the OkHttp client that downloads use. A host is warmed at most once
+ * in {@link #WARM_TIME},and at most {@link #MAX_PREWARMING} hosts are warmed at the same time.
+ * Connections that are not used are closed by the pool when their keep-alive ends.
+ */
+public class ConnectionPrewarmer {
+    private static final long WARM_TIME = 30 * 1000;
+    private static final int MAX_PREWARMING = 4;
+    private final Map<String, Long> warmedHosts = new HashMap<>();
+    private int prewarmingCount;
+
+    private static ConnectionPrewarmer instance = new ConnectionPrewarmer();
+
+    private ConnectionPrewarmer() {
+    }
+
+    public static ConnectionPrewarmer getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return how many queued downloads to look ahead,0 if prewarming is disabled.
+     */
+    public int getPrewarmCount() {
+        return PumpFactory.getService(IDownloadConfigService.class).getPrewarmCount();
+    }
+
+    /**
+     * Warm the host of the download if it isn't warm.
+     */
+    public void prewarm(DownloadRequest downloadRequest) {
+        DownloadConnection.Factory connectionFactory = PumpFactory.getService(IDownloadConfigService.class)
+                .getDownloadConnectionFactory();
+        if (!(connectionFactory instanceof OkHttpDownloadConnection.Factory)) {
+            //Custom connections don't use the pool.
+            return;
+        }
+        OkHttpClient okHttpClient = ((OkHttpDownloadConnection.Factory) connectionFactory).getOkHttpClient();
+        Request request = downloadRequest.getHttpRequestBuilder().build();
+        if (okHttpClient == null || !"GET".equals(request.method())) {
+            return;
+        }
+        HttpUrl url = request.url();
+        final String host = url.scheme() + "://" + url.host() + ":" + url.port();
+        long now = System.nanoTime() / 1000000;
+        synchronized (this) {
+            Iterator<Long> iterator = warmedHosts.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next() >= WARM_TIME) {
+                    iterator.remove();
+                }
+            }
+            if (warmedHosts.containsKey(host) || prewarmingCount >= MAX_PREWARMING) {
+                return;
+            }
+            warmedHosts.put(host, now);
+            prewarmingCount++;
+        }
+        okHttpClient.newCall(request.newBuilder().head().build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LogUtil.d("prewarm " + host + " failed: " + e.getMessage());
+                onPrewarmed();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                onPrewarmed();
+            }
+        });
+    }
+
+    private synchronized void onPrewarmed() {
+        prewarmingCount--;
+    }
+}
@@ -0,0 +1,220 @@
+package com.huxq17.download.core;
+
+import android.text.TextUtils;
+import android.util.Base64;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.FileUtil;
+import com.huxq17.download.utils.LogUtil;
+import com.huxq17.download.utils.MD5Util;
+import com.huxq17.download.utils.Util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local cache of downloaded files shared by all download ids.
+ * Entries are found by url (and revalidated by eTag when they are stale) or by content hash,
+ * the files are stored once per content hash and evicted in LRU order when the cache grows
+ * beyond {@link IDownloadConfigService#getContentCacheSize()}.
+ */
+public class ContentCache {
+    private static final String CACHE_DIR = ".pump_content_cache";
+    private File cacheDir;
+
+    private static ContentCache instance = new ContentCache();
+
+    private ContentCache() {
+    }
+
+    public static ContentCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return getMaxSize() > 0;
+    }
+
+    private long getMaxSize() {
+        return PumpFactory.getService(IDownloadConfigService.class).getContentCacheSize();
+    }
+
+    private synchronized File getCacheDir() {
+        if (cacheDir == null) {
+            cacheDir = new File(Util.getCachePath(DownloadProvider.context), CACHE_DIR);
+        }
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        return cacheDir;
+    }
+
+    public DownloadProvider.ContentCacheBean get(String url) {
+        DownloadProvider.ContentCacheBean cacheBean = DBService.getInstance().queryContentCacheByUrl(url);
+        return isValid(cacheBean) ? cacheBean : null;
+    }
+
+    /**
+     * Find a cache entry by the Content-MD5 header of a response.
+     */
+    public DownloadProvider.ContentCacheBean getByContentMD5(String contentMD5) {
+        String contentHash = parseContentMD5(contentMD5);
+        if (contentHash == null) {
+            return null;
+        }
+        DownloadProvider.ContentCacheBean cacheBean = DBService.getInstance().queryContentCacheByHash(contentHash);
+        return isValid(cacheBean) ? cacheBean : null;
+    }
+
+    private boolean isValid(DownloadProvider.ContentCacheBean cacheBean) {
+        if (cacheBean == null) {
+            return false;
+        }
+        File cacheFile = getCacheFile(cacheBean.contentHash);
+        if (cacheFile.exists() && cacheFile.length() == cacheBean.length) {
+            return true;
+        }
+        DBService.getInstance().deleteContentCache(cacheBean);
+        return false;
+    }
+
+    private File getCacheFile(String contentHash) {
+        return new File(getCacheDir(), contentHash);
+    }
+
+    /**
+     * Serve the download from cache by hard link or copy.
+     *
+     * @return true if the download file is ready.
+     */
+    public synchronized boolean restore(DownloadDetailsInfo downloadInfo, DownloadProvider.ContentCacheBean cacheBean) {
+        if (downloadInfo.getFilePath() == null) {
+            if (TextUtils.isEmpty(cacheBean.name)) {
+                return false;
+            }
+            downloadInfo.getDownloadRequest().setFilePath(Util.getCachePath(DownloadProvider.context) + "/" + cacheBean.name);
+        }
+        File cacheFile = getCacheFile(cacheBean.contentHash);
+        if (!FileUtil.linkOrCopy(cacheFile, downloadInfo.getDownloadFile())) {
+            return false;
+        }
+        LogUtil.d("Serve " + downloadInfo.getName() + " from content cache.");
+        downloadInfo.deleteTempDir();
+        downloadInfo.setContentLength(cacheBean.length);
+        downloadInfo.setCompletedSize(cacheBean.length);
+        downloadInfo.setProgress(100);
+        downloadInfo.setFinished(1);
+        downloadInfo.setStatus(DownloadInfo.Status.FINISHED);
+        touch(cacheBean);
+        return true;
+    }
+
+    /**
+     * Mark the entry as used now,the server has confirmed it is still fresh until expires.
+     */
+    public void revalidate(DownloadProvider.ContentCacheBean cacheBean, long expires) {
+        cacheBean.expires = expires;
+        touch(cacheBean);
+    }
+
+    private void touch(DownloadProvider.ContentCacheBean cacheBean) {
+        cacheBean.lastAccess = System.currentTimeMillis();
+        DBService.getInstance().updateContentCache(cacheBean);
+    }
+
+    /**
+     * Add a finished download to cache.
+     */
+    public void put(DownloadDetailsInfo downloadInfo) {
+        File downloadFile = downloadInfo.getDownloadFile();
+        if (!isEnabled() || downloadInfo.getCacheExpires() < 0 || downloadFile == null
+                || !downloadFile.exists() || downloadFile.length() > getMaxSize()) {
+            return;
+        }
+        //Content-MD5 describes the transferred bytes,a file changed after the transfer is hashed on disk.
+        String contentHash = isTransferredFile(downloadInfo) ? parseContentMD5(downloadInfo.getMd5()) : null;
+        if (contentHash == null) {
+            contentHash = MD5Util.getMD5(downloadFile);
+            if (TextUtils.isEmpty(contentHash)) {
+                return;
+            }
+        }
+        DownloadProvider.CacheBean validator = downloadInfo.getCacheBean();
+        synchronized (this) {
+            File cacheFile = getCacheFile(contentHash);
+            if (!cacheFile.exists() && !FileUtil.linkOrCopy(downloadFile, cacheFile)) {
+                return;
+            }
+            DownloadProvider.ContentCacheBean cacheBean = new DownloadProvider.ContentCacheBean(downloadInfo.getUrl(),
+                    validator == null ? null : validator.eTag, validator == null ? null : validator.lastModified,
+                    contentHash, downloadInfo.getName(), cacheFile.length(), downloadInfo.getCacheExpires());
+            DownloadProvider.ContentCacheBean oldCacheBean = DBService.getInstance().queryContentCacheByUrl(cacheBean.url);
+            cacheBean.pinned = oldCacheBean != null && oldCacheBean.pinned;
+            touch(cacheBean);
+            trimToSize(getMaxSize());
+        }
+    }
+
+    private boolean isTransferredFile(DownloadDetailsInfo downloadInfo) {
+        DownloadRequest downloadRequest = downloadInfo.getDownloadRequest();
+        return downloadInfo.getContentEncoding() == null
+                && (downloadRequest == null || downloadRequest.getPatchBaseFile() == null);
+    }
+
+    public void setPinned(String url, boolean pinned) {
+        DBService.getInstance().setContentCachePinned(url, pinned);
+    }
+
+    /**
+     * Remove the least recently used entries that are not pinned until the cache fits in maxSize.
+     */
+    synchronized void trimToSize(long maxSize) {
+        List<DownloadProvider.ContentCacheBean> cacheList = DBService.getInstance().getContentCacheList();
+        Map<String, Integer> referenceCount = new HashMap<>();
+        long size = 0;
+        for (DownloadProvider.ContentCacheBean cacheBean : cacheList) {
+            Integer count = referenceCount.get(cacheBean.contentHash);
+            if (count == null) {
+                count = 0;
+                size += cacheBean.length;
+            }
+            referenceCount.put(cacheBean.contentHash, count + 1);
+        }
+        for (DownloadProvider.ContentCacheBean cacheBean : cacheList) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (cacheBean.pinned) {
+                continue;
+            }
+            DBService.getInstance().deleteContentCache(cacheBean);
+            int count = referenceCount.get(cacheBean.contentHash) - 1;
+            referenceCount.put(cacheBean.contentHash, count);
+            if (count == 0) {
+                FileUtil.deleteFile(getCacheFile(cacheBean.contentHash));
+                size -= cacheBean.length;
+                LogUtil.d("Evict " + cacheBean.url + " from content cache.");
+            }
+        }
+    }
+
+    /**
+     * Content-MD5 is the base64 of the digest,convert it to hex as the cache file is named.
+     */
+    private String parseContentMD5(String contentMD5) {
+        if (TextUtils.isEmpty(contentMD5)) {
+            return null;
+        }
+        try {
+            byte[] digest = Base64.decode(contentMD5, Base64.DEFAULT);
+            return digest.length == 16 ? MD5Util.bytesToHexString(digest) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.LogUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.Vector;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import okio.BufferedSink;
+import okio.Okio;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Decodes the content-coding of a response. The encoded representation is what is downloaded and resumed
+ * by byte range,it is decoded into the download file in one stream as the last step.
+ */
+public class ContentDecoder {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    /**
+     * Notify the decoded size every this many bytes.
+     */
+    private static final long NOTIFY_INTERVAL = 256 * 1024;
+
+    private ContentDecoder() {
+    }
+
+    public static boolean isSupported(String contentEncoding) {
+        return "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)
+                || "deflate".equalsIgnoreCase(contentEncoding);
+    }
+
+    private static InputStream decodeStream(InputStream inputStream, String contentEncoding) throws IOException {
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
+        }
+        return new GZIPInputStream(inputStream);
+    }
+
+    /**
+     * Decode the concatenation of sources into dest,and report the decoded size to the task.
+     *
+     * @param sources         the encoded files in order.
+     * @param dest            the decoded file.
+     * @param contentEncoding the content-coding of sources.
+     * @return true if succeed.
+     */
+    public static boolean decode(File[] sources, File dest, String contentEncoding, DownloadTask downloadTask) {
+        DownloadDetailsInfo downloadInfo = downloadTask.getDownloadInfo();
+        Vector<InputStream> streams = new Vector<>(sources.length);
+        InputStream inputStream = null;
+        BufferedSink bufferedSink = null;
+        try {
+            for (File source : sources) {
+                streams.add(new FileInputStream(source));
+            }
+            inputStream = decodeStream(new SequenceInputStream(streams.elements()), contentEncoding);
+            bufferedSink = Okio.buffer(Okio.sink(dest));
+            byte[] buffer = new byte[8092];
+            long decodedSize = 0;
+            long notifiedSize = 0;
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                bufferedSink.write(buffer, 0, len);
+                decodedSize += len;
+                if (decodedSize - notifiedSize >= NOTIFY_INTERVAL) {
+                    notifiedSize = decodedSize;
+                    downloadInfo.setDecodedSize(decodedSize);
+                    downloadTask.notifyProgressChanged(downloadInfo);
+                }
+            }
+            bufferedSink.flush();
+            downloadInfo.setDecodedSize(decodedSize);
+            return true;
+        } catch (IOException e) {
+            LogUtil.e("decode " + downloadInfo.getName() + " failed: " + e.getMessage());
+        } finally {
+            closeQuietly(bufferedSink);
+            if (inputStream != null) {
+                closeQuietly(inputStream);
+            } else {
+                for (InputStream stream : Collections.list(streams.elements())) {
+                    closeQuietly(stream);
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,199 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.TaskManager;
+import com.huxq17.download.callback.Func;
+import com.huxq17.download.core.service.IDownloadManager;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes downloads in the background. The downloads are cancelled and removed from memory at once,
+ * their database rows are deleted in one transaction,and their files are deleted by at most
+ * {@link #MAX_FILE_DELETERS} threads.
+ * <p>
+ * A download submitted again while its files are being deleted is started after the deletion.
+ */
+public class DeletionService {
+    private static final int MAX_FILE_DELETERS = 4;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new DeletionThreadFactory("pump-delete"));
+    private final ExecutorService fileDeleters = Executors.newFixedThreadPool(MAX_FILE_DELETERS,
+            new DeletionThreadFactory("pump-delete-file"));
+    private final Set<String> deletingIds = new HashSet<>();
+    private final Map<String, DownloadRequest> deferredRequests = new HashMap<>();
+
+    private static DeletionService instance = new DeletionService();
+
+    private DeletionService() {
+    }
+
+    public static DeletionService getInstance() {
+        return instance;
+    }
+
+    private static class DeletionThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+
+        DeletionThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Delete the downloads of ids.
+     *
+     * @param ids      ids of the downloads.
+     * @param callback called on the main thread with the ids when the deletion is done,can be null.
+     * @return the future of the ids,which is done when the deletion is done.
+     */
+    public Future<List<String>> delete(List<String> ids, final Func<List<String>> callback) {
+        final DownloadInfoManager downloadInfoManager = DownloadInfoManager.getInstance();
+        final List<String> deleteIds = new ArrayList<>(ids.size());
+        final List<DownloadDetailsInfo> deleteInfos = new ArrayList<>(ids.size());
+        final List<String> unloadedIds = new ArrayList<>();
+        synchronized (this) {
+            for (String id : ids) {
+                if (id == null || id.length() == 0 || !deletingIds.add(id)) {
+                    continue;
+                }
+                deleteIds.add(id);
+                DownloadDetailsInfo downloadInfo = downloadInfoManager.get(id);
+                if (downloadInfo == null) {
+                    unloadedIds.add(id);
+                } else {
+                    deleteInfos.add(downloadInfo);
+                }
+            }
+        }
+        for (DownloadDetailsInfo downloadInfo : deleteInfos) {
+            markDeleted(downloadInfo);
+        }
+        FutureTask<List<String>> futureTask = new FutureTask<>(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                try {
+                    DBService dbService = DBService.getInstance();
+                    //The infos that were never loaded are only in the database,they are loaded without caching.
+                    deleteInfos.addAll(dbService.getDownloadInfos(unloadedIds).values());
+                    dbService.deleteInfos(deleteIds);
+                    deleteFiles(deleteInfos);
+                } finally {
+                    onDeleted(deleteIds);
+                }
+                final List<String> result = Collections.unmodifiableList(deleteIds);
+                if (callback != null) {
+                    TaskManager.executeOnMainThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.call(result);
+                        }
+                    });
+                }
+                return result;
+            }
+        });
+        executor.execute(futureTask);
+        return futureTask;
+    }
+
+    private void markDeleted(DownloadDetailsInfo downloadInfo) {
+        DownloadTask downloadTask = downloadInfo.getDownloadTask();
+        Object lock = downloadTask == null ? null : downloadTask.getLock();
+        if (lock != null) {
+            synchronized (lock) {
+                downloadTask.cancel();
+                downloadInfo.setStatus(DownloadInfo.Status.DELETED);
+            }
+        } else {
+            downloadInfo.setStatus(DownloadInfo.Status.DELETED);
+        }
+        DownloadInfoManager.getInstance().remove(downloadInfo.getId());
+    }
+
+    private void deleteFiles(List<DownloadDetailsInfo> downloadInfos) {
+        List<Future<?>> futures = new ArrayList<>(downloadInfos.size());
+        for (final DownloadDetailsInfo downloadInfo : downloadInfos) {
+            futures.add(fileDeleters.submit(new Runnable() {
+                @Override
+                public void run() {
+                    downloadInfo.deleteTempDir();
+                    downloadInfo.deleteDownloadFile();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LogUtil.e("delete files failed: " + e.getCause());
+            }
+        }
+    }
+
+    private void onDeleted(List<String> ids) {
+        List<DownloadRequest> requests = new ArrayList<>();
+        synchronized (this) {
+            for (String id : ids) {
+                deletingIds.remove(id);
+                DownloadRequest downloadRequest = deferredRequests.remove(id);
+                if (downloadRequest != null) {
+                    requests.add(downloadRequest);
+                }
+            }
+        }
+        for (DownloadRequest downloadRequest : requests) {
+            PumpFactory.getService(IDownloadManager.class).submit(downloadRequest);
+        }
+    }
+
+    /**
+     * The infos loaded from the database while their download is being deleted are not cached,see
+     * {@link DownloadInfoManager#createInfoByCursor(android.database.Cursor)},which checks it holding this monitor.
+     */
+    synchronized boolean isDeleting(String id) {
+        return deletingIds.contains(id);
+    }
+
+    /**
+     * Keep the request until the deletion of its download is done.
+     *
+     * @return true if the request is deferred.
+     */
+    synchronized boolean deferIfDeleting(DownloadRequest downloadRequest) {
+        String id = downloadRequest.getId();
+        if (!deletingIds.contains(id)) {
+            return false;
+        }
+        LogUtil.d("task " + downloadRequest.getName() + " is deleting,submit it after the deletion.");
+        deferredRequests.put(id, downloadRequest);
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.TaskManager;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors to deliver the callbacks of a {@link DownloadListener} subscribed by
+ * {@link com.huxq17.download.Pump#subscribe(DownloadListener, Executor)}.
+ */
+public final class DeliveryExecutors {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final Executor MAIN = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            TaskManager.executeOnMainThread(command);
+        }
+    };
+    private static final Executor BACKGROUND = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            TaskManager.execute(command);
+        }
+    };
+
+    private DeliveryExecutors() {
+    }
+
+    /**
+     * Callbacks run on the download thread that reports the progress,they must return quickly.
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Callbacks run on the main thread.
+     */
+    public static Executor main() {
+        return MAIN;
+    }
+
+    /**
+     * Callbacks run on the thread pool of {@link TaskManager}.
+     */
+    public static Executor background() {
+        return BACKGROUND;
+    }
+}
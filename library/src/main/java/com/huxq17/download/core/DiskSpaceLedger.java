@@ -0,0 +1,221 @@
+package com.huxq17.download.core;
+
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.huxq17.download.utils.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts the disk space that admitted downloads are still going to write,so that concurrent downloads
+ * don't pass the space check against the same free bytes and then fail halfway.
+ * <p>
+ * Usable space readings are cached and refreshed at most once per {@link #REFRESH_INTERVAL} ms.
+ * Directories are assumed to be on the same volume when they report the same total space.
+ */
+public class DiskSpaceLedger {
+    private static final long REFRESH_INTERVAL = 2000;
+    private final Map<String, SpaceReading> readings = new HashMap<>();
+    private final List<Reservation> reservations = new ArrayList<>();
+
+    private static DiskSpaceLedger instance = new DiskSpaceLedger();
+
+    private DiskSpaceLedger() {
+    }
+
+    public static DiskSpaceLedger getInstance() {
+        return instance;
+    }
+
+    private static class SpaceReading {
+        long usableSpace;
+        long totalSpace;
+        long time;
+    }
+
+    private synchronized SpaceReading getReading(File directory) {
+        String path = directory.getAbsolutePath();
+        SpaceReading reading = readings.get(path);
+        long now = SystemClock.elapsedRealtime();
+        if (reading == null) {
+            reading = new SpaceReading();
+            readings.put(path, reading);
+        } else if (reading.time != 0 && now - reading.time < REFRESH_INTERVAL) {
+            return reading;
+        }
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        reading.usableSpace = directory.getUsableSpace();
+        reading.totalSpace = directory.getTotalSpace();
+        reading.time = now;
+        return reading;
+    }
+
+    /**
+     * Expire the readings of the volume,after its space was changed by us.
+     */
+    private synchronized void invalidate(long totalSpace) {
+        for (SpaceReading reading : readings.values()) {
+            if (reading.totalSpace == totalSpace) {
+                reading.time = 0;
+            }
+        }
+    }
+
+    private long getReservedSpace(long totalSpace) {
+        long reservedSpace = 0;
+        for (int i = 0; i < reservations.size(); i++) {
+            Reservation reservation = reservations.get(i);
+            if (reservation.totalSpace == totalSpace) {
+                reservedSpace += reservation.getUnallocatedSize();
+            }
+        }
+        return reservedSpace;
+    }
+
+    /**
+     * @param directory the directory,which is created if not exists.
+     * @return the cached usable space of the directory.
+     */
+    public long getUsableSpace(File directory) {
+        return directory == null ? 0 : getReading(directory).usableSpace;
+    }
+
+    /**
+     * @param directory the directory,which is created if not exists.
+     * @return the usable space of the directory which is not reserved by other downloads.
+     */
+    public synchronized long getAvailableSpace(File directory) {
+        if (directory == null) {
+            return 0;
+        }
+        SpaceReading reading = getReading(directory);
+        return reading.usableSpace - getReservedSpace(reading.totalSpace);
+    }
+
+    /**
+     * Reserve space for a download.
+     *
+     * @param directory      the directory that the download writes to.
+     * @param size           bytes that the download is going to write.
+     * @param headroom       bytes of size which are only needed at the end,such as the copy of merging,
+     *                       they are never preallocated.
+     * @param minUsableSpace the space that must be left after the reservation.
+     * @return the reservation,or null if the space is not enough.
+     */
+    public synchronized Reservation reserve(File directory, long size, long headroom, long minUsableSpace) {
+        if (directory == null) {
+            return null;
+        }
+        SpaceReading reading = getReading(directory);
+        if (reading.usableSpace - getReservedSpace(reading.totalSpace) - size <= minUsableSpace) {
+            return null;
+        }
+        Reservation reservation = new Reservation(reading.totalSpace, size, headroom);
+        reservations.add(reservation);
+        return reservation;
+    }
+
+    public void release(Reservation reservation) {
+        reservation.deleteBalloon();
+        synchronized (this) {
+            if (reservations.remove(reservation)) {
+                invalidate(reservation.totalSpace);
+            }
+        }
+    }
+
+    /**
+     * The space reserved by a download,shrinks as the data lands on disk.
+     */
+    public static class Reservation {
+        /**
+         * Shrink the preallocated file when it exceeds what is still to be written by this many bytes.
+         */
+        private static final long BALLOON_STEP = 1024 * 1024;
+        private final long totalSpace;
+        private final long headroom;
+        private final AtomicLong remainingSize;
+        private File balloonFile;
+        private volatile long balloonSize;
+
+        Reservation(long totalSpace, long size, long headroom) {
+            this.totalSpace = totalSpace;
+            this.headroom = headroom;
+            this.remainingSize = new AtomicLong(size);
+        }
+
+        public long getRemainingSize() {
+            return remainingSize.get();
+        }
+
+        /**
+         * The reserved bytes that the file system doesn't know about yet.
+         */
+        long getUnallocatedSize() {
+            return Math.max(0, remainingSize.get() - balloonSize);
+        }
+
+        private long getBalloonTarget() {
+            return Math.max(0, remainingSize.get() - headroom);
+        }
+
+        /**
+         * Count the bytes written.
+         */
+        public void consume(long length) {
+            remainingSize.addAndGet(-length);
+            if (balloonSize > 0 && balloonSize - getBalloonTarget() >= BALLOON_STEP) {
+                shrinkBalloon();
+            }
+        }
+
+        /**
+         * Back the reservation with a preallocated file of the size that is still to be written,
+         * which is shrunk as the download grows and deleted on release.
+         *
+         * @return false if the file system can't allocate the space.
+         */
+        public synchronized boolean preallocate(File balloonFile) {
+            long size = getBalloonTarget();
+            if (size <= 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return true;
+            }
+            if (!FileUtil.preallocate(balloonFile, size)) {
+                FileUtil.deleteFile(balloonFile);
+                return false;
+            }
+            this.balloonFile = balloonFile;
+            this.balloonSize = size;
+            instance.invalidate(totalSpace);
+            return true;
+        }
+
+        private synchronized void shrinkBalloon() {
+            long size = getBalloonTarget();
+            if (balloonFile == null || balloonSize - size < BALLOON_STEP) {
+                return;
+            }
+            if (size == 0 || !FileUtil.truncate(balloonFile, size)) {
+                deleteBalloon();
+            } else {
+                balloonSize = size;
+            }
+        }
+
+        synchronized void deleteBalloon() {
+            if (balloonFile != null) {
+                FileUtil.deleteFile(balloonFile);
+                balloonFile = null;
+                balloonSize = 0;
+            }
+        }
+    }
+}
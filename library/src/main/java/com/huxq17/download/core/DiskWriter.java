@@ -0,0 +1,324 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+import com.huxq17.download.core.service.IDownloadConfigService;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Writes the downloaded data of all blocks on a few writer threads,so that reading the network doesn't wait
+ * for the disk. Readers copy the data into chunks of {@link #CHUNK_SIZE} and put the full chunks into the
+ * bounded ring of a writer,they only wait when the ring is full. A writer takes all the chunks in its ring at once
+ * and writes the chunks of each file with one gathering write,so the disk gets a few large writes instead of
+ * many small interleaved ones.
+ * <p>
+ * The depth of the rings and the size of the writes are counted by {@link DownloadMetrics}.
+ */
+public class DiskWriter {
+    public static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Count of chunks in the rings of all writers.
+     */
+    private static final int RING_CAPACITY = 64;
+    private final ArrayDeque<byte[]> chunkPool = new ArrayDeque<>();
+    private WriterThread[] writers;
+    private int nextWriter;
+
+    private static DiskWriter instance = new DiskWriter();
+
+    private DiskWriter() {
+    }
+
+    public static DiskWriter getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return writers != null || getWriterCount() > 0;
+    }
+
+    private int getWriterCount() {
+        return PumpFactory.getService(IDownloadConfigService.class).getDiskWriterCount();
+    }
+
+    /**
+     * Open the file to append through the writers,the writer count is read when it is first used.
+     */
+    public synchronized FileOutput open(File file) throws IOException {
+        if (writers == null) {
+            int writerCount = Math.max(1, getWriterCount());
+            writers = new WriterThread[writerCount];
+            for (int i = 0; i < writerCount; i++) {
+                writers[i] = new WriterThread(Math.max(1, RING_CAPACITY / writerCount), i + 1);
+                writers[i].start();
+            }
+        }
+        WriterThread writer = writers[nextWriter];
+        nextWriter = (nextWriter + 1) % writers.length;
+        return new FileOutput(file, writer);
+    }
+
+    public synchronized void shutdown() {
+        if (writers != null) {
+            for (WriterThread writer : writers) {
+                writer.interrupt();
+            }
+            writers = null;
+        }
+    }
+
+    private byte[] obtainChunk() {
+        synchronized (chunkPool) {
+            byte[] chunk = chunkPool.poll();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return new byte[CHUNK_SIZE];
+    }
+
+    private void recycleChunk(byte[] chunk) {
+        synchronized (chunkPool) {
+            if (chunkPool.size() < RING_CAPACITY) {
+                chunkPool.push(chunk);
+            }
+        }
+    }
+
+    private static class WriteRequest {
+        final FileOutput output;
+        final byte[] chunk;
+        final int length;
+
+        WriteRequest(FileOutput output, byte[] chunk, int length) {
+            this.output = output;
+            this.chunk = chunk;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A file appended through a writer. It is used by one reader thread at a time.
+     */
+    public class FileOutput {
+        private final FileOutputStream outputStream;
+        private final FileChannel channel;
+        private final WriterThread writer;
+        private byte[] chunk;
+        private int chunkLength;
+        private int pendingCount;
+        private IOException error;
+
+        FileOutput(File file, WriterThread writer) throws IOException {
+            this.outputStream = new FileOutputStream(file, true);
+            this.channel = outputStream.getChannel();
+            this.writer = writer;
+        }
+
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            checkError();
+            while (length > 0) {
+                if (chunk == null) {
+                    chunk = obtainChunk();
+                }
+                int count = Math.min(length, CHUNK_SIZE - chunkLength);
+                System.arraycopy(buffer, offset, chunk, chunkLength, count);
+                chunkLength += count;
+                offset += count;
+                length -= count;
+                if (chunkLength == CHUNK_SIZE) {
+                    submitChunk();
+                }
+            }
+        }
+
+        private void submitChunk() throws IOException {
+            WriteRequest writeRequest = new WriteRequest(this, chunk, chunkLength);
+            chunk = null;
+            chunkLength = 0;
+            synchronized (this) {
+                pendingCount++;
+            }
+            try {
+                writer.put(writeRequest);
+            } catch (InterruptedException e) {
+                recycleChunk(writeRequest.chunk);
+                onWritten(1, null);
+                throw new InterruptedIOException("interrupted while waiting for the disk writer");
+            }
+        }
+
+        /**
+         * Submit the data that is not submitted yet and wait until all of it is written.
+         */
+        public void flush() throws IOException {
+            if (chunkLength > 0) {
+                submitChunk();
+            }
+            try {
+                awaitPending();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while waiting for the disk writer");
+            }
+            checkError();
+        }
+
+        /**
+         * Write the rest and close the file. It waits for the submitted writes even if the thread is interrupted,
+         * so that the file is not appended by a stale write after it is opened again.
+         */
+        public void close() {
+            try {
+                if (chunkLength > 0 && error == null) {
+                    submitChunk();
+                }
+            } catch (IOException ignore) {
+            }
+            boolean isInterrupted = false;
+            while (true) {
+                try {
+                    awaitPending();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                } catch (IOException e) {
+                    break;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (chunk != null) {
+                recycleChunk(chunk);
+                chunk = null;
+            }
+            closeQuietly(outputStream);
+        }
+
+        /**
+         * Wait until the submitted writes are done,or the writer has stopped.
+         */
+        private synchronized void awaitPending() throws InterruptedException, IOException {
+            while (pendingCount > 0) {
+                if (!writer.isAlive()) {
+                    pendingCount = 0;
+                    throw new IOException("disk writer is shut down");
+                }
+                wait(1000);
+            }
+        }
+
+        private synchronized void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        synchronized void onWritten(int count, IOException e) {
+            pendingCount -= count;
+            if (e != null && error == null) {
+                error = e;
+            }
+            notifyAll();
+        }
+    }
+
+    private class WriterThread extends Thread {
+        private static final int MAX_BATCH_SIZE = 64;
+        private final BlockingQueue<WriteRequest> ring;
+
+        WriterThread(int capacity, int index) {
+            super("pump-disk-writer-" + index);
+            setDaemon(true);
+            ring = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void put(WriteRequest writeRequest) throws InterruptedException, IOException {
+            if (isInterrupted() || !isAlive()) {
+                throw new IOException("disk writer is shut down");
+            }
+            DownloadMetrics.getInstance().onWriteQueued();
+            try {
+                ring.put(writeRequest);
+            } catch (InterruptedException e) {
+                DownloadMetrics.getInstance().onWriteDequeued(1);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            List<WriteRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            Map<FileOutput, List<WriteRequest>> groups = new LinkedHashMap<>();
+            try {
+                while (true) {
+                    batch.add(ring.take());
+                    ring.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    DownloadMetrics.getInstance().onWriteDequeued(batch.size());
+                    for (WriteRequest writeRequest : batch) {
+                        List<WriteRequest> group = groups.get(writeRequest.output);
+                        if (group == null) {
+                            group = new ArrayList<>();
+                            groups.put(writeRequest.output, group);
+                        }
+                        group.add(writeRequest);
+                    }
+                    for (Map.Entry<FileOutput, List<WriteRequest>> entry : groups.entrySet()) {
+                        write(entry.getKey(), entry.getValue());
+                    }
+                    batch.clear();
+                    groups.clear();
+                }
+            } catch (InterruptedException e) {
+                //Shut down,fail the writes that are left.
+                ring.drainTo(batch);
+                DownloadMetrics.getInstance().onWriteDequeued(batch.size());
+                IOException error = new IOException("disk writer is shut down");
+                for (WriteRequest writeRequest : batch) {
+                    writeRequest.output.onWritten(1, error);
+                }
+            }
+        }
+
+        private void write(FileOutput output, List<WriteRequest> group) {
+            ByteBuffer[] buffers = new ByteBuffer[group.size()];
+            long remaining = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                WriteRequest writeRequest = group.get(i);
+                buffers[i] = ByteBuffer.wrap(writeRequest.chunk, 0, writeRequest.length);
+                remaining += writeRequest.length;
+            }
+            IOException error = null;
+            if (output.error == null) {
+                long size = remaining;
+                try {
+                    while (remaining > 0) {
+                        remaining -= output.channel.write(buffers);
+                    }
+                    DownloadMetrics.getInstance().onDiskWrite(size);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            for (WriteRequest writeRequest : group) {
+                recycleChunk(writeRequest.chunk);
+            }
+            output.onWritten(group.size(), error);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.huxq17.download.core;
 
 import android.text.TextUtils;
 
+import com.huxq17.download.DownloadInfoSnapshot;
 import com.huxq17.download.DownloadProvider;
 import com.huxq17.download.ErrorCode;
 import com.huxq17.download.core.task.DownloadTask;
@@ -17,6 +18,7 @@ import java.util.List;
 
 import static com.huxq17.download.utils.Util.CONTENT_LENGTH_NOT_FOUND;
 import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.DOWNLOAD_PROGRESS;
 import static com.huxq17.download.utils.Util.TRANSFER_ENCODING_CHUNKED;
 
 public class DownloadDetailsInfo {
@@ -29,9 +31,9 @@ public class DownloadDetailsInfo {
 
     private long completedSize;
     private long contentLength = CONTENT_LENGTH_NOT_FOUND;
+    private volatile long decodedSize;
     private int finished;
     protected volatile DownloadInfo.Status status;
-    private String speed;
     private ErrorCode errorCode;
     private File tempDir;
     private List<File> downloadPartFiles = new ArrayList<>();
@@ -49,7 +51,19 @@ public class DownloadDetailsInfo {
     private DownloadRequest downloadRequest;
 
     private String transferEncoding;
+    /**
+     * The content-coding of the downloaded bytes which is decoded after download,null if not encoded.
+     */
+    private String contentEncoding;
     private String md5;
+    /**
+     * The content cache entry of the same url which need to be revalidated.
+     */
+    private DownloadProvider.ContentCacheBean cacheCandidate;
+    /**
+     * When the downloaded content become stale,-1 means it should not be cached.
+     */
+    private long cacheExpires;
 
     public DownloadDetailsInfo(String url, String filePath) {
         this(url, filePath, null, url, System.currentTimeMillis());
@@ -143,10 +157,42 @@ public class DownloadDetailsInfo {
         this.md5 = md5;
     }
 
+    public void setCacheCandidate(DownloadProvider.ContentCacheBean cacheCandidate) {
+        this.cacheCandidate = cacheCandidate;
+    }
+
+    public DownloadProvider.ContentCacheBean getCacheCandidate() {
+        return cacheCandidate;
+    }
+
+    public void setCacheExpires(long cacheExpires) {
+        this.cacheExpires = cacheExpires;
+    }
+
+    public long getCacheExpires() {
+        return cacheExpires;
+    }
+
     public void setTransferEncoding(String transferEncoding) {
         this.transferEncoding = transferEncoding;
     }
 
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setDecodedSize(long decodedSize) {
+        this.decodedSize = decodedSize;
+    }
+
+    public long getDecodedSize() {
+        return decodedSize;
+    }
+
     public boolean isChunked() {
         return TRANSFER_ENCODING_CHUNKED.equalsIgnoreCase(transferEncoding);
     }
@@ -160,10 +206,6 @@ public class DownloadDetailsInfo {
         speedMonitor.download(length);
     }
 
-    public void computeSpeed() {
-        this.speed = speedMonitor.getSpeed();
-    }
-
     public void setContentLength(long contentLength) {
         this.contentLength = contentLength;
     }
@@ -173,7 +215,10 @@ public class DownloadDetailsInfo {
     }
 
     public void setStatus(DownloadInfo.Status status) {
-        this.status = status;
+        if (this.status != status) {
+            this.status = status;
+            DownloadInfoManager.getInstance().onStatusChanged(this);
+        }
     }
 
     public boolean isDeleted() {
@@ -184,6 +229,10 @@ public class DownloadDetailsInfo {
         this.progress = progress;
     }
 
+    public int getProgress() {
+        return progress;
+    }
+
     public void setErrorCode(ErrorCode code) {
         setErrorCode(code, false);
     }
@@ -210,6 +259,32 @@ public class DownloadDetailsInfo {
         return tempDir;
     }
 
+    /**
+     * @return the bytes saved in the block files of the temp dir,or recorded by the progress files of the blocks
+     * written into a storage target,which a resumed download continues from.
+     */
+    public long getBlockFilesLength() {
+        File tempDir = getTempDir();
+        File[] blockFiles = tempDir == null ? null : tempDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(DOWNLOAD_PART) || name.startsWith(DOWNLOAD_PROGRESS);
+            }
+        });
+        long length = 0;
+        if (blockFiles != null) {
+            for (File blockFile : blockFiles) {
+                length += getBlockLength(blockFile);
+            }
+        }
+        return length;
+    }
+
+    private static long getBlockLength(File blockFile) {
+        return blockFile.getName().startsWith(DOWNLOAD_PROGRESS) ? FileUtil.readBlockProgress(blockFile)
+                : blockFile.length();
+    }
+
     public boolean isFinished() {
         synchronized (this) {
             if (downloadFile == null) {
@@ -221,6 +296,10 @@ public class DownloadDetailsInfo {
                 } else if (downloadFile.exists()) {
                     FileUtil.deleteFile(downloadFile);
                 }
+                if (status == DownloadInfo.Status.FINISHED && downloadTask == null) {
+                    //The file is gone,so it isn't listed as finished anymore.
+                    setStatus(DownloadInfo.Status.STOPPED);
+                }
             }
             this.finished = 0;
             return false;
@@ -236,10 +315,10 @@ public class DownloadDetailsInfo {
         tempDir.listFiles(new FilenameFilter() {
             @Override
             public boolean accept(File dir, String name) {
-                if (name.startsWith(DOWNLOAD_PART)) {
+                if (name.startsWith(DOWNLOAD_PART) || name.startsWith(DOWNLOAD_PROGRESS)) {
                     File file = new File(dir, name);
                     downloadPartFiles.add(file);
-                    completedSize += file.length();
+                    completedSize += getBlockLength(file);
                     return true;
                 }
                 return false;
@@ -266,10 +345,42 @@ public class DownloadDetailsInfo {
         progress = (int) (completedSize * 1f / contentLength * 100);
     }
 
+    private long getRemainingTime() {
+        return contentLength > 0 ? speedMonitor.getRemainingTime(contentLength - completedSize) : -1;
+    }
+
     public DownloadInfo snapshot() {
-        computeSpeed();
-        return new DownloadInfo(url, downloadFile, tag, id, createTime, speed, completedSize, contentLength,
-                errorCode, status, finished, progress, this);
+        return new DownloadInfo(url, downloadFile, tag, id, createTime, speedMonitor.getBytesPerSecond(),
+                speedMonitor.getInstantBytesPerSecond(), getRemainingTime(), completedSize, contentLength,
+                decodedSize, errorCode, status, finished, progress, this);
+    }
+
+    /**
+     * Capture the progress into a pooled snapshot without building the {@link DownloadInfo}.
+     */
+    public DownloadInfoSnapshot obtainSnapshot() {
+        DownloadInfoSnapshot snapshot = DownloadInfoSnapshot.obtain();
+        snapshot.downloadDetailsInfo = this;
+        snapshot.completedSize = completedSize;
+        snapshot.contentLength = contentLength;
+        snapshot.decodedSize = decodedSize;
+        snapshot.progress = progress;
+        snapshot.finished = finished;
+        snapshot.status = status;
+        snapshot.errorCode = errorCode;
+        snapshot.bytesPerSecond = speedMonitor.getBytesPerSecond();
+        snapshot.instantBytesPerSecond = speedMonitor.getInstantBytesPerSecond();
+        snapshot.remainingTime = getRemainingTime();
+        return snapshot;
+    }
+
+    /**
+     * Build the download info with the progress captured in snapshot.
+     */
+    public DownloadInfo snapshot(DownloadInfoSnapshot snapshot) {
+        return new DownloadInfo(url, downloadFile, tag, id, createTime, snapshot.bytesPerSecond,
+                snapshot.instantBytesPerSecond, snapshot.remainingTime, snapshot.completedSize, snapshot.contentLength,
+                snapshot.decodedSize, snapshot.errorCode, snapshot.status, snapshot.finished, snapshot.progress, this);
     }
 
     public File getDownloadFile() {
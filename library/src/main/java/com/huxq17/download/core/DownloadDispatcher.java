@@ -9,7 +9,6 @@ import com.huxq17.download.PumpFactory;
 import com.huxq17.download.TaskManager;
 import com.huxq17.download.core.service.IDownloadConfigService;
 import com.huxq17.download.core.task.DownloadTask;
-import com.huxq17.download.core.task.Task;
 import com.huxq17.download.db.DBService;
 import com.huxq17.download.core.service.IDownloadManager;
 import com.huxq17.download.core.service.IMessageCenter;
@@ -17,23 +16,44 @@ import com.huxq17.download.utils.LogUtil;
 import com.huxq17.download.utils.Util;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 
-public class DownloadDispatcher extends Task {
+/**
+ * Admits the submitted requests and hands their tasks to the executors. Submitting only queues the request,
+ * the admission runs on a background thread when there are queued requests: the requests queued meanwhile are
+ * admitted in a batch,with their download infos queried and the new ones written in one database access.
+ */
+public class DownloadDispatcher {
+    /**
+     * Max requests admitted in one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 64;
     private DownloadManager downloadManager;
     private AtomicBoolean isRunning = new AtomicBoolean();
-    private AtomicBoolean isCanceled = new AtomicBoolean();
+    private final AtomicBoolean isAdmitting = new AtomicBoolean();
     private final ConcurrentLinkedQueue<DownloadRequest> requestQueue = new ConcurrentLinkedQueue<>();
+    private final Set<String> queuedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Runnable admitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            admitRequests();
+        }
+    };
 
-    private Lock lock = new ReentrantLock();
-    private Condition consumer = lock.newCondition();
-    private HashSet<DownloadTaskExecutor> downloadTaskExecutors = new HashSet<>(1);
+    /**
+     * Updated by the admission thread and cleared by {@link #cancel()}.
+     */
+    private final Set<DownloadTaskExecutor> downloadTaskExecutors =
+            Collections.newSetFromMap(new ConcurrentHashMap<DownloadTaskExecutor, Boolean>());
     private DownloadTaskExecutor defaultTaskExecutor;
     private DownloadInfoManager downloadInfoManager;
 
@@ -45,58 +65,103 @@ public class DownloadDispatcher extends Task {
         if (isRunning()) {
             return;
         }
-        isRunning.set(true);
-        isCanceled.set(false);
-        TaskManager.execute(this);
         downloadInfoManager = DownloadInfoManager.getInstance();
-        defaultTaskExecutor = new SimpleDownloadTaskExecutor();
+        defaultTaskExecutor = new FairShareTaskExecutor();
+        isRunning.set(true);
     }
 
     void enqueueRequest(final DownloadRequest downloadRequest) {
         start();
-        if (isRunning()) {
-            if (!requestQueue.contains(downloadRequest)) {
-                requestQueue.add(downloadRequest);
-                signalConsumer();
-            } else {
-                printExistRequestWarning(downloadRequest);
-            }
+        if (queuedIds.add(downloadRequest.getId())) {
+            requestQueue.add(downloadRequest);
+            scheduleAdmission();
+        } else {
+            printExistRequestWarning(downloadRequest);
         }
     }
 
-    void consumeRequest() {
-        waitForConsumer();
-        DownloadRequest downloadRequest = requestQueue.poll();
-        DownloadTask downloadTask = null;
-        if (downloadRequest != null) {
-            if (!downloadManager.isTaskRunning(downloadRequest.getId())) {
-                downloadTask = createTaskFromRequest(downloadRequest);
-            } else {
-                printExistRequestWarning(downloadRequest);
+    private void scheduleAdmission() {
+        if (isRunning() && !requestQueue.isEmpty() && isAdmitting.compareAndSet(false, true)) {
+            TaskManager.execute(admitRunnable);
+        }
+    }
+
+    void admitRequests() {
+        try {
+            List<DownloadRequest> batch = new ArrayList<>();
+            while (isRunning()) {
+                DownloadRequest downloadRequest;
+                while (batch.size() < MAX_BATCH_SIZE && (downloadRequest = requestQueue.poll()) != null) {
+                    batch.add(downloadRequest);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                admit(batch);
+                batch.clear();
             }
+        } finally {
+            isAdmitting.set(false);
         }
-        if (downloadTask != null) {
-            DownloadTaskExecutor downloadTaskExecutor = downloadTask.getRequest().getDownloadExecutor();
-            if (downloadTaskExecutor == null) {
-                downloadTaskExecutor = defaultTaskExecutor;
+        //A request may have been queued after the queue was found empty.
+        scheduleAdmission();
+    }
+
+    /**
+     * The ids of the batch stay queued until their tasks are registered,so the same download can't be
+     * enqueued again while it is admitted.
+     */
+    private void admit(List<DownloadRequest> batch) {
+        List<DownloadTask> downloadTasks = new ArrayList<>(batch.size());
+        try {
+            Set<String> batchIds = new HashSet<>(batch.size());
+            List<String> unknownIds = new ArrayList<>();
+            for (DownloadRequest downloadRequest : batch) {
+                if (batchIds.add(downloadRequest.getId()) && downloadRequest.getDownloadInfo() == null) {
+                    unknownIds.add(downloadRequest.getId());
+                }
             }
-            if (!downloadTaskExecutors.contains(downloadTaskExecutor)) {
-                downloadTaskExecutor.init();
-                downloadTaskExecutors.add(downloadTaskExecutor);
+            batchIds.clear();
+            Map<String, DownloadDetailsInfo> storedInfos = DBService.getInstance().getDownloadInfos(unknownIds);
+            List<DownloadDetailsInfo> newInfos = new ArrayList<>();
+            for (DownloadRequest downloadRequest : batch) {
+                if (!batchIds.add(downloadRequest.getId()) || downloadManager.isTaskRunning(downloadRequest.getId())) {
+                    printExistRequestWarning(downloadRequest);
+                    continue;
+                }
+                DownloadTask downloadTask = createTaskFromRequest(downloadRequest, storedInfos, newInfos);
+                if (downloadTask != null) {
+                    downloadTasks.add(downloadTask);
+                }
+            }
+            if (!newInfos.isEmpty()) {
+                DBService.getInstance().updateInfos(newInfos);
+            }
+        } finally {
+            for (DownloadRequest downloadRequest : batch) {
+                queuedIds.remove(downloadRequest.getId());
             }
-            downloadTaskExecutor.execute(downloadTask);
+        }
+        for (DownloadTask downloadTask : downloadTasks) {
+            dispatch(downloadTask);
         }
     }
 
-    @Override
-    public void execute() {
-        while (isRunnable()) {
-            consumeRequest();
+    private void dispatch(DownloadTask downloadTask) {
+        if (SharedTransferManager.getInstance().share(downloadTask)) {
+            return;
         }
-        isRunning.set(false);
+        DownloadTaskExecutor downloadTaskExecutor = downloadTask.getRequest().getDownloadExecutor();
+        if (downloadTaskExecutor == null) {
+            downloadTaskExecutor = defaultTaskExecutor;
+        }
+        if (downloadTaskExecutors.add(downloadTaskExecutor)) {
+            downloadTaskExecutor.init();
+        }
+        downloadTask.onQueued();
+        downloadTaskExecutor.execute(downloadTask);
     }
 
-
     public boolean isRunning() {
         return isRunning.get();
     }
@@ -105,51 +170,23 @@ public class DownloadDispatcher extends Task {
         this.isRunning.set(isRunning);
     }
 
-    @Override
     public synchronized void cancel() {
-        isCanceled.set(true);
-        signalConsumer();
+        isRunning.set(false);
         downloadTaskExecutors.clear();
+        SharedTransferManager.getInstance().clear();
+        AsyncTransferEngine.getInstance().shutdown();
+        DiskWriter.getInstance().shutdown();
         if (defaultTaskExecutor != null) {
             defaultTaskExecutor.shutdown();
         }
     }
 
-    boolean isBlockForConsumeRequest() {
-        return requestQueue.isEmpty() && isRunnable();
-    }
-
-    void waitForConsumer() {
-        lock.lock();
-        try {
-            while (isBlockForConsumeRequest()) {
-                consumer.await();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    boolean isRunnable() {
-        return isRunning() && !isCanceled.get();
-    }
-
-    void signalConsumer() {
-        lock.lock();
-        try {
-            consumer.signal();
-        } finally {
-            lock.unlock();
-        }
-    }
-
     void printExistRequestWarning(DownloadRequest request) {
         LogUtil.w("task " + request.getName() + " already enqueue,we need do nothing.");
     }
 
-    DownloadTask createTaskFromRequest(DownloadRequest downloadRequest) {
+    DownloadTask createTaskFromRequest(DownloadRequest downloadRequest, Map<String, DownloadDetailsInfo> storedInfos,
+                                       List<DownloadDetailsInfo> newInfos) {
         String url = downloadRequest.getUrl();
         String id = downloadRequest.getId();
         String tag = downloadRequest.getTag();
@@ -159,7 +196,19 @@ public class DownloadDispatcher extends Task {
         }
         DownloadDetailsInfo downloadInfo = downloadRequest.getDownloadInfo();
         if (downloadInfo == null) {
-            downloadInfo = createDownloadInfo(id, url, filePath, tag);
+            downloadInfo = storedInfos.get(id);
+            if (downloadInfo != null && downloadInfo.isDeleted()) {
+                //It was deleted after the request was submitted,the request is submitted again after the deletion.
+                if (DeletionService.getInstance().deferIfDeleting(downloadRequest)) {
+                    return null;
+                }
+                downloadInfo = null;
+            }
+            if (downloadInfo == null) {
+                //create a new instance if not found.
+                downloadInfo = downloadInfoManager.createDownloadInfo(url, filePath, tag, id, System.currentTimeMillis());
+                newInfos.add(downloadInfo);
+            }
             downloadRequest.setDownloadInfo(downloadInfo);
         }
         if (downloadInfo.getFilePath() != null && downloadRequest.getFilePath() == null) {
@@ -173,12 +222,13 @@ public class DownloadDispatcher extends Task {
     boolean isUsableSpaceEnough(DownloadRequest downloadRequest) {
         long downloadDirUsableSpace;
         String filePath = downloadRequest.getFilePath();
+        DiskSpaceLedger diskSpaceLedger = DiskSpaceLedger.getInstance();
         if (filePath == null) {
-            downloadDirUsableSpace = Util.getUsableSpace(new File(Util.getCachePath(PumpFactory.getService(IDownloadManager.class).getContext())));
+            downloadDirUsableSpace = diskSpaceLedger.getAvailableSpace(new File(Util.getCachePath(PumpFactory.getService(IDownloadManager.class).getContext())));
         } else {
-            downloadDirUsableSpace = Util.getUsableSpace(new File(filePath));
+            downloadDirUsableSpace = diskSpaceLedger.getAvailableSpace(new File(filePath).getParentFile());
         }
-        long dataFileUsableSpace = Util.getUsableSpace(Environment.getDataDirectory());
+        long dataFileUsableSpace = diskSpaceLedger.getUsableSpace(Environment.getDataDirectory());
         long minUsableStorageSpace = getMinUsableStorageSpace();
         if (downloadDirUsableSpace <= minUsableStorageSpace || dataFileUsableSpace <= minUsableStorageSpace) {
             Context context = PumpFactory.getService(IDownloadManager.class).getContext();
@@ -197,15 +247,4 @@ public class DownloadDispatcher extends Task {
     long getMinUsableStorageSpace() {
         return PumpFactory.getService(IDownloadConfigService.class).getMinUsableSpace();
     }
-
-    DownloadDetailsInfo createDownloadInfo(String id, String url, String filePath, String tag) {
-        DownloadDetailsInfo downloadInfo = DBService.getInstance().getDownloadInfo(id);
-        if (downloadInfo != null) {
-            return downloadInfo;
-        }
-        //create a new instance if not found.
-        downloadInfo = downloadInfoManager.createDownloadInfo(url, filePath, tag, id, System.currentTimeMillis());
-        DBService.getInstance().updateInfo(downloadInfo);
-        return downloadInfo;
-    }
-}
\ No newline at end of file
+}
@@ -12,9 +12,12 @@ public final class DownloadInfo {
 
     private final long completedSize;
     private final long contentLength;
+    private final long decodedSize;
     private final int finished;
     private final Status status;
-    private final String speed;
+    private final long bytesPerSecond;
+    private final long instantBytesPerSecond;
+    private final long remainingTime;
     private final ErrorCode errorCode;
     private final String tag;
     private final long createTime;
@@ -23,16 +26,19 @@ public final class DownloadInfo {
     private DownloadDetailsInfo downloadDetailsInfo;
 
     DownloadInfo(String url, File downloadFile, String tag, String id, long createTime,
-                 String speed, long completedSize, long contentLength, ErrorCode errorCode,
+                 long bytesPerSecond, long instantBytesPerSecond, long remainingTime, long completedSize, long contentLength, long decodedSize, ErrorCode errorCode,
                  Status status, int finished, int progress, DownloadDetailsInfo downloadDetailsInfo) {
         this.url = url;
         this.downloadFile = downloadFile;
         this.tag = tag;
         this.id = id;
         this.createTime = createTime;
-        this.speed = speed;
+        this.bytesPerSecond = bytesPerSecond;
+        this.instantBytesPerSecond = instantBytesPerSecond;
+        this.remainingTime = remainingTime;
         this.completedSize = completedSize;
         this.contentLength = contentLength;
+        this.decodedSize = decodedSize;
         this.errorCode = errorCode;
         this.status = status;
         this.finished = finished;
@@ -56,8 +62,32 @@ public final class DownloadInfo {
         return downloadDetailsInfo.getWfExtraData();
     }
 
+    /**
+     * @return the speed measured in the last second,formatted with unit,such as "1.5MB/s".
+     */
     public String getSpeed() {
-        return speed;
+        return SpeedMonitor.formatSpeed(instantBytesPerSecond);
+    }
+
+    /**
+     * @return exponentially weighted moving average of the speed in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the speed measured in the last second in bytes per second.
+     */
+    public long getInstantBytesPerSecond() {
+        return instantBytesPerSecond;
+    }
+
+    /**
+     * @return estimated remaining time in milliseconds,or -1 if unknown.
+     */
+    public long getRemainingTime() {
+        return remainingTime;
     }
 
     public String getTag() {
@@ -96,6 +126,14 @@ public final class DownloadInfo {
         return contentLength;
     }
 
+    /**
+     * @return bytes decoded into the download file,only used by downloads of
+     * {@link DownloadRequest.DownloadGenerator#decodeContent()}.
+     */
+    public long getDecodedSize() {
+        return decodedSize;
+    }
+
     public int getProgress() {
         return progress;
     }
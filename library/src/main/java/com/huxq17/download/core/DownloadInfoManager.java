@@ -2,11 +2,28 @@ package com.huxq17.download.core;
 
 import android.database.Cursor;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Holds the download infos in memory,indexed by tag and by status so that the lists and the counts of a tag
+ * or a status only touch the matching infos. The status index is updated by
+ * {@link DownloadDetailsInfo#setStatus(DownloadInfo.Status)}.
+ */
 public class DownloadInfoManager {
     private ConcurrentHashMap<String, DownloadDetailsInfo> downloadInfoMap;
+    private final Map<String, Set<DownloadDetailsInfo>> tagIndex = new HashMap<>();
+    /**
+     * Infos without status yet are indexed by null.
+     */
+    private final Map<DownloadInfo.Status, Set<DownloadDetailsInfo>> statusIndex = new HashMap<>();
+    private final Map<DownloadDetailsInfo, DownloadInfo.Status> indexedStatuses = new HashMap<>();
 
     private DownloadInfoManager() {
         downloadInfoMap = new ConcurrentHashMap<>();
@@ -26,12 +43,107 @@ public class DownloadInfoManager {
         return downloadInfoMap.values();
     }
 
-    public DownloadDetailsInfo remove(String id) {
-        return downloadInfoMap.remove(id);
+    public synchronized DownloadDetailsInfo remove(String id) {
+        DownloadDetailsInfo downloadInfo = downloadInfoMap.remove(id);
+        if (downloadInfo != null) {
+            removeIndex(downloadInfo);
+        }
+        return downloadInfo;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         downloadInfoMap.clear();
+        tagIndex.clear();
+        statusIndex.clear();
+        indexedStatuses.clear();
+    }
+
+    /**
+     * @return the infos of the tag.
+     */
+    public synchronized List<DownloadDetailsInfo> getByTag(String tag) {
+        Set<DownloadDetailsInfo> infos = tagIndex.get(tag == null ? "" : tag);
+        return infos == null ? new ArrayList<DownloadDetailsInfo>() : new ArrayList<>(infos);
+    }
+
+    /**
+     * @return the infos in the status,null for the infos that have no status yet.
+     */
+    public synchronized List<DownloadDetailsInfo> getByStatus(DownloadInfo.Status status) {
+        Set<DownloadDetailsInfo> infos = statusIndex.get(status);
+        return infos == null ? new ArrayList<DownloadDetailsInfo>() : new ArrayList<>(infos);
+    }
+
+    public synchronized int getCountByTag(String tag) {
+        Set<DownloadDetailsInfo> infos = tagIndex.get(tag == null ? "" : tag);
+        return infos == null ? 0 : infos.size();
+    }
+
+    public synchronized int getCountByStatus(DownloadInfo.Status status) {
+        Set<DownloadDetailsInfo> infos = statusIndex.get(status);
+        return infos == null ? 0 : infos.size();
+    }
+
+    private synchronized void put(DownloadDetailsInfo downloadInfo) {
+        DownloadDetailsInfo oldInfo = downloadInfoMap.put(downloadInfo.getId(), downloadInfo);
+        if (oldInfo != null && oldInfo != downloadInfo) {
+            removeIndex(oldInfo);
+        }
+        String tag = downloadInfo.getTag() == null ? "" : downloadInfo.getTag();
+        Set<DownloadDetailsInfo> infos = tagIndex.get(tag);
+        if (infos == null) {
+            infos = new LinkedHashSet<>();
+            tagIndex.put(tag, infos);
+        }
+        infos.add(downloadInfo);
+        indexStatus(downloadInfo);
+    }
+
+    private void removeIndex(DownloadDetailsInfo downloadInfo) {
+        if (!indexedStatuses.containsKey(downloadInfo)) {
+            return;
+        }
+        String tag = downloadInfo.getTag() == null ? "" : downloadInfo.getTag();
+        removeFromIndex(tagIndex, tag, downloadInfo);
+        removeFromIndex(statusIndex, indexedStatuses.remove(downloadInfo), downloadInfo);
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<DownloadDetailsInfo>> index, K key,
+                                            DownloadDetailsInfo downloadInfo) {
+        Set<DownloadDetailsInfo> infos = index.get(key);
+        if (infos != null) {
+            infos.remove(downloadInfo);
+            if (infos.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Move the info to its current status in the status index,if it is managed.
+     */
+    synchronized void onStatusChanged(DownloadDetailsInfo downloadInfo) {
+        if (indexedStatuses.containsKey(downloadInfo)) {
+            indexStatus(downloadInfo);
+        }
+    }
+
+    private void indexStatus(DownloadDetailsInfo downloadInfo) {
+        DownloadInfo.Status status = downloadInfo.getStatus();
+        if (indexedStatuses.containsKey(downloadInfo)) {
+            DownloadInfo.Status indexedStatus = indexedStatuses.get(downloadInfo);
+            if (indexedStatus == status) {
+                return;
+            }
+            removeFromIndex(statusIndex, indexedStatus, downloadInfo);
+        }
+        indexedStatuses.put(downloadInfo, status);
+        Set<DownloadDetailsInfo> infos = statusIndex.get(status);
+        if (infos == null) {
+            infos = new LinkedHashSet<>();
+            statusIndex.put(status, infos);
+        }
+        infos.add(downloadInfo);
     }
 
     public DownloadDetailsInfo createDownloadInfo(String url, String filePath, String tag, String id, long createTime) {
@@ -51,7 +163,7 @@ public class DownloadInfoManager {
         } else {
             downloadInfo = new DownloadDetailsInfo(url, filePath, tag, id, createTime);
             if (addInMap) {
-                downloadInfoMap.put(id, downloadInfo);
+                put(downloadInfo);
             }
             return downloadInfo;
         }
@@ -67,7 +179,15 @@ public class DownloadInfoManager {
             info.setContentLength(cursor.getLong(3));
             info.setFinished(cursor.getShort(4));
             info.calculateDownloadProgress();
-            downloadInfoMap.put(id, info);
+            DeletionService deletionService = DeletionService.getInstance();
+            synchronized (deletionService) {
+                if (deletionService.isDeleting(id)) {
+                    //The row isn't deleted yet,caching it would bring the download back after its deletion.
+                    info.setStatus(DownloadInfo.Status.DELETED);
+                } else {
+                    put(info);
+                }
+            }
         }
         return info;
     }
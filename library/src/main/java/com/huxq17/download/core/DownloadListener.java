@@ -5,13 +5,22 @@ import android.text.TextUtils;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 
+import com.huxq17.download.DownloadInfoSnapshot;
 import com.huxq17.download.Pump;
 import com.huxq17.download.android.ViewLifecycleHandler;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
 public class DownloadListener {
     private String id;
     private DownloadInfo.Status status;
     private boolean enable;
+    private Executor deliveryExecutor;
+    private volatile Set<String> watchedIds;
 
     public DownloadListener() {
     }
@@ -35,6 +44,17 @@ public class DownloadListener {
         this.enable = enable;
     }
 
+    void setDeliveryExecutor(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * @return the executor that callbacks are delivered on,null for the main thread.
+     */
+    Executor getDeliveryExecutor() {
+        return deliveryExecutor;
+    }
+
     void setId(String id) {
         this.id = id;
     }
@@ -52,19 +72,102 @@ public class DownloadListener {
         return enable;
     }
 
+    /**
+     * Only receive the events of these downloads. The events of the other downloads are dropped before
+     * their download info is built,which {@link #filter(DownloadInfo)} can't do since it needs the download info.
+     *
+     * @param ids ids of the downloads,none to receive the events of all downloads again.
+     */
+    public final DownloadListener setWatchedIds(String... ids) {
+        if (ids == null || ids.length == 0) {
+            watchedIds = null;
+        } else {
+            watchedIds = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(ids)));
+        }
+        return this;
+    }
+
     private DownloadInfo downloadInfo;
+    /**
+     * The event being delivered,only valid inside the callbacks.
+     */
+    private DownloadInfoSnapshot snapshot;
+    private DownloadDetailsInfo downloadDetailsInfo;
+    private Boolean isFilterOverridden;
 
     public final DownloadInfo.Status getStatus() {
         return status;
     }
 
+    /**
+     * The download info is built on first call after each progress update,
+     * outside of the callbacks it reflects the latest state of the download.
+     */
     public final DownloadInfo getDownloadInfo() {
+        if (downloadInfo == null) {
+            if (snapshot != null) {
+                downloadInfo = snapshot.getDownloadInfo();
+            } else if (downloadDetailsInfo != null) {
+                downloadInfo = downloadDetailsInfo.snapshot();
+            }
+        }
         return downloadInfo;
     }
 
+    private boolean isFilterOverridden() {
+        if (isFilterOverridden == null) {
+            try {
+                isFilterOverridden = getClass().getMethod("filter", DownloadInfo.class).getDeclaringClass()
+                        != DownloadListener.class;
+            } catch (NoSuchMethodException e) {
+                isFilterOverridden = true;
+            }
+        }
+        return isFilterOverridden;
+    }
+
+    final boolean filter(DownloadInfoSnapshot snapshot) {
+        if (isFilterOverridden()) {
+            return filter(snapshot.getDownloadInfo());
+        }
+        return id == null || id.equals(snapshot.getId());
+    }
+
+    /**
+     * @return false if the events of the download are not received for sure,without building the download info.
+     */
+    final boolean mayAccept(String downloadId) {
+        Set<String> watchedIds = this.watchedIds;
+        if (watchedIds != null && !watchedIds.contains(downloadId)) {
+            return false;
+        }
+        return isFilterOverridden() || id == null || id.equals(downloadId);
+    }
+
+    final void downloading(DownloadInfoSnapshot snapshot) {
+        DownloadInfo.Status status = snapshot.status;
+        this.snapshot = snapshot;
+        this.downloadDetailsInfo = snapshot.downloadDetailsInfo;
+        this.downloadInfo = snapshot.downloadInfo;
+        this.status = status;
+        try {
+            onProgress(snapshot.progress);
+            if (status == DownloadInfo.Status.FAILED) {
+                onFailed();
+                unSubscribe();
+            } else if (status == DownloadInfo.Status.FINISHED) {
+                onSuccess();
+                unSubscribe();
+            }
+        } finally {
+            this.snapshot = null;
+        }
+    }
+
     final void downloading(DownloadInfo downloadInfo) {
         DownloadInfo.Status status = downloadInfo.getStatus();
         this.downloadInfo = downloadInfo;
+        this.downloadDetailsInfo = downloadInfo.getDownloadDetailsInfo();
         this.status = status;
         int progress = downloadInfo.getProgress();
         onProgress(progress);
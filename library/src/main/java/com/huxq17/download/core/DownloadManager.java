@@ -6,6 +6,7 @@ import android.text.TextUtils;
 
 import com.huxq17.download.DownloadInfoSnapshot;
 import com.huxq17.download.callback.Filter;
+import com.huxq17.download.callback.Func;
 import com.huxq17.download.core.task.DownloadTask;
 import com.huxq17.download.db.DBService;
 import com.huxq17.download.core.service.IDownloadManager;
@@ -13,7 +14,9 @@ import com.huxq17.download.utils.LogUtil;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class DownloadManager implements IDownloadManager {
     private Context context;
@@ -40,6 +43,9 @@ public class DownloadManager implements IDownloadManager {
             LogUtil.e("task " + downloadRequest.getName() + " is running,we need do nothing.");
             return;
         }
+        if (DeletionService.getInstance().deferIfDeleting(downloadRequest)) {
+            return;
+        }
         DownloadDetailsInfo downloadInfo = downloadInfoManager.get(id);
         if (downloadInfo != null) {
             downloadRequest.setDownloadInfo(downloadInfo);
@@ -51,37 +57,27 @@ public class DownloadManager implements IDownloadManager {
         if (TextUtils.isEmpty(id)) {
             throw new IllegalArgumentException("Id is empty.");
         }
-        DownloadTask downloadTask = getDownloadTaskById(id);
-        if (downloadTask != null) {
-            synchronized (downloadTask.getLock()) {
-                downloadTask.cancel();
-                DownloadDetailsInfo downloadInfo = downloadTask.getDownloadInfo();
-                deleteDownloadInfo(downloadInfo);
-            }
-        } else {
-            DownloadDetailsInfo downloadInfo = downloadInfoManager.get(id);
-            if (downloadInfo == null) {
-                downloadInfo = DBService.getInstance().getDownloadInfo(id);
-            }
-            deleteDownloadInfo(downloadInfo);
-        }
+        //Marked deleted at once,the database and the files are deleted in the background.
+        DeletionService.getInstance().delete(Collections.singletonList(id), null);
     }
 
-    private void deleteDownloadInfo(DownloadDetailsInfo downloadInfo) {
-        if (downloadInfo != null) {
-            downloadInfo.setStatus(DownloadInfo.Status.DELETED);
-            downloadInfoManager.remove(downloadInfo.getId());
-            downloadInfo.deleteTempDir();
-            downloadInfo.deleteDownloadFile();
-            DBService.getInstance().deleteInfo(downloadInfo.getId());
-        }
+    public void deleteByTag(String tag) {
+        deleteByTag(tag, null);
     }
 
-    public void deleteByTag(String tag) {
+    @Override
+    public Future<List<String>> deleteByTag(String tag, Func<List<String>> callback) {
         List<DownloadInfo> tasks = getDownloadListByTag(tag);
+        List<String> ids = new ArrayList<>(tasks.size());
         for (DownloadInfo info : tasks) {
-            deleteById(info.getId());
+            ids.add(info.getId());
         }
+        return DeletionService.getInstance().delete(ids, callback);
+    }
+
+    @Override
+    public Future<List<String>> delete(List<String> ids, Func<List<String>> callback) {
+        return DeletionService.getInstance().delete(ids, callback);
     }
 
     @Override
@@ -123,32 +119,89 @@ public class DownloadManager implements IDownloadManager {
 
     @Override
     public List<DownloadInfo> getDownloadingList() {
-        return getDownloadList(new Filter<DownloadDetailsInfo>() {
-            @Override
-            public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
-                return !downloadDetailsInfo.isFinished();
+        if (!hasFetchDownloadList) {
+            return getDownloadList(new Filter<DownloadDetailsInfo>() {
+                @Override
+                public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
+                    return !downloadDetailsInfo.isFinished();
+                }
+            });
+        }
+        //Only the infos in FINISHED status need to check their files.
+        List<DownloadInfo> downloadList = new ArrayList<>();
+        for (DownloadInfo.Status status : DownloadInfo.Status.values()) {
+            if (status != DownloadInfo.Status.FINISHED) {
+                addSnapshots(downloadList, downloadInfoManager.getByStatus(status), null);
             }
-        });
+        }
+        addSnapshots(downloadList, downloadInfoManager.getByStatus(null), null);
+        addSnapshots(downloadList, downloadInfoManager.getByStatus(DownloadInfo.Status.FINISHED),
+                new Filter<DownloadDetailsInfo>() {
+                    @Override
+                    public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
+                        return !downloadDetailsInfo.isFinished();
+                    }
+                });
+        return downloadList;
     }
 
     @Override
     public List<DownloadInfo> getDownloadedList() {
-        return getDownloadList(new Filter<DownloadDetailsInfo>() {
+        Filter<DownloadDetailsInfo> filter = new Filter<DownloadDetailsInfo>() {
             @Override
             public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
                 return downloadDetailsInfo.isFinished();
             }
-        });
+        };
+        if (!hasFetchDownloadList) {
+            return getDownloadList(filter);
+        }
+        List<DownloadInfo> downloadList = new ArrayList<>();
+        addSnapshots(downloadList, downloadInfoManager.getByStatus(DownloadInfo.Status.FINISHED), filter);
+        return downloadList;
     }
 
     @Override
     public List<DownloadInfo> getDownloadListByTag(final String tag) {
-        return getDownloadList(new Filter<DownloadDetailsInfo>() {
-            @Override
-            public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
-                return downloadDetailsInfo.getTag().equals(tag);
+        if (!hasFetchDownloadList) {
+            return getDownloadList(new Filter<DownloadDetailsInfo>() {
+                @Override
+                public boolean filter(DownloadDetailsInfo downloadDetailsInfo) {
+                    return downloadDetailsInfo.getTag().equals(tag);
+                }
+            });
+        }
+        List<DownloadInfo> downloadList = new ArrayList<>();
+        addSnapshots(downloadList, downloadInfoManager.getByTag(tag), null);
+        return downloadList;
+    }
+
+    @Override
+    public int getDownloadCountByTag(String tag) {
+        fetchDownloadListIfNeed();
+        return downloadInfoManager.getCountByTag(tag);
+    }
+
+    @Override
+    public int getDownloadCountByStatus(DownloadInfo.Status status) {
+        fetchDownloadListIfNeed();
+        return downloadInfoManager.getCountByStatus(status);
+    }
+
+    private void fetchDownloadListIfNeed() {
+        if (!hasFetchDownloadList) {
+            hasFetchDownloadList = true;
+            DBService.getInstance().getDownloadList();
+        }
+    }
+
+    private static void addSnapshots(List<DownloadInfo> downloadList, List<DownloadDetailsInfo> infos,
+                                     Filter<DownloadDetailsInfo> filter) {
+        for (DownloadDetailsInfo downloadDetailsInfo : infos) {
+            if (filter == null || filter.filter(downloadDetailsInfo)) {
+                downloadList.add(downloadDetailsInfo.snapshot());
             }
-        });
+        }
     }
 
     @Override
@@ -162,6 +215,9 @@ public class DownloadManager implements IDownloadManager {
             hasFetchDownloadList = true;
             List<DownloadDetailsInfo> list = DBService.getInstance().getDownloadList();
             for (DownloadDetailsInfo downloadDetailsInfo : list) {
+                if (downloadDetailsInfo.isDeleted()) {
+                    continue;
+                }
                 if (filter == null || filter.filter(downloadDetailsInfo)) {
                     downloadList.add(downloadDetailsInfo.snapshot());
                 }
@@ -181,13 +237,13 @@ public class DownloadManager implements IDownloadManager {
         if (downloadDetailsInfo == null) {
             downloadDetailsInfo = DBService.getInstance().getDownloadInfo(id);
         }
-        return downloadDetailsInfo != null ? downloadDetailsInfo.snapshot() : null;
+        //The row of a download being deleted is still in the database until the deletion is done.
+        return downloadDetailsInfo != null && !downloadDetailsInfo.isDeleted() ? downloadDetailsInfo.snapshot() : null;
     }
 
     @Override
     public boolean hasDownloadSucceed(String id) {
-        DownloadDetailsInfo info = DBService.getInstance().getDownloadInfo(id);
-        return info != null && info.isFinished();
+        return CompletionIndex.getInstance().getFinishedFile(id) != null;
     }
 
     public boolean isTaskRunning(String id) {
@@ -205,17 +261,14 @@ public class DownloadManager implements IDownloadManager {
 
     @Override
     public File getFileIfSucceed(String id) {
-        if (hasDownloadSucceed(id)) {
-            DownloadDetailsInfo info = DBService.getInstance().getDownloadInfo(id);
-            return info.getDownloadFile();
-        }
-        return null;
+        return CompletionIndex.getInstance().getFinishedFile(id);
     }
 
     @Override
     public void shutdown() {
         downloadDispatcher.cancel();
         downloadInfoManager.clear();
+        CompletionIndex.getInstance().clear();
         DownloadInfoSnapshot.release();
         hasFetchDownloadList = false;
     }
@@ -6,7 +6,14 @@ import android.text.TextUtils;
 import com.huxq17.download.Pump;
 import com.huxq17.download.PumpFactory;
 import com.huxq17.download.core.service.IDownloadManager;
+import com.huxq17.download.core.storage.StorageTarget;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+import okhttp3.Headers;
 import okhttp3.Request;
 
 
@@ -19,14 +26,21 @@ public final class DownloadRequest {
     private final boolean forceReDownload;
     private final int retryCount;
     private final int retryDelay;
+    private final int priority;
     //Maybe use in the future
     private final DownloadListener downloadListener;
     private final DownloadTaskExecutor downloadTaskExecutor;
     private final boolean disableBreakPointDownload;
+    private final boolean contentDecoding;
+    private final String patchBaseFilePath;
+    private final String patchTargetMD5;
+    private final String extractDirPath;
+    private final ExtractListener extractListener;
+    private final StorageTarget storageTarget;
     private final Request.Builder httpRequestBuilder;
 
     private DownloadDetailsInfo downloadInfo;
-
+    private String transferKey;
 
     DownloadRequest(DownloadGenerator downloadGenerator) {
         this.id = downloadGenerator.id;
@@ -37,9 +51,16 @@ public final class DownloadRequest {
         this.forceReDownload = downloadGenerator.forceReDownload;
         this.retryCount = downloadGenerator.retryCount;
         this.retryDelay = downloadGenerator.retryDelay;
+        this.priority = downloadGenerator.priority;
         this.downloadListener = downloadGenerator.downloadListener;
         this.downloadTaskExecutor = downloadGenerator.downloadTaskExecutor;
         this.disableBreakPointDownload = downloadGenerator.disableBreakPointDownload;
+        this.contentDecoding = downloadGenerator.contentDecoding;
+        this.patchBaseFilePath = downloadGenerator.patchBaseFilePath;
+        this.patchTargetMD5 = downloadGenerator.patchTargetMD5;
+        this.extractDirPath = downloadGenerator.extractDirPath;
+        this.extractListener = downloadGenerator.extractListener;
+        this.storageTarget = downloadGenerator.storageTarget;
         this.httpRequestBuilder = downloadGenerator.httpRequestBuilder;
         if (httpRequestBuilder != null) {
             httpRequestBuilder.url(url);
@@ -55,6 +76,10 @@ public final class DownloadRequest {
         return Math.max(retryDelay, 0);
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
     public DownloadDetailsInfo getDownloadInfo() {
         return downloadInfo;
     }
@@ -106,15 +131,88 @@ public final class DownloadRequest {
         return disableBreakPointDownload;
     }
 
+    public boolean isContentDecoding() {
+        return contentDecoding;
+    }
+
+    /**
+     * @return the base file of the patch,or null if the request doesn't download a patch.
+     */
+    public File getPatchBaseFile() {
+        return patchBaseFilePath == null ? null : new File(patchBaseFilePath);
+    }
+
+    public String getPatchTargetMD5() {
+        return patchTargetMD5;
+    }
+
+    /**
+     * @return the directory to extract the archive to,or null if the request doesn't extract.
+     */
+    public File getExtractDir() {
+        return extractDirPath == null ? null : new File(extractDirPath);
+    }
+
+    public ExtractListener getExtractListener() {
+        return extractListener;
+    }
+
+    /**
+     * @return the target to store the finished content,or null if it is stored to the download file.
+     */
+    public StorageTarget getStorageTarget() {
+        return storageTarget;
+    }
+
     public DownloadTaskExecutor getDownloadExecutor() {
         return downloadTaskExecutor;
     }
 
     public Request.Builder getHttpRequestBuilder() {
+        Request.Builder builder;
         if (httpRequestBuilder == null) {
-            return new Request.Builder().url(url).build().newBuilder();
+            builder = new Request.Builder().url(url).build().newBuilder();
+        } else {
+            builder = httpRequestBuilder.build().newBuilder();
         }
-        return httpRequestBuilder.build().newBuilder();
+        if (contentDecoding) {
+            //An explicit Accept-Encoding keeps OkHttp from decoding the body,so ranges apply to the encoded bytes.
+            builder.header("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+        }
+        return builder;
+    }
+
+    /**
+     * Return the key of the network transfer this request performs, built from the method, the
+     * normalized url and the request headers. Requests with the same key fetch the same bytes,
+     * so they can share one transfer even if their ids and file paths are different.
+     *
+     * @return transfer key
+     */
+    public String getTransferKey() {
+        if (transferKey == null) {
+            Request request = getHttpRequestBuilder().build();
+            StringBuilder builder = new StringBuilder(request.method())
+                    .append(' ')
+                    .append(request.url().newBuilder().fragment(null).build());
+            Headers headers = request.headers();
+            TreeSet<String> sortedHeaders = new TreeSet<>();
+            for (int i = 0; i < headers.size(); i++) {
+                sortedHeaders.add(headers.name(i).toLowerCase(Locale.US) + ":" + headers.value(i));
+            }
+            for (String header : sortedHeaders) {
+                builder.append('\n').append(header);
+            }
+            transferKey = builder.toString();
+        }
+        return transferKey;
+    }
+
+    /**
+     * @return true if the http request carries headers,which may select another content of the url.
+     */
+    public boolean hasRequestHeaders() {
+        return getTransferKey().indexOf('\n') >= 0;
     }
 
     public static DownloadGenerator newRequest(String url, String filePath) {
@@ -130,11 +228,18 @@ public final class DownloadRequest {
         private boolean forceReDownload;
         private int retryCount;
         private int retryDelay;
+        private int priority;
         private DownloadListener downloadListener;
 
         private static final int DEFAULT_RETRY_DELAY = 200;
         private DownloadTaskExecutor downloadTaskExecutor;
         private boolean disableBreakPointDownload;
+        private boolean contentDecoding;
+        private String patchBaseFilePath;
+        private String patchTargetMD5;
+        private String extractDirPath;
+        private ExtractListener extractListener;
+        private StorageTarget storageTarget;
         private Request.Builder httpRequestBuilder;
 
         public DownloadGenerator(String url, String filePath) {
@@ -157,6 +262,18 @@ public final class DownloadRequest {
             return this;
         }
 
+        /**
+         * Set the listener whose callbacks are delivered on the executor,see {@link Pump#subscribe(DownloadListener, Executor)}.
+         *
+         * @param listener download listener
+         * @param executor executor to deliver callbacks
+         */
+        public DownloadGenerator listener(final DownloadListener listener, Executor executor) {
+            listener.setDeliveryExecutor(executor);
+            this.downloadListener = listener;
+            return this;
+        }
+
 
         /**
          * Tag download task, can use {@link Pump#getDownloadListByTag(String)} to get download list
@@ -185,6 +302,64 @@ public final class DownloadRequest {
             return this;
         }
 
+        /**
+         * Download the compressed representation of the file if the server supports it (gzip or deflate),
+         * and decode it into the download file after the download completes.
+         * Breakpoint download resumes the compressed bytes,and {@link DownloadInfo#getDecodedSize()}
+         * reports the decoded bytes.
+         */
+        public DownloadGenerator decodeContent() {
+            this.contentDecoding = true;
+            return this;
+        }
+
+        /**
+         * The url is a bsdiff patch from the base file to the new file,for example from the installed apk
+         * to the new version. The patch is downloaded as usual and then applied to build the new file
+         * at the file path,which is verified by md5.
+         *
+         * @param baseFilePath the file which the patch was made from.
+         * @param targetMD5    the md5 of the new file.
+         */
+        public DownloadGenerator patch(String baseFilePath, String targetMD5) {
+            if (TextUtils.isEmpty(baseFilePath) || TextUtils.isEmpty(targetMD5)) {
+                throw new IllegalArgumentException("baseFilePath and targetMD5 can not be empty.");
+            }
+            this.patchBaseFilePath = baseFilePath;
+            this.patchTargetMD5 = targetMD5;
+            return this;
+        }
+
+        /**
+         * Extract the downloaded zip,tar or tar.gz archive into the directory. Entries are extracted
+         * while the file downloads,from the start of the file as far as it has been downloaded continuously,
+         * and the extraction is completed when the download finishes.
+         *
+         * @param dirPath  the directory to extract to.
+         * @param listener filter and callback of entries,can be null.
+         */
+        public DownloadGenerator extractTo(String dirPath, ExtractListener listener) {
+            this.extractDirPath = dirPath;
+            this.extractListener = listener;
+            return this;
+        }
+
+        /**
+         * Store the finished content into the target,for example a MediaStore or SAF document,
+         * instead of the file path. The blocks are written straight into the target at their positions,only their
+         * progress is kept in the temp dir of the file path so the download can resume into the same target.
+         * The target is published once its length is verified,and is aborted if publishing it fails.
+         * A download that doesn't complete leaves the target unpublished.
+         * It can't be used with {@link #decodeContent()},{@link #patch(String, String)} or
+         * {@link #extractTo(String, ExtractListener)},and the content isn't shared or cached with other downloads.
+         *
+         * @param storageTarget the final destination of the download.
+         */
+        public DownloadGenerator storeTo(StorageTarget storageTarget) {
+            this.storageTarget = storageTarget;
+            return this;
+        }
+
         /**
          * Pump will connect server by this OKHttp request builder,so you can customize download's http request.
          * For example,you can specify http method, head and params.
@@ -222,12 +397,26 @@ public final class DownloadRequest {
             return this;
         }
 
+        /**
+         * Set the priority of the download,default 0. Tasks of higher priority run first
+         * when the scheduling policy is {@link com.huxq17.download.core.schedule.PrioritySchedulingPolicy}.
+         *
+         * @param priority priority
+         */
+        public DownloadGenerator priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
         public DownloadGenerator setDownloadTaskExecutor(DownloadTaskExecutor downloadTaskExecutor) {
             this.downloadTaskExecutor = downloadTaskExecutor;
             return this;
         }
 
         public void submit() {
+            if (storageTarget != null && (contentDecoding || patchBaseFilePath != null || extractDirPath != null)) {
+                throw new IllegalArgumentException("storeTo can not be used with decodeContent,patch or extractTo.");
+            }
             id = TextUtils.isEmpty(this.id) ? url : this.id;
             if (threadNum <= 0) {
                 threadNum = 3;
@@ -0,0 +1,22 @@
+package com.huxq17.download.core;
+
+/**
+ * How downloaded data is flushed to the storage device,
+ * set by {@link com.huxq17.download.config.DownloadConfig.Builder#setDurabilityPolicy(DurabilityPolicy)}.
+ */
+public enum DurabilityPolicy {
+    /**
+     * Data is left to the system to flush,a download resumed after power loss may contain torn data.
+     */
+    NONE,
+    /**
+     * The finished file is synced before the download is reported finished.
+     */
+    ON_FINALIZE,
+    /**
+     * Block files are synced together with a checkpoint of their lengths at every checkpoint interval and when
+     * the download stops,and the finished file is synced as {@link #ON_FINALIZE}. A download resumes from its
+     * last checkpoint,the bytes written after it are discarded.
+     */
+    PERIODIC
+}
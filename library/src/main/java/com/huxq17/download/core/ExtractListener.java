@@ -0,0 +1,26 @@
+package com.huxq17.download.core;
+
+import java.io.File;
+
+/**
+ * Filters and observes the entries of a downloaded archive,
+ * see {@link DownloadRequest.DownloadGenerator#extractTo(String, ExtractListener)}.
+ * It is called on the extracting thread,not the main thread.
+ */
+public abstract class ExtractListener {
+
+    /**
+     * @param name the entry name in the archive.
+     * @return false to skip the entry.
+     */
+    public boolean accept(String name) {
+        return true;
+    }
+
+    /**
+     * Called when an entry has been written to file,an entry may be extracted again if
+     * the archive has to be extracted from the download file.
+     */
+    public void onEntryExtracted(String name, File file) {
+    }
+}
@@ -0,0 +1,175 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadConfigService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the running slots and the bandwidth among tags by weight. The share of a tag that has nothing
+ * to run or download is divided among the busy ones,so no capacity is left unused.
+ * <p>
+ * Weights and the bandwidth default to the config,and can be changed at runtime.
+ * The running slots are shared by {@link FairShareTaskExecutor},the bandwidth is paced in
+ * {@link #pace(String, long)} by a virtual clock per tag. The clocks are atomics and the weight of the busy tags
+ * is summed at most once per {@link #WEIGHT_REFRESH_INTERVAL},so pacing takes no lock.
+ */
+public class FairShareScheduler {
+    /**
+     * A tag is downloading if it has paced bytes within this many nanoseconds.
+     */
+    private static final long ACTIVE_WINDOW = 1000000000L;
+    /**
+     * Bytes of this many nanoseconds may be sent at once after a tag was idle.
+     */
+    private static final long MAX_BURST = 100000000L;
+    /**
+     * The weight of the busy tags is summed again after this many nanoseconds.
+     */
+    private static final long WEIGHT_REFRESH_INTERVAL = 100000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private final Map<String, Integer> weights = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PaceState> paceStates = new ConcurrentHashMap<>();
+    private volatile long maxBandwidth = -1;
+    private final AtomicLong weightRefreshTime = new AtomicLong();
+    private volatile boolean isWeightRefreshed;
+    /**
+     * Increased on every refresh,a tag counted in {@link #activeWeight} holds the current generation.
+     */
+    private volatile long weightGeneration;
+    private volatile long activeWeight;
+
+    private static FairShareScheduler instance = new FairShareScheduler();
+
+    private FairShareScheduler() {
+    }
+
+    public static FairShareScheduler getInstance() {
+        return instance;
+    }
+
+    private static class PaceState {
+        final AtomicLong nextTime = new AtomicLong(Long.MIN_VALUE);
+        volatile long lastActiveTime;
+        volatile long weightGeneration = -1;
+    }
+
+    /**
+     * Change the weight of a tag at runtime.
+     *
+     * @param tag    the tag of downloads,empty for the downloads without tag.
+     * @param weight weight of the tag,at least 1.
+     */
+    public void setWeight(String tag, int weight) {
+        weights.put(tag == null ? "" : tag, Math.max(1, weight));
+    }
+
+    public int getWeight(String tag) {
+        Integer weight = weights.get(tag == null ? "" : tag);
+        if (weight != null) {
+            return weight;
+        }
+        return PumpFactory.getService(IDownloadConfigService.class).getTagWeight(tag == null ? "" : tag);
+    }
+
+    /**
+     * Change the bandwidth shared by all downloads at runtime.
+     *
+     * @param maxBandwidth bytes per second,0 is unlimited.
+     */
+    public void setMaxBandwidth(long maxBandwidth) {
+        this.maxBandwidth = Math.max(0, maxBandwidth);
+    }
+
+    public long getMaxBandwidth() {
+        if (maxBandwidth >= 0) {
+            return maxBandwidth;
+        }
+        return PumpFactory.getService(IDownloadConfigService.class).getMaxBandwidth();
+    }
+
+    /**
+     * Take the bytes just received from the share of the tag,it never blocks.
+     * The async transfers reschedule their next slice after the returned delay.
+     *
+     * @param tag   the tag of the download.
+     * @param bytes bytes just received.
+     * @return nanoseconds to wait before the tag may receive more bytes,0 if it needn't wait.
+     */
+    public long pace(String tag, long bytes) {
+        long maxBandwidth = getMaxBandwidth();
+        if (maxBandwidth <= 0) {
+            return 0;
+        }
+        return Math.max(0, reserve(tag == null ? "" : tag, bytes, maxBandwidth, System.nanoTime()));
+    }
+
+    /**
+     * Like {@link #pace(String, long)},but sleep for the delay. Only used on the threads owned by one transfer.
+     */
+    public void paceBlocking(String tag, long bytes) {
+        long delay = pace(tag, bytes);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds to wait before the bytes are within the share of the tag.
+     */
+    long reserve(String tag, long bytes, long maxBandwidth, long now) {
+        PaceState paceState = paceStates.get(tag);
+        if (paceState == null) {
+            PaceState newState = new PaceState();
+            paceState = paceStates.putIfAbsent(tag, newState);
+            if (paceState == null) {
+                paceState = newState;
+            }
+        }
+        paceState.lastActiveTime = now;
+        int weight = getWeight(tag);
+        long totalWeight = getActiveWeight(now);
+        if (paceState.weightGeneration != weightGeneration) {
+            //Became busy after the last refresh.
+            totalWeight += weight;
+        }
+        double bytesPerSecond = (double) maxBandwidth * weight / Math.max(weight, totalWeight);
+        long interval = (long) (bytes * NANOS_PER_SECOND / bytesPerSecond);
+        long nextTime;
+        long newNextTime;
+        do {
+            nextTime = paceState.nextTime.get();
+            newNextTime = (nextTime == Long.MIN_VALUE ? now - MAX_BURST : Math.max(nextTime, now - MAX_BURST)) + interval;
+        } while (!paceState.nextTime.compareAndSet(nextTime, newNextTime));
+        return newNextTime - now;
+    }
+
+    /**
+     * @return the weight of the tags busy at the last refresh,only one caller sums it again when it is stale.
+     */
+    private long getActiveWeight(long now) {
+        long refreshTime = weightRefreshTime.get();
+        if ((!isWeightRefreshed || now - refreshTime >= WEIGHT_REFRESH_INTERVAL)
+                && weightRefreshTime.compareAndSet(refreshTime, now)) {
+            long generation = weightGeneration + 1;
+            long totalWeight = 0;
+            for (Map.Entry<String, PaceState> entry : paceStates.entrySet()) {
+                PaceState paceState = entry.getValue();
+                if (now - paceState.lastActiveTime < ACTIVE_WINDOW) {
+                    totalWeight += getWeight(entry.getKey());
+                    paceState.weightGeneration = generation;
+                }
+            }
+            activeWeight = totalWeight;
+            weightGeneration = generation;
+            isWeightRefreshed = true;
+        }
+        return activeWeight;
+    }
+}
@@ -0,0 +1,298 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+import com.huxq17.download.core.schedule.SchedulingPolicy;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executor,runs at most {@link #getMaxDownloadNumber()} tasks of all tags and shares the running
+ * slots among tags by their weights in {@link FairShareScheduler}. When a slot is free,the next task is taken
+ * from the tag that runs the fewest tasks for its weight,and within the tag the {@link SchedulingPolicy}
+ * of the config picks the task of the smallest rank. Ties go to the task queued first.
+ * A tag with nothing queued leaves its slots to the others.
+ * <p>
+ * The queue of a tag is ordered by the rank cached when the task was queued. The policy is only called
+ * outside the lock of the executor,and the queued tasks are ranked again at most once per
+ * {@link #RERANK_INTERVAL},so a rank that changes while the task waits is still followed.
+ */
+public class FairShareTaskExecutor implements DownloadTaskExecutor {
+    private static final long RERANK_INTERVAL = 1000000000L;
+    private final Map<String, PriorityQueue<QueuedTask>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> runningCounts = new HashMap<>();
+    private int runningCount;
+    private long sequence;
+    private long rerankTime = System.nanoTime();
+    private ThreadPoolExecutor threadPool;
+    private boolean isShutdown;
+
+    private static class QueuedTask implements Comparable<QueuedTask> {
+        final DownloadTask downloadTask;
+        final long queuedTime;
+        long sequence;
+        double rank;
+        /**
+         * The rank computed by {@link #rerankIfNeed()} outside the lock,NaN until then.
+         */
+        double nextRank = Double.NaN;
+
+        QueuedTask(DownloadTask downloadTask) {
+            this.downloadTask = downloadTask;
+            this.queuedTime = System.nanoTime();
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            if (rank != other.rank) {
+                return rank < other.rank ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    @Override
+    public synchronized void init() {
+        int threadCount = Math.max(1, getMaxDownloadNumber());
+        threadPool = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, getName() + "-thread-" + count.incrementAndGet());
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(DownloadTask downloadTask) {
+        if (downloadTask == null) {
+            throw new NullPointerException();
+        }
+        QueuedTask queuedTask = new QueuedTask(downloadTask);
+        queuedTask.rank = getSchedulingPolicy().rank(downloadTask, 0);
+        rerankIfNeed();
+        List<DownloadRequest> prewarmRequests;
+        synchronized (this) {
+            String tag = downloadTask.getRequest().getTag();
+            PriorityQueue<QueuedTask> queue = queues.get(tag);
+            if (queue == null) {
+                queue = new PriorityQueue<>();
+                queues.put(tag, queue);
+            }
+            queuedTask.sequence = sequence++;
+            queue.add(queuedTask);
+            LogUtil.d("Task " + downloadTask.getName() + " is ready.");
+            prewarmRequests = scheduleNext();
+        }
+        prewarm(prewarmRequests);
+    }
+
+    private SchedulingPolicy getSchedulingPolicy() {
+        return PumpFactory.getService(IDownloadConfigService.class).getSchedulingPolicy();
+    }
+
+    /**
+     * Rank the queued tasks again if they were ranked {@link #RERANK_INTERVAL} ago.
+     * The policy is called without the lock,then the queues are rebuilt by the new ranks.
+     */
+    private void rerankIfNeed() {
+        long now = System.nanoTime();
+        List<QueuedTask> queuedTasks;
+        synchronized (this) {
+            if (isShutdown || queues.isEmpty() || now - rerankTime < RERANK_INTERVAL) {
+                return;
+            }
+            rerankTime = now;
+            queuedTasks = new ArrayList<>();
+            for (PriorityQueue<QueuedTask> queue : queues.values()) {
+                queuedTasks.addAll(queue);
+            }
+        }
+        SchedulingPolicy schedulingPolicy = getSchedulingPolicy();
+        for (QueuedTask queuedTask : queuedTasks) {
+            queuedTask.nextRank = schedulingPolicy.rank(queuedTask.downloadTask, now - queuedTask.queuedTime);
+        }
+        synchronized (this) {
+            for (Map.Entry<String, PriorityQueue<QueuedTask>> entry : queues.entrySet()) {
+                List<QueuedTask> queue = new ArrayList<>(entry.getValue());
+                for (QueuedTask queuedTask : queue) {
+                    if (!Double.isNaN(queuedTask.nextRank)) {
+                        queuedTask.rank = queuedTask.nextRank;
+                        queuedTask.nextRank = Double.NaN;
+                    }
+                }
+                entry.setValue(new PriorityQueue<>(queue));
+            }
+        }
+    }
+
+    /**
+     * Run the next tasks while there are free slots,must be called with the lock.
+     *
+     * @return the requests to prewarm by {@link #prewarm(List)} after the lock is released.
+     */
+    private List<DownloadRequest> scheduleNext() {
+        int maxDownloadNumber = Math.max(1, getMaxDownloadNumber());
+        if (threadPool.getMaximumPoolSize() < maxDownloadNumber) {
+            threadPool.setMaximumPoolSize(maxDownloadNumber);
+            threadPool.setCorePoolSize(maxDownloadNumber);
+        }
+        while (!isShutdown && runningCount < maxDownloadNumber) {
+            final QueuedTask queuedTask = selectTask();
+            if (queuedTask == null) {
+                break;
+            }
+            final String tag = queuedTask.downloadTask.getRequest().getTag();
+            final DownloadTask downloadTask = queuedTask.downloadTask;
+            PriorityQueue<QueuedTask> queue = queues.get(tag);
+            queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(tag);
+            }
+            runningCount++;
+            Integer count = runningCounts.get(tag);
+            runningCounts.put(tag, count == null ? 1 : count + 1);
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        downloadTask.run();
+                    } finally {
+                        onTaskEnd(tag);
+                    }
+                }
+            });
+        }
+        return getPrewarmRequests();
+    }
+
+    /**
+     * Pick the tasks likely to run next: the first {@link ConnectionPrewarmer#getPrewarmCount()} entries of the
+     * heap of each tag,which hold its head and the tasks right behind it,ordered by rank.
+     * Only those few tasks are looked at,the queues aren't copied.
+     */
+    private List<DownloadRequest> getPrewarmRequests() {
+        int prewarmCount = ConnectionPrewarmer.getInstance().getPrewarmCount();
+        if (prewarmCount <= 0 || isShutdown || queues.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<QueuedTask> candidates = new ArrayList<>();
+        for (PriorityQueue<QueuedTask> queue : queues.values()) {
+            Iterator<QueuedTask> iterator = queue.iterator();
+            for (int i = 0; i < prewarmCount && iterator.hasNext(); i++) {
+                candidates.add(iterator.next());
+            }
+        }
+        Collections.sort(candidates);
+        List<DownloadRequest> prewarmRequests = new ArrayList<>(Math.min(prewarmCount, candidates.size()));
+        for (int i = 0; i < prewarmCount && i < candidates.size(); i++) {
+            prewarmRequests.add(candidates.get(i).downloadTask.getRequest());
+        }
+        return prewarmRequests;
+    }
+
+    /**
+     * Warm the hosts of the tasks likely to run next,called without the lock.
+     */
+    private void prewarm(List<DownloadRequest> prewarmRequests) {
+        ConnectionPrewarmer prewarmer = ConnectionPrewarmer.getInstance();
+        for (DownloadRequest downloadRequest : prewarmRequests) {
+            prewarmer.prewarm(downloadRequest);
+        }
+    }
+
+    /**
+     * @return the head of the queue of the tag which runs the fewest tasks for its weight.
+     */
+    private QueuedTask selectTask() {
+        FairShareScheduler scheduler = FairShareScheduler.getInstance();
+        QueuedTask selectedTask = null;
+        double selectedShare = 0;
+        for (Map.Entry<String, PriorityQueue<QueuedTask>> entry : queues.entrySet()) {
+            String tag = entry.getKey();
+            Integer count = runningCounts.get(tag);
+            double share = ((count == null ? 0 : count) + 1d) / scheduler.getWeight(tag);
+            if (selectedTask != null && share > selectedShare) {
+                continue;
+            }
+            QueuedTask firstTask = entry.getValue().peek();
+            if (selectedTask == null || share < selectedShare || firstTask.compareTo(selectedTask) < 0) {
+                selectedTask = firstTask;
+                selectedShare = share;
+            }
+        }
+        return selectedTask;
+    }
+
+    private void onTaskEnd(String tag) {
+        rerankIfNeed();
+        List<DownloadRequest> prewarmRequests;
+        synchronized (this) {
+            runningCount--;
+            Integer count = runningCounts.get(tag);
+            if (count == null || count <= 1) {
+                runningCounts.remove(tag);
+            } else {
+                runningCounts.put(tag, count - 1);
+            }
+            prewarmRequests = scheduleNext();
+        }
+        prewarm(prewarmRequests);
+    }
+
+    /**
+     * @return the number of tasks of the tag that are running.
+     */
+    public synchronized int getRunningCount(String tag) {
+        Integer count = runningCounts.get(tag);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public int getMaxDownloadNumber() {
+        return PumpFactory.getService(IDownloadConfigService.class).getMaxRunningTaskNumber();
+    }
+
+    @Override
+    public String getName() {
+        return "FairShareTaskExecutor";
+    }
+
+    @Override
+    public String getTag() {
+        return null;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        isShutdown = true;
+        //The dropped tasks never start,so they leave the queue depth here.
+        int droppedCount = 0;
+        for (PriorityQueue<QueuedTask> queue : queues.values()) {
+            droppedCount += queue.size();
+        }
+        queues.clear();
+        if (threadPool != null) {
+            droppedCount += threadPool.shutdownNow().size();
+        }
+        DownloadMetrics.getInstance().onDequeued(droppedCount);
+    }
+}
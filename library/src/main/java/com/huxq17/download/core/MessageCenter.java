@@ -7,25 +7,34 @@ import android.os.Message;
 
 import androidx.annotation.NonNull;
 
+import com.huxq17.download.DownloadInfoSnapshot;
 import com.huxq17.download.PumpFactory;
 import com.huxq17.download.core.service.IDownloadManager;
 import com.huxq17.download.core.service.IMessageCenter;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers progress to listeners. Listeners without a delivery executor are called on the main thread
+ * for every event. A listener with its own executor gets a mailbox that keeps only the latest
+ * {@link DownloadInfo} of each download,so a slow listener skips the stale events instead of
+ * queuing them up.
+ */
 public class MessageCenter implements IMessageCenter {
     private Context context;
     private ConcurrentLinkedQueue<DownloadListener> observers = new ConcurrentLinkedQueue<>();
-    private Handler handler = new Handler(Looper.getMainLooper()) {
-        @Override
-        public void handleMessage(@NonNull Message msg) {
-            if (isShutdown()) {
-                return;
-            }
-            handleDownloadInfoSnapshot(getObserverIterator(), (DownloadInfo) msg.obj);
-        }
-    };
+    private ConcurrentLinkedQueue<Mailbox> mailboxes = new ConcurrentLinkedQueue<>();
+    /**
+     * Created on first use,so that MessageCenter can be constructed without a main looper.
+     */
+    private Handler handler;
 
     @Override
     public void start(Context context) {
@@ -49,6 +58,20 @@ public class MessageCenter implements IMessageCenter {
         }
     }
 
+    void handleDownloadInfoSnapshot(Iterator<DownloadListener> iterator, DownloadInfoSnapshot snapshot) {
+        String id = snapshot.getId();
+        while (iterator.hasNext()) {
+            DownloadListener downloadListener = iterator.next();
+            if (downloadListener != null && downloadListener.isEnable()) {
+                if (downloadListener.mayAccept(id) && downloadListener.filter(snapshot)) {
+                    downloadListener.downloading(snapshot);
+                }
+            } else {
+                iterator.remove();
+            }
+        }
+    }
+
     boolean isShutdown() {
         return PumpFactory.getService(IDownloadManager.class).isShutdown();
     }
@@ -58,27 +81,48 @@ public class MessageCenter implements IMessageCenter {
         if (isShutdown()) {
             return;
         }
+        if (!mailboxes.isEmpty()) {
+            postToMailboxes(downloadInfo);
+            //Skip the main thread when every listener has its own executor.
+            if (observers.isEmpty()) {
+                return;
+            }
+        }
         Message message = Message.obtain();
-        message.obj = downloadInfo.snapshot();
-//        DownloadInfoSnapshot snapshot = DownloadInfoSnapshot.obtain();
-//        message.obj = snapshot;
-//        snapshot.downloadInfo = downloadInfo;
-//        snapshot.completedSize = downloadInfo.getCompletedSize();
-//        snapshot.status = downloadInfo.getStatus();
-
-//        long completedSize = downloadInfo.getCompletedSize();
-//        //用arg1存高32位的long值
-//        message.arg1 = (int) ((completedSize & 0xffffffff00000000L) >> 32);
-//        //用arg2存低32位的long值
-//        message.arg2 = (int) (completedSize & 0x00000000ffffffffL);
-        handler.sendMessage(message);
+        //The snapshot is recycled after it is handled,DownloadInfo is built only if a listener asks for it.
+        message.obj = downloadInfo.obtainSnapshot();
+        getHandler().sendMessage(message);
 //        context.getContentResolver().notifyChange(CONTENT_URI, null);
     }
 
+    private void postToMailboxes(DownloadDetailsInfo downloadDetailsInfo) {
+        String id = downloadDetailsInfo.getId();
+        DownloadInfo downloadInfo = null;
+        for (Mailbox mailbox : mailboxes) {
+            DownloadListener downloadListener = mailbox.downloadListener;
+            if (downloadListener.isEnable() && downloadListener.mayAccept(id)) {
+                if (downloadInfo == null) {
+                    downloadInfo = downloadDetailsInfo.snapshot();
+                }
+                mailbox.post(downloadInfo);
+            }
+        }
+    }
+
     @Override
     public synchronized void register(DownloadListener downloadListener) {
         downloadListener.setEnable(true);
-        observers.add(downloadListener);
+        if (downloadListener.getDeliveryExecutor() != null) {
+            mailboxes.add(new Mailbox(downloadListener, downloadListener.getDeliveryExecutor()));
+        } else {
+            observers.add(downloadListener);
+        }
+    }
+
+    @Override
+    public synchronized void register(DownloadListener downloadListener, Executor executor) {
+        downloadListener.setDeliveryExecutor(executor);
+        register(downloadListener);
     }
 
     @Override
@@ -91,12 +135,26 @@ public class MessageCenter implements IMessageCenter {
                 iterator.remove();
             }
         }
+        Iterator<Mailbox> mailboxIterator = mailboxes.iterator();
+        while (mailboxIterator.hasNext()) {
+            DownloadListener downloadListener = mailboxIterator.next().downloadListener;
+            if (id.equals(downloadListener.getId())) {
+                downloadListener.setEnable(false);
+                mailboxIterator.remove();
+            }
+        }
     }
 
     @Override
     public synchronized void unRegister(DownloadListener downloadListener) {
         downloadListener.setEnable(false);
         observers.remove(downloadListener);
+        Iterator<Mailbox> iterator = mailboxes.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().downloadListener.equals(downloadListener)) {
+                iterator.remove();
+            }
+        }
     }
 
     /**
@@ -106,14 +164,83 @@ public class MessageCenter implements IMessageCenter {
         return context;
     }
 
-    void setHandler(Handler handler) {
+    synchronized void setHandler(Handler handler) {
         this.handler = handler;
     }
-    Handler getHandler(){
+    synchronized Handler getHandler() {
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper()) {
+                @Override
+                public void handleMessage(@NonNull Message msg) {
+                    DownloadInfoSnapshot snapshot = (DownloadInfoSnapshot) msg.obj;
+                    if (!isShutdown()) {
+                        handleDownloadInfoSnapshot(getObserverIterator(), snapshot);
+                    }
+                    snapshot.recycle();
+                }
+            };
+        }
         return handler;
     }
 
     int getObserverSize() {
         return observers.size();
     }
+
+    int getMailboxSize() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Keeps the latest download info of each download until the listener's executor delivers it.
+     */
+    private class Mailbox implements Runnable {
+        private final DownloadListener downloadListener;
+        private final Executor executor;
+        private final Map<String, DownloadInfo> latestInfos = new LinkedHashMap<>();
+        private boolean isScheduled;
+
+        Mailbox(DownloadListener downloadListener, Executor executor) {
+            this.downloadListener = downloadListener;
+            this.executor = executor;
+        }
+
+        void post(DownloadInfo downloadInfo) {
+            synchronized (this) {
+                latestInfos.put(downloadInfo.getId(), downloadInfo);
+                if (isScheduled) {
+                    return;
+                }
+                isScheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    isScheduled = false;
+                    latestInfos.clear();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                List<DownloadInfo> downloadInfos;
+                synchronized (this) {
+                    if (latestInfos.isEmpty()) {
+                        isScheduled = false;
+                        return;
+                    }
+                    downloadInfos = new ArrayList<>(latestInfos.values());
+                    latestInfos.clear();
+                }
+                for (DownloadInfo downloadInfo : downloadInfos) {
+                    if (!isShutdown() && downloadListener.isEnable() && downloadListener.filter(downloadInfo)) {
+                        downloadListener.downloading(downloadInfo);
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,304 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.utils.LogUtil;
+import com.huxq17.download.utils.MD5Util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import okio.BufferedSink;
+import okio.Okio;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Applies a bsdiff 4.x patch to a base file. The control,diff and extra blocks of the patch are streamed
+ * and the base file is read by seeking,so memory use doesn't depend on the file sizes.
+ * <p>
+ * The blocks may be stored raw or gzip compressed,bzip2 blocks are not supported since neither the JDK
+ * nor Android ships a bzip2 decoder.
+ * Patches are applied one at a time on a background thread.
+ */
+public class PatchApplier {
+    private static final byte[] MAGIC = {'B', 'S', 'D', 'I', 'F', 'F', '4', '0'};
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static ExecutorService executor;
+
+    private PatchApplier() {
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "pump-patch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return true if the file starts with the bsdiff magic.
+     */
+    public static boolean isPatch(File file) {
+        if (file == null || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            readFully(inputStream, magic, magic.length);
+            return Arrays.equals(MAGIC, magic);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Apply the patch on the background thread and wait for it.
+     *
+     * @param targetMD5 the md5 of the target file,the target is deleted if it doesn't match.
+     * @return true if the target is built and verified.
+     */
+    public static boolean apply(final File baseFile, final File patchFile, final File targetFile,
+                                final String targetMD5) {
+        Future<Boolean> future = getExecutor().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                long startTime = System.currentTimeMillis();
+                try {
+                    apply(baseFile, patchFile, targetFile);
+                } catch (IOException e) {
+                    LogUtil.e("apply patch " + patchFile.getName() + " failed: " + e.getMessage());
+                    targetFile.delete();
+                    return false;
+                }
+                if (!targetMD5.equalsIgnoreCase(MD5Util.getMD5(targetFile))) {
+                    LogUtil.e("patched " + targetFile.getName() + " doesn't match md5 " + targetMD5);
+                    targetFile.delete();
+                    return false;
+                }
+                LogUtil.d("Patch " + targetFile.getName() + " spend=" + (System.currentTimeMillis() - startTime));
+                return true;
+            }
+        });
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    static void apply(File baseFile, File patchFile, File targetFile) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        InputStream headerStream = new FileInputStream(patchFile);
+        try {
+            readFully(headerStream, header, HEADER_SIZE);
+        } finally {
+            closeQuietly(headerStream);
+        }
+        if (!Arrays.equals(MAGIC, Arrays.copyOf(header, MAGIC.length))) {
+            throw new IOException("not a bsdiff patch");
+        }
+        long ctrlLength = readOffset(header, 8);
+        long diffLength = readOffset(header, 16);
+        long newSize = readOffset(header, 24);
+        long extraLength = patchFile.length() - HEADER_SIZE - ctrlLength - diffLength;
+        if (ctrlLength < 0 || diffLength < 0 || newSize < 0 || extraLength < 0) {
+            throw new IOException("corrupt patch header");
+        }
+        InputStream ctrlStream = null;
+        InputStream diffStream = null;
+        InputStream extraStream = null;
+        RandomAccessFile baseAccessFile = null;
+        BufferedSink bufferedSink = null;
+        try {
+            ctrlStream = openBlock(patchFile, HEADER_SIZE, ctrlLength);
+            diffStream = openBlock(patchFile, HEADER_SIZE + ctrlLength, diffLength);
+            extraStream = openBlock(patchFile, HEADER_SIZE + ctrlLength + diffLength, extraLength);
+            baseAccessFile = new RandomAccessFile(baseFile, "r");
+            long baseSize = baseAccessFile.length();
+            bufferedSink = Okio.buffer(Okio.sink(targetFile));
+            byte[] ctrl = new byte[24];
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] baseBuffer = new byte[BUFFER_SIZE];
+            long newPosition = 0;
+            long basePosition = 0;
+            while (newPosition < newSize) {
+                readFully(ctrlStream, ctrl, ctrl.length);
+                long addLength = readOffset(ctrl, 0);
+                long copyLength = readOffset(ctrl, 8);
+                long seek = readOffset(ctrl, 16);
+                if (addLength < 0 || copyLength < 0 || newPosition + addLength + copyLength > newSize) {
+                    throw new IOException("corrupt patch control");
+                }
+                //The diff bytes are added to the base bytes at the same position.
+                long remaining = addLength;
+                while (remaining > 0) {
+                    int len = (int) Math.min(remaining, BUFFER_SIZE);
+                    readFully(diffStream, buffer, len);
+                    long start = Math.max(basePosition, 0);
+                    long end = Math.min(basePosition + len, baseSize);
+                    if (start < end) {
+                        baseAccessFile.seek(start);
+                        baseAccessFile.readFully(baseBuffer, 0, (int) (end - start));
+                        for (long i = start; i < end; i++) {
+                            buffer[(int) (i - basePosition)] += baseBuffer[(int) (i - start)];
+                        }
+                    }
+                    bufferedSink.write(buffer, 0, len);
+                    basePosition += len;
+                    remaining -= len;
+                }
+                //The extra bytes are new to the target.
+                remaining = copyLength;
+                while (remaining > 0) {
+                    int len = (int) Math.min(remaining, BUFFER_SIZE);
+                    readFully(extraStream, buffer, len);
+                    bufferedSink.write(buffer, 0, len);
+                    remaining -= len;
+                }
+                newPosition += addLength + copyLength;
+                basePosition += seek;
+            }
+            bufferedSink.flush();
+        } finally {
+            closeQuietly(bufferedSink);
+            closeQuietly(baseAccessFile);
+            closeQuietly(ctrlStream);
+            closeQuietly(diffStream);
+            closeQuietly(extraStream);
+        }
+    }
+
+    private static InputStream openBlock(File patchFile, long offset, long length) throws IOException {
+        FileInputStream fileInputStream = new FileInputStream(patchFile);
+        InputStream inputStream;
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = fileInputStream.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new EOFException();
+                }
+                skipped += n;
+            }
+            inputStream = new BufferedInputStream(new BlockInputStream(fileInputStream, length), BUFFER_SIZE);
+            inputStream.mark(3);
+            int b1 = inputStream.read();
+            int b2 = inputStream.read();
+            int b3 = inputStream.read();
+            inputStream.reset();
+            if (b1 == 0x1f && b2 == 0x8b) {
+                return new GZIPInputStream(inputStream, BUFFER_SIZE);
+            } else if (b1 == 'B' && b2 == 'Z' && b3 == 'h') {
+                throw new IOException("bzip2 compressed patch is not supported");
+            }
+            return inputStream;
+        } catch (IOException e) {
+            closeQuietly(fileInputStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Offsets are stored as 8 bytes little endian magnitude with the sign in the highest bit.
+     */
+    private static long readOffset(byte[] buffer, int offset) {
+        long value = buffer[offset + 7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return (buffer[offset + 7] & 0x80) != 0 ? -value : value;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int len = inputStream.read(buffer, read, length - read);
+            if (len == -1) {
+                throw new EOFException("unexpected end of patch");
+            }
+            read += len;
+        }
+    }
+
+    /**
+     * Reads at most length bytes of the stream.
+     */
+    private static class BlockInputStream extends FilterInputStream {
+        private long remaining;
+
+        BlockInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
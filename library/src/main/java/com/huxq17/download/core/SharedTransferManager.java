@@ -0,0 +1,81 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.LogUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the network transfers in flight, so that requests for the same resource under
+ * different ids are attached to the running transfer instead of downloading it again.
+ */
+public class SharedTransferManager {
+    private final ConcurrentHashMap<String, DownloadTask> transferMap = new ConcurrentHashMap<>();
+
+    private static SharedTransferManager instance = new SharedTransferManager();
+
+    private SharedTransferManager() {
+    }
+
+    public static SharedTransferManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Attach the task to a running transfer of the same resource, or register it as the task that
+     * performs the transfer.
+     *
+     * @param downloadTask download task
+     * @return true if the task was attached to another transfer and must not be executed.
+     */
+    boolean share(DownloadTask downloadTask) {
+        DownloadRequest downloadRequest = downloadTask.getRequest();
+        if (!isShareable(downloadRequest)) {
+            return false;
+        }
+        String transferKey = downloadRequest.getTransferKey();
+        while (true) {
+            DownloadTask primaryTask = transferMap.putIfAbsent(transferKey, downloadTask);
+            if (primaryTask == null || primaryTask == downloadTask) {
+                return false;
+            }
+            if (primaryTask.addFollower(downloadTask)) {
+                LogUtil.d("task " + downloadTask.getName() + " shares the transfer of " + primaryTask.getName());
+                return true;
+            }
+            //The primary task is finishing,let the new task take over.
+            transferMap.remove(transferKey, primaryTask);
+        }
+    }
+
+    /**
+     * Unregister the task once its transfer is over.
+     *
+     * @param downloadTask download task
+     */
+    public void release(DownloadTask downloadTask) {
+        DownloadRequest downloadRequest = downloadTask.getRequest();
+        if (downloadRequest != null) {
+            transferMap.remove(downloadRequest.getTransferKey(), downloadTask);
+        }
+    }
+
+    void clear() {
+        transferMap.clear();
+    }
+
+    /**
+     * A follower only gets a link to the primary's file,so neither side may change the file after the transfer.
+     * A patched download ends with another file than the bytes transferred,and the archive of an extracting
+     * download is only unpacked by the chain of its own task.
+     */
+    private boolean isShareable(DownloadRequest downloadRequest) {
+        return PumpFactory.getService(IDownloadConfigService.class).isTransferSharingEnabled()
+                && downloadRequest.getStorageTarget() == null
+                && downloadRequest.getPatchBaseFile() == null
+                && downloadRequest.getExtractDir() == null
+                && downloadRequest.getTransferKey().startsWith("GET ");
+    }
+}
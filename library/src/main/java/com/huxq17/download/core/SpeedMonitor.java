@@ -1,44 +1,110 @@
 package com.huxq17.download.core;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the throughput of a download in bytes per second,{@link #download(long)} may be called from
+ * several block threads at once. The rate is sampled at most once per second,the instantaneous rate is
+ * the rate of the last sample and the average is an exponentially weighted moving average of the samples.
+ */
 public class SpeedMonitor {
-    private long totalRead = 0;
-    private long lastSpeedCountTime = 0;
-    final double NANOS_PER_SECOND = 1000000000.0;  //1秒=10亿nanoseconds
-    final double BYTES_PER_GB = 1024 * 1024 * 1024;    //1G=1024*1024*1024byte
-    final double BYTES_PER_MIB = 1024 * 1024;    //1M=1024*1024byte
-    final double BYTES_PER_KB = 1024;
-    final String BYTE_SUFFIX = "B/s";
-    final String KB_SUFFIX = "KB/s";
-    final String MIB_SUFFIX = "MB/s";
-    final String GB_SUFFIX = "GB/s";
-    double speed = 0;
-    String suffix = BYTE_SUFFIX;
+    final static double NANOS_PER_SECOND = 1000000000.0;  //1秒=10亿nanoseconds
+    final static double BYTES_PER_GB = 1024 * 1024 * 1024;    //1G=1024*1024*1024byte
+    final static double BYTES_PER_MIB = 1024 * 1024;    //1M=1024*1024byte
+    final static double BYTES_PER_KB = 1024;
+    final static String BYTE_SUFFIX = "B/s";
+    final static String KB_SUFFIX = "KB/s";
+    final static String MIB_SUFFIX = "MB/s";
+    final static String GB_SUFFIX = "GB/s";
+    /**
+     * Weight of a one second sample in the moving average.
+     */
+    private static final double ALPHA = 0.3;
+    private final AtomicLong totalRead = new AtomicLong();
+    private volatile long lastSpeedCountTime = 0;
+    private volatile long instantSpeed;
+    private volatile long averageSpeed;
+    private boolean hasSample;
 
     public void download(long length) {
-        totalRead += length;
+        totalRead.addAndGet(length);
         if (lastSpeedCountTime == 0) {
-            lastSpeedCountTime = currentTime();
+            synchronized (this) {
+                if (lastSpeedCountTime == 0) {
+                    lastSpeedCountTime = currentTime();
+                }
+            }
         }
     }
 
-    public String getSpeed() {
+    private synchronized void sample() {
         long curTime = currentTime();
-        if (curTime >= lastSpeedCountTime + NANOS_PER_SECOND) {
-            if (totalRead < BYTES_PER_KB) {
-                speed = NANOS_PER_SECOND * totalRead / (curTime - lastSpeedCountTime);
-                suffix = BYTE_SUFFIX;
-            } else if (totalRead >= BYTES_PER_KB && totalRead < BYTES_PER_MIB) {
-                speed = NANOS_PER_SECOND * totalRead / BYTES_PER_KB / (curTime - lastSpeedCountTime);
-                suffix = KB_SUFFIX;
-            } else if (totalRead >= BYTES_PER_MIB && totalRead < BYTES_PER_GB) {
-                speed = NANOS_PER_SECOND * totalRead / BYTES_PER_MIB / (curTime - lastSpeedCountTime);
-                suffix = MIB_SUFFIX;
-            } else if (totalRead >= BYTES_PER_GB) {
-                speed = NANOS_PER_SECOND * totalRead / BYTES_PER_GB / (curTime - lastSpeedCountTime);
-                suffix = GB_SUFFIX;
-            }
-            lastSpeedCountTime = curTime;
-            totalRead = 0;
+        if (lastSpeedCountTime == 0 || curTime < lastSpeedCountTime + NANOS_PER_SECOND) {
+            return;
+        }
+        double elapsed = curTime - lastSpeedCountTime;
+        long speed = (long) (NANOS_PER_SECOND * totalRead.getAndSet(0) / elapsed);
+        if (hasSample) {
+            //A long window weighs as several one second samples.
+            double weight = 1 - Math.pow(1 - ALPHA, elapsed / NANOS_PER_SECOND);
+            averageSpeed = (long) (weight * speed + (1 - weight) * averageSpeed);
+        } else {
+            averageSpeed = speed;
+            hasSample = true;
+        }
+        instantSpeed = speed;
+        lastSpeedCountTime = curTime;
+    }
+
+    /**
+     * @return bytes per second measured in the last second.
+     */
+    public long getInstantBytesPerSecond() {
+        sample();
+        return instantSpeed;
+    }
+
+    /**
+     * @return exponentially weighted moving average of bytes per second.
+     */
+    public long getBytesPerSecond() {
+        sample();
+        return averageSpeed;
+    }
+
+    /**
+     * Estimate the remaining time of a download by the average speed.
+     *
+     * @param remainingBytes bytes not downloaded yet.
+     * @return remaining time in milliseconds,or -1 if unknown.
+     */
+    public long getRemainingTime(long remainingBytes) {
+        long speed = getBytesPerSecond();
+        if (remainingBytes < 0 || speed <= 0) {
+            return -1;
+        }
+        return remainingBytes * 1000 / speed;
+    }
+
+    public String getSpeed() {
+        return formatSpeed(getInstantBytesPerSecond());
+    }
+
+    public static String formatSpeed(long bytesPerSecond) {
+        double speed;
+        String suffix;
+        if (bytesPerSecond < BYTES_PER_KB) {
+            speed = bytesPerSecond;
+            suffix = BYTE_SUFFIX;
+        } else if (bytesPerSecond < BYTES_PER_MIB) {
+            speed = bytesPerSecond / BYTES_PER_KB;
+            suffix = KB_SUFFIX;
+        } else if (bytesPerSecond < BYTES_PER_GB) {
+            speed = bytesPerSecond / BYTES_PER_MIB;
+            suffix = MIB_SUFFIX;
+        } else {
+            speed = bytesPerSecond / BYTES_PER_GB;
+            suffix = GB_SUFFIX;
         }
         if (Math.round(speed * 100) % 100 == 0) {
             return Math.round(speed * 100) / 100 + suffix;
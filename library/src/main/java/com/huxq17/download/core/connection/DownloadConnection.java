@@ -2,6 +2,8 @@ package com.huxq17.download.core.connection;
 
 import androidx.annotation.NonNull;
 
+import com.huxq17.download.core.storage.StorageTarget;
+
 import java.io.File;
 import java.io.IOException;
 
@@ -20,6 +22,11 @@ public interface DownloadConnection {
 
     void prepareDownload(File file) throws IOException;
 
+    /**
+     * Like {@link #prepareDownload(File)},but the downloaded bytes are written into the target from the position.
+     */
+    void prepareDownload(StorageTarget target, long position) throws IOException;
+
     int downloadBuffer(byte[] buffer, int offset, int byteCount) throws IOException;
 
     void flushDownload() throws IOException;
@@ -2,12 +2,15 @@ package com.huxq17.download.core.connection;
 
 import androidx.annotation.NonNull;
 
+import com.huxq17.download.core.DiskWriter;
+import com.huxq17.download.core.storage.StorageTarget;
 import com.huxq17.download.utils.Util;
 
 import java.io.File;
 import java.io.IOException;
 
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -20,7 +23,10 @@ public class OkHttpDownloadConnection implements DownloadConnection {
     private Call call;
     private OkHttpClient okHttpClient;
     private BufferedSink bufferedSink;
+    private DiskWriter.FileOutput fileOutput;
     private BufferedSource bufferedSource;
+    private StorageTarget storageTarget;
+    private long targetPosition;
     private Request.Builder builder;
 
     public OkHttpDownloadConnection(OkHttpClient okHttpClient, Request.Builder builder) {
@@ -51,28 +57,99 @@ public class OkHttpDownloadConnection implements DownloadConnection {
         return response = call.execute();
     }
 
+    /**
+     * Connect without blocking,the callback is invoked on OkHttp's dispatcher thread.
+     */
+    public void enqueue(final Callback callback) {
+        call = okHttpClient.newCall(builder.build());
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                callback.onFailure(call, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                OkHttpDownloadConnection.this.response = response;
+                callback.onResponse(call, response);
+            }
+        });
+    }
+
     @Override
     public void prepareDownload(File downloadFile) throws IOException {
         bufferedSource = response.body().source();
-        bufferedSink = Okio.buffer(Okio.appendingSink(downloadFile));
+        DiskWriter diskWriter = DiskWriter.getInstance();
+        if (diskWriter.isEnabled()) {
+            fileOutput = diskWriter.open(downloadFile);
+        } else {
+            bufferedSink = Okio.buffer(Okio.appendingSink(downloadFile));
+        }
+    }
+
+    @Override
+    public void prepareDownload(StorageTarget target, long position) {
+        bufferedSource = response.body().source();
+        storageTarget = target;
+        targetPosition = position;
     }
 
     @Override
     public int downloadBuffer(byte[] buffer, int offset, int byteCount) throws IOException {
         int len = bufferedSource.read(buffer, offset, byteCount);
         if (len != -1) {
-            bufferedSink.write(buffer, 0, len);
+            if (storageTarget != null) {
+                //The blocks of a download share the target,each writes its own range.
+                synchronized (storageTarget) {
+                    storageTarget.write(targetPosition, buffer, offset, len);
+                }
+                targetPosition += len;
+            } else if (fileOutput != null) {
+                fileOutput.write(buffer, 0, len);
+            } else {
+                bufferedSink.write(buffer, 0, len);
+            }
         }
         return len;
     }
 
+    /**
+     * Like {@link #downloadBuffer(byte[], int, int)},but only reads the bytes already buffered,
+     * so it never blocks on the socket.
+     *
+     * @return the count of bytes read,0 if nothing is buffered.
+     */
+    public int downloadBuffered(byte[] buffer, int offset, int byteCount) throws IOException {
+        long bufferedSize = bufferedSource.buffer().size();
+        if (bufferedSize == 0) {
+            return 0;
+        }
+        return downloadBuffer(buffer, offset, (int) Math.min(byteCount, bufferedSize));
+    }
+
+    /**
+     * Block until some bytes of the response are buffered,a stalled socket fails with the read timeout of the client.
+     *
+     * @return false if the response is exhausted.
+     */
+    public boolean awaitBuffered() throws IOException {
+        return bufferedSource.request(1);
+    }
+
     @Override
     public void flushDownload() throws IOException {
-        bufferedSink.flush();
+        if (fileOutput != null) {
+            fileOutput.flush();
+        } else if (bufferedSink != null) {
+            bufferedSink.flush();
+        }
     }
 
     @Override
     public void close() {
+        if (fileOutput != null) {
+            fileOutput.close();
+        }
         Util.closeQuietly(bufferedSink);
         Util.closeQuietly(bufferedSource);
     }
@@ -96,6 +173,10 @@ public class OkHttpDownloadConnection implements DownloadConnection {
             this.okHttpClient = okHttpClient;
         }
 
+        public OkHttpClient getOkHttpClient() {
+            return okHttpClient;
+        }
+
         @Override
         public DownloadConnection create(@NonNull Request.Builder requestBuilder) {
             return new OkHttpDownloadConnection(okHttpClient, requestBuilder);
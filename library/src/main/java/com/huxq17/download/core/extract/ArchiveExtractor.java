@@ -0,0 +1,293 @@
+package com.huxq17.download.core.extract;
+
+import com.huxq17.download.core.ExtractListener;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import okio.BufferedSink;
+import okio.Okio;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Extracts a zip,tar or tar.gz archive into a directory. {@link #extract(InputStream)} unpacks the entries
+ * in the order they arrive,zip entries are read by their local headers. {@link #finish(File)} completes
+ * the extraction from the whole archive: for zip only the entries of the central directory that were not
+ * extracted are read,tar is extracted again only if the stream didn't reach its end.
+ */
+public class ArchiveExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK_SIZE = 512;
+    private final File destDir;
+    private final ExtractListener extractListener;
+    /**
+     * The crc of zip entries that have been extracted.
+     */
+    private final Map<String, Long> extractedEntries = new HashMap<>();
+    private volatile boolean isStreamCompleted;
+
+    public ArchiveExtractor(File destDir, ExtractListener extractListener) {
+        this.destDir = destDir;
+        this.extractListener = extractListener;
+    }
+
+    private static boolean isZip(byte[] magic) {
+        return magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    private static boolean isGzip(byte[] magic) {
+        return (magic[0] & 0xFF) == 0x1f && (magic[1] & 0xFF) == 0x8b;
+    }
+
+    /**
+     * Extract the entries of the archive stream until it ends.
+     */
+    public void extract(InputStream inputStream) throws IOException {
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        byte[] magic = new byte[4];
+        bufferedInputStream.mark(magic.length);
+        readFully(bufferedInputStream, magic, magic.length);
+        bufferedInputStream.reset();
+        if (isZip(magic)) {
+            extractZip(new ZipInputStream(bufferedInputStream));
+        } else if (isGzip(magic)) {
+            extractTar(new GZIPInputStream(bufferedInputStream, BUFFER_SIZE));
+        } else {
+            extractTar(bufferedInputStream);
+        }
+        isStreamCompleted = true;
+    }
+
+    /**
+     * Complete the extraction from the downloaded archive.
+     */
+    public void finish(File archive) throws IOException {
+        byte[] magic = new byte[4];
+        InputStream inputStream = new FileInputStream(archive);
+        try {
+            readFully(inputStream, magic, magic.length);
+        } finally {
+            closeQuietly(inputStream);
+        }
+        if (isZip(magic)) {
+            finishZip(archive);
+        } else if (!isStreamCompleted) {
+            inputStream = new FileInputStream(archive);
+            try {
+                extract(inputStream);
+            } finally {
+                closeQuietly(inputStream);
+            }
+        }
+    }
+
+    private void extractZip(ZipInputStream zipInputStream) throws IOException {
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (!entry.isDirectory() && accept(name)) {
+                File file = writeEntry(name, zipInputStream, -1);
+                //The crc of entries with data descriptor is known after they are read.
+                synchronized (extractedEntries) {
+                    extractedEntries.put(name, entry.getCrc());
+                }
+                onEntryExtracted(name, file);
+            }
+            zipInputStream.closeEntry();
+        }
+    }
+
+    private void finishZip(File archive) throws IOException {
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                Long crc;
+                synchronized (extractedEntries) {
+                    crc = extractedEntries.get(name);
+                }
+                if (entry.isDirectory() || crc != null && crc == entry.getCrc() || !accept(name)) {
+                    continue;
+                }
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try {
+                    File file = writeEntry(name, inputStream, -1);
+                    onEntryExtracted(name, file);
+                } finally {
+                    closeQuietly(inputStream);
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private void extractTar(InputStream inputStream) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        String longName = null;
+        while (true) {
+            readFully(inputStream, header, TAR_BLOCK_SIZE);
+            if (isZeroBlock(header)) {
+                return;
+            }
+            String name = longName != null ? longName : getTarName(header);
+            longName = null;
+            long size = parseOctal(header, 124, 12);
+            byte type = header[156];
+            long padding = (TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE;
+            if (type == 'L') {
+                //GNU long name,the name of the next entry is the data of this one.
+                byte[] nameBytes = new byte[(int) size];
+                readFully(inputStream, nameBytes, nameBytes.length);
+                longName = trimNull(nameBytes, 0, nameBytes.length);
+                skipFully(inputStream, padding);
+            } else if ((type == '0' || type == 0) && accept(name)) {
+                File file = writeEntry(name, inputStream, size);
+                skipFully(inputStream, padding);
+                onEntryExtracted(name, file);
+            } else {
+                skipFully(inputStream, size + padding);
+            }
+        }
+    }
+
+    private static String getTarName(byte[] header) {
+        String name = trimNull(header, 0, 100);
+        if (header[257] == 'u' && header[258] == 's' && header[259] == 't'
+                && header[260] == 'a' && header[261] == 'r') {
+            String prefix = trimNull(header, 345, 155);
+            if (prefix.length() > 0) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private static String trimNull(byte[] buffer, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buffer[end] != 0) {
+            end++;
+        }
+        try {
+            return new String(buffer, offset, end - offset, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return new String(buffer, offset, end - offset);
+        }
+    }
+
+    private static long parseOctal(byte[] buffer, int offset, int length) throws IOException {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("corrupt tar header");
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean accept(String name) {
+        return extractListener == null || extractListener.accept(name);
+    }
+
+    private void onEntryExtracted(String name, File file) {
+        if (extractListener != null) {
+            extractListener.onEntryExtracted(name, file);
+        }
+    }
+
+    /**
+     * @param size bytes to write,or -1 to write until the stream ends.
+     */
+    private File writeEntry(String name, InputStream inputStream, long size) throws IOException {
+        File file = new File(destDir, name);
+        String destPath = destDir.getCanonicalPath() + File.separator;
+        if (!file.getCanonicalPath().startsWith(destPath)) {
+            throw new IOException("entry is outside of the target directory: " + name);
+        }
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("create directory " + parent + " failed");
+        }
+        BufferedSink bufferedSink = Okio.buffer(Okio.sink(file));
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = size;
+            while (size < 0 || remaining > 0) {
+                int len = inputStream.read(buffer, 0, size < 0 ? buffer.length : (int) Math.min(remaining, buffer.length));
+                if (len == -1) {
+                    if (size < 0) {
+                        break;
+                    }
+                    throw new EOFException("unexpected end of " + name);
+                }
+                bufferedSink.write(buffer, 0, len);
+                remaining -= len;
+            }
+        } finally {
+            closeQuietly(bufferedSink);
+        }
+        return file;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int len = inputStream.read(buffer, read, length - read);
+            if (len == -1) {
+                throw new EOFException("unexpected end of archive");
+            }
+            read += len;
+        }
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        byte[] buffer = null;
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                //Some streams can't skip,read instead.
+                if (buffer == null) {
+                    buffer = new byte[(int) Math.min(count, BUFFER_SIZE)];
+                }
+                int len = inputStream.read(buffer, 0, (int) Math.min(count, buffer.length));
+                if (len == -1) {
+                    throw new EOFException("unexpected end of archive");
+                }
+                skipped = len;
+            }
+            count -= skipped;
+        }
+    }
+}
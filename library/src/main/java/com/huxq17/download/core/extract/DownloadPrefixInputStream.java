@@ -0,0 +1,189 @@
+package com.huxq17.download.core.extract;
+
+import com.huxq17.download.core.DownloadDetailsInfo;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Reads a running download from its start. The block files are read in order and each one only up to
+ * what has been written,so the reader gets the contiguous prefix of the file as soon as it is complete
+ * and waits for the rest. After {@link #finish(File)} the remaining bytes are read from the download file.
+ * <p>
+ * Reading fails if the blocks are laid out again or shrink,since the bytes read may be stale.
+ */
+public class DownloadPrefixInputStream extends InputStream {
+    private static final long WAIT_INTERVAL = 100;
+    private final DownloadDetailsInfo downloadInfo;
+    private long position;
+    private int threadNum;
+    private long contentLength;
+    private int blockId = -1;
+    private long blockStart;
+    private long blockEnd;
+    private InputStream source;
+    private boolean isReadingDownloadFile;
+    private boolean isDownloadEnded;
+    private File downloadFile;
+    private volatile boolean closed;
+
+    public DownloadPrefixInputStream(DownloadDetailsInfo downloadInfo) {
+        this.downloadInfo = downloadInfo;
+    }
+
+    /**
+     * The download ended.
+     *
+     * @param downloadFile the download file to read the rest from,or null if the download didn't finish.
+     */
+    public synchronized void finish(File downloadFile) {
+        this.downloadFile = downloadFile;
+        isDownloadEnded = true;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        int len = read(buffer, 0, 1);
+        return len == -1 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            if (!isReadingDownloadFile) {
+                File downloadFile;
+                boolean isDownloadEnded;
+                synchronized (this) {
+                    downloadFile = this.downloadFile;
+                    isDownloadEnded = this.isDownloadEnded;
+                }
+                if (isDownloadEnded) {
+                    readDownloadFile(downloadFile);
+                }
+            }
+            if (isReadingDownloadFile) {
+                int n = source.read(b, off, len);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+            long available = getWrittenSize();
+            if (available == -1) {
+                return -1;
+            }
+            if (available > 0) {
+                int n = source.read(b, off, (int) Math.min(len, available));
+                if (n > 0) {
+                    position += n;
+                    return n;
+                }
+            }
+            synchronized (this) {
+                if (!this.isDownloadEnded) {
+                    try {
+                        wait(WAIT_INTERVAL);
+                    } catch (InterruptedException e) {
+                        throw new IOException("interrupted");
+                    }
+                }
+            }
+        }
+    }
+
+    private void readDownloadFile(File downloadFile) throws IOException {
+        if (downloadFile == null) {
+            throw new IOException("download is not finished");
+        }
+        closeQuietly(source);
+        source = new FileInputStream(downloadFile);
+        skipFully(source, position);
+        isReadingDownloadFile = true;
+    }
+
+    /**
+     * @return bytes from position that have been written to the current block,or -1 at the end of content.
+     */
+    private long getWrittenSize() throws IOException {
+        File tempDir = downloadInfo.getTempDir();
+        if (threadNum == 0) {
+            threadNum = downloadInfo.getThreadNum();
+            contentLength = downloadInfo.getContentLength();
+            if (threadNum <= 0 || tempDir == null) {
+                threadNum = 0;
+                return 0;
+            }
+        } else if (downloadInfo.getThreadNum() != threadNum
+                || contentLength > 0 && downloadInfo.getContentLength() != contentLength) {
+            throw new IOException("blocks are laid out again");
+        }
+        if (contentLength > 0 && position >= contentLength) {
+            return -1;
+        }
+        if (blockId == -1 || position >= blockEnd) {
+            closeQuietly(source);
+            source = null;
+            moveToBlock();
+        }
+        File blockFile = new File(tempDir, DOWNLOAD_PART + blockId);
+        long writtenSize = blockFile.length() - (position - blockStart);
+        if (source == null) {
+            if (writtenSize <= 0) {
+                return 0;
+            }
+            source = new FileInputStream(blockFile);
+            skipFully(source, position - blockStart);
+        } else if (writtenSize < 0 && blockFile.exists()) {
+            throw new IOException("block " + blockId + " is truncated");
+        }
+        return Math.max(0, Math.min(writtenSize, blockEnd - position));
+    }
+
+    private void moveToBlock() {
+        if (contentLength <= 0) {
+            blockId = 0;
+            blockStart = 0;
+            blockEnd = Long.MAX_VALUE;
+            return;
+        }
+        for (int i = threadNum - 1; i >= 0; i--) {
+            long start = i * contentLength / threadNum;
+            if (position >= start) {
+                blockId = i;
+                blockStart = start;
+                blockEnd = i == threadNum - 1 ? contentLength : (i + 1) * contentLength / threadNum;
+                return;
+            }
+        }
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(source);
+    }
+}
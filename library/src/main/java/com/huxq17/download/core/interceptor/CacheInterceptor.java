@@ -0,0 +1,49 @@
+package com.huxq17.download.core.interceptor;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.core.ContentCache;
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.DownloadInfo;
+import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.task.DownloadTask;
+
+public class CacheInterceptor implements DownloadInterceptor {
+
+    @Override
+    public DownloadInfo intercept(DownloadChain chain) {
+        DownloadRequest downloadRequest = chain.request();
+        DownloadDetailsInfo downloadInfo = downloadRequest.getDownloadInfo();
+        ContentCache contentCache = ContentCache.getInstance();
+        //The cache is keyed by url,a patched file isn't the content of the url,
+        //and the headers of the request may select another content of it.
+        if (!contentCache.isEnabled() || downloadRequest.isForceReDownload()
+                || downloadRequest.getStorageTarget() != null
+                || downloadRequest.getPatchBaseFile() != null
+                || !downloadRequest.getTransferKey().startsWith("GET ")
+                || downloadRequest.hasRequestHeaders()) {
+            return chain.proceed(downloadRequest);
+        }
+        DownloadTask downloadTask = downloadInfo.getDownloadTask();
+        DownloadProvider.ContentCacheBean cacheBean = contentCache.get(downloadRequest.getUrl());
+        if (cacheBean != null && cacheBean.isFresh()) {
+            if (downloadInfo.isFinished() && downloadInfo.getContentLength() == cacheBean.length) {
+                downloadInfo.setCompletedSize(cacheBean.length);
+                downloadInfo.setProgress(100);
+                downloadInfo.setStatus(DownloadInfo.Status.FINISHED);
+                return downloadInfo.snapshot();
+            }
+            if (contentCache.restore(downloadInfo, cacheBean)) {
+                downloadTask.updateInfo();
+                return downloadInfo.snapshot();
+            }
+        }
+        downloadInfo.setCacheCandidate(cacheBean);
+        DownloadInfo result = chain.proceed(downloadRequest);
+        downloadInfo.setCacheCandidate(null);
+        if (result.getStatus() == DownloadInfo.Status.FINISHED) {
+            contentCache.put(downloadInfo);
+        }
+        return result;
+    }
+}
@@ -9,17 +9,26 @@ import com.huxq17.download.DownloadProvider;
 import com.huxq17.download.ErrorCode;
 import com.huxq17.download.PumpFactory;
 import com.huxq17.download.TaskManager;
+import com.huxq17.download.core.AsyncTransferEngine;
+import com.huxq17.download.core.CheckpointManager;
+import com.huxq17.download.core.ContentCache;
+import com.huxq17.download.core.ContentDecoder;
+import com.huxq17.download.core.DiskSpaceLedger;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadInterceptor;
 import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.FairShareScheduler;
 import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.metrics.MetricsTag;
 import com.huxq17.download.core.service.IDownloadConfigService;
 import com.huxq17.download.core.service.IDownloadManager;
+import com.huxq17.download.core.storage.StorageTarget;
 import com.huxq17.download.core.task.DownloadBlockTask;
 import com.huxq17.download.core.task.DownloadTask;
 import com.huxq17.download.core.task.Task;
 import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.FileUtil;
 import com.huxq17.download.utils.LogUtil;
 import com.huxq17.download.utils.Util;
 
@@ -28,28 +37,47 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import okhttp3.CacheControl;
 import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
 
 import static com.huxq17.download.ErrorCode.ERROR_CONTENT_LENGTH_NOT_FOUND;
 import static com.huxq17.download.utils.Util.CONTENT_LENGTH_NOT_FOUND;
 import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.DOWNLOAD_PROGRESS;
 
 public class ConnectInterceptor implements DownloadInterceptor {
     private DownloadDetailsInfo downloadInfo;
     private DownloadTask downloadTask;
+    private StorageTarget storageTarget;
     private DownloadBlockTask firstBlockTask = null;
     private final List<DownloadBlockTask> blockList = new ArrayList<>();
     private boolean isConditionRequest;
+    private boolean isCacheRevalidation;
+    private static final String SMALL_FILE_SUFFIX = ".pump_tmp";
+    private static final String SPACE_RESERVATION_SUFFIX = ".pump_reserve";
+    /**
+     * Marks a temp dir whose blocks may be resumed without validators,it holds the complete length or -1.
+     */
+    private static final String RANGE_RESUME_FILE = "pump_range_resume";
+    /**
+     * The complete length recorded for a resume by an unconditional range request,null if it is not one.
+     */
+    private Long rangeResumeLength;
 
     private void deleteTempIfThreadNumChanged(DownloadDetailsInfo downloadInfo) {
         File tempDir = downloadInfo.getTempDir();
         if (tempDir != null) {
+            final String prefix = storageTarget == null ? DOWNLOAD_PART : DOWNLOAD_PROGRESS;
             String[] childList = tempDir.list(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String name) {
-                    return name.startsWith(DOWNLOAD_PART);
+                    return name.startsWith(prefix);
                 }
             });
             if (childList != null && childList.length != downloadInfo.getThreadNum()) {
@@ -61,10 +89,18 @@ public class ConnectInterceptor implements DownloadInterceptor {
     @Override
     public DownloadInfo intercept(DownloadChain chain) {
         isConditionRequest = false;
+        isCacheRevalidation = false;
+        rangeResumeLength = null;
         DownloadRequest downloadRequest = chain.request();
         downloadInfo = downloadRequest.getDownloadInfo();
         downloadTask = downloadInfo.getDownloadTask();
+        storageTarget = downloadRequest.getStorageTarget();
+        if (storageTarget != null && isStorageTargetEmpty()) {
+            //The progress of the blocks only holds for the content written into this target.
+            downloadInfo.deleteTempDir();
+        }
 
+        CheckpointManager.getInstance().restore(downloadInfo);
         deleteTempIfThreadNumChanged(downloadInfo);
         DownloadConnection conn = buildRequest(downloadRequest);
         int responseCode;
@@ -81,17 +117,59 @@ public class ConnectInterceptor implements DownloadInterceptor {
         final String lastModified = conn.getHeader("Last-Modified");
         final String eTag = conn.getHeader("ETag");
         final String acceptRanges = conn.getHeader("Accept-Ranges");
-        downloadInfo.setMD5(conn.getHeader("Content-MD5"));
+        String contentEncoding = conn.getHeader("Content-Encoding");
+        if (!downloadRequest.isContentDecoding() || !ContentDecoder.isSupported(contentEncoding)) {
+            contentEncoding = null;
+        }
+        downloadInfo.setContentEncoding(contentEncoding);
+        downloadInfo.setDecodedSize(0);
+        //Content-MD5 is the digest of the encoded bytes,not of the decoded file.
+        downloadInfo.setMD5(contentEncoding == null ? conn.getHeader("Content-MD5") : null);
         downloadInfo.setTransferEncoding(conn.getHeader("Transfer-Encoding"));
+        downloadInfo.setCacheExpires(getCacheExpires(response));
 
         responseCode = response.code();
         long contentLength = getContentLength(conn);
+        if (rangeResumeLength != null && responseCode == HttpURLConnection.HTTP_PARTIAL
+                && !isResumedRangeValid(conn, rangeResumeLength)) {
+            //Without validators the resource may have changed,download it again from zero.
+            LogUtil.w("Content-Range of " + downloadInfo.getName() + " doesn't match the partial file.");
+            if (downloadInfo.getErrorCode() == null) {
+                downloadInfo.setForceRetry(true);
+            }
+            downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+            return closeConnectionAndReturn(conn);
+        }
+        boolean isRangeProbed = false;
+        if (response.isSuccessful()) {
+            if (contentLength == CONTENT_LENGTH_NOT_FOUND && !downloadInfo.isDisableBreakPointDownload()
+                    && !"none".equals(acceptRanges)) {
+                contentLength = probeContentLength(downloadRequest);
+                isRangeProbed = contentLength != CONTENT_LENGTH_NOT_FOUND;
+            }
+            if (contentLength != CONTENT_LENGTH_NOT_FOUND && downloadInfo.isChunked()) {
+                //The length is known,read the chunked body by ranges as a fixed length one.
+                downloadInfo.setTransferEncoding(null);
+            }
+        }
+        DownloadProvider.CacheBean cacheBean = null;
+        if (!TextUtils.isEmpty(lastModified) || !TextUtils.isEmpty(eTag)) {
+            cacheBean = new DownloadProvider.CacheBean(downloadRequest.getId(), lastModified, eTag);
+        }
+        //A 206 response means the server honoured our range request,even without validators.
+        boolean isRangeResumed = responseCode == HttpURLConnection.HTTP_PARTIAL;
+        boolean isServerSupportBreakPointDownload = !downloadInfo.isChunked() && (isRangeProbed || isRangeResumed
+                || cacheBean != null && (isConditionRequest || "bytes".equals(acceptRanges)));
+        boolean isSupportBreakPointDownload = isServerSupportBreakPointDownload && !downloadInfo.isDisableBreakPointDownload();
+        int threadNum = isSupportBreakPointDownload ? downloadRequest.getThreadNum() : 1;
         if (response.isSuccessful()) {
             if (contentLength == CONTENT_LENGTH_NOT_FOUND && !downloadInfo.isChunked()) {
                 downloadInfo.setErrorCode(ERROR_CONTENT_LENGTH_NOT_FOUND);
                 return closeConnectionAndReturn(conn);
             }
-            if (checkIsSpaceNotEnough(contentLength)) {
+            //A small file is downloaded in one piece.
+            boolean isOneBlock = responseCode == HttpURLConnection.HTTP_OK && isSmallFile(contentLength);
+            if (checkIsSpaceNotEnough(contentLength, isOneBlock ? 1 : threadNum)) {
                 downloadInfo.setErrorCode(ErrorCode.ERROR_USABLE_SPACE_NOT_ENOUGH);
                 return closeConnectionAndReturn(conn);
             }
@@ -103,6 +181,15 @@ public class ConnectInterceptor implements DownloadInterceptor {
                 downloadTask.updateInfo();
                 return closeConnectionAndReturn(conn);
             }
+            if (isCacheRevalidation) {
+                DownloadProvider.ContentCacheBean cacheCandidate = downloadInfo.getCacheCandidate();
+                if (downloadInfo.getCacheExpires() >= 0) {
+                    ContentCache.getInstance().revalidate(cacheCandidate, downloadInfo.getCacheExpires());
+                }
+                if (restoreFromCache(cacheCandidate)) {
+                    return closeConnectionAndReturn(conn);
+                }
+            }
         } else {
             if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 downloadInfo.setErrorCode(ErrorCode.ERROR_FILE_NOT_FOUND);
@@ -111,26 +198,38 @@ public class ConnectInterceptor implements DownloadInterceptor {
             }
             return closeConnectionAndReturn(conn);
         }
+        //The validators are kept before the small files finish,to revalidate them and to cache them with.
+        downloadInfo.setCacheBean(cacheBean);
+        if (isServerSupportBreakPointDownload && cacheBean != null) {
+            DBService.getInstance().updateCache(cacheBean);
+        }
         if (responseCode == HttpURLConnection.HTTP_OK) {
+            if (ContentCache.getInstance().isEnabled()
+                    && restoreFromCache(ContentCache.getInstance().getByContentMD5(downloadInfo.getMd5()))) {
+                return closeConnectionAndReturn(conn);
+            }
+            if (isSmallFile(contentLength)) {
+                return downloadSmallFile(conn, contentLength);
+            }
             firstBlockTask.clearTemp();
         } else if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
 
         }
-        DownloadProvider.CacheBean cacheBean = null;
-        if (!TextUtils.isEmpty(lastModified) || !TextUtils.isEmpty(eTag)) {
-            cacheBean = new DownloadProvider.CacheBean(downloadRequest.getId(), lastModified, eTag);
-            downloadInfo.setCacheBean(cacheBean);
-        }
-        boolean isServerSupportBreakPointDownload = !downloadInfo.isChunked() && cacheBean != null && (isConditionRequest || "bytes".equals(acceptRanges));
-        boolean isSupportBreakPointDownload = isServerSupportBreakPointDownload && !downloadInfo.isDisableBreakPointDownload();
-        if (isServerSupportBreakPointDownload) {
-            DBService.getInstance().updateCache(cacheBean);
-        }
-        int threadNum = isSupportBreakPointDownload ? downloadRequest.getThreadNum() : 1;
         downloadInfo.setThreadNum(threadNum);
-        checkDownloadFile(contentLength, isSupportBreakPointDownload);
+        //A chunked body of unknown length is still appended to the block file when the range was honoured.
+        checkDownloadFile(contentLength, isSupportBreakPointDownload || isRangeResumed);
+        if (storageTarget != null && !truncateStorageTargetIfNeed()) {
+            downloadInfo.setErrorCode(ErrorCode.ERROR_DOWNLOAD_FAILED);
+            return closeConnectionAndReturn(conn);
+        }
+        //Only the responses that were chunked or had no length are resumed without validators.
+        updateRangeResumeFile(cacheBean == null && !downloadInfo.isDisableBreakPointDownload()
+                && (isRangeProbed || isRangeResumed || downloadInfo.isChunked()), contentLength);
 
         long completedSize = 0L;
+        CheckpointManager checkpointManager = CheckpointManager.getInstance();
+        checkpointManager.register(downloadInfo);
+        boolean isAsyncTransfer = AsyncTransferEngine.getInstance().isEnabled();
         synchronized (blockList) {
             for (int i = 0; i < threadNum; i++) {
                 if (i == 0) {
@@ -139,7 +238,11 @@ public class ConnectInterceptor implements DownloadInterceptor {
                     DownloadBlockTask task = new DownloadBlockTask(downloadRequest, i);
                     completedSize += task.getCompletedSize();
                     blockList.add(task);
-                    TaskManager.execute(task);
+                    if (isAsyncTransfer) {
+                        task.enqueue();
+                    } else {
+                        TaskManager.execute(task);
+                    }
                 }
             }
         }
@@ -148,6 +251,7 @@ public class ConnectInterceptor implements DownloadInterceptor {
         for (DownloadBlockTask task : blockList) {
             task.waitUntilFinished();
         }
+        checkpointManager.unregister(downloadInfo);
         clearBlockList();
         return chain.proceed(downloadRequest);
     }
@@ -166,16 +270,59 @@ public class ConnectInterceptor implements DownloadInterceptor {
         }
     }
 
-    private boolean checkIsSpaceNotEnough(long contentLength) {
-        long downloadDirUsableSpace = Util.getUsableSpace(new File(downloadInfo.getFilePath()));
-        long dataFileUsableSpace = Util.getUsableSpace(Environment.getDataDirectory());
-        long minUsableStorageSpace = PumpFactory.getService(IDownloadConfigService.class).getMinUsableSpace();
-        if (downloadDirUsableSpace < contentLength * 2 || dataFileUsableSpace <= minUsableStorageSpace) {
+    /**
+     * Reserve the bytes still to be written in the ledger: the rest of the content,plus the bytes that only exist
+     * while the download is finishing. Merging appends the other blocks onto the first one,so they exist twice
+     * until they are deleted,while a single block is renamed in place. Decoding writes a whole new copy,while the
+     * blocks of a storage target are written in place. The reservation shrinks as data is written and is released
+     * when the task ends.
+     * <p>
+     * It fails at once when the space is not enough,instead of holding the download thread until other
+     * downloads release their reservations.
+     *
+     * @param threadNum the count of the blocks the content is downloaded in.
+     */
+    private boolean checkIsSpaceNotEnough(long contentLength, int threadNum) {
+        DiskSpaceLedger diskSpaceLedger = DiskSpaceLedger.getInstance();
+        IDownloadConfigService configService = PumpFactory.getService(IDownloadConfigService.class);
+        long minUsableStorageSpace = configService.getMinUsableSpace();
+        downloadTask.setSpaceReservation(null);
+        if (diskSpaceLedger.getUsableSpace(Environment.getDataDirectory()) <= minUsableStorageSpace) {
+            LogUtil.e("Data directory usable space is not enough.");
+            return true;
+        }
+        if (contentLength <= 0) {
+            return false;
+        }
+        long finishingSize;
+        if (storageTarget != null) {
+            finishingSize = 0;
+        } else if (downloadInfo.getContentEncoding() != null) {
+            finishingSize = contentLength;
+        } else if (threadNum > 1) {
+            finishingSize = contentLength - contentLength / threadNum;
+        } else {
+            finishingSize = 0;
+        }
+        //The block files on disk are either resumed or deleted,both leave only the rest to be found.
+        long remainingSize = Math.max(0, contentLength - downloadInfo.getBlockFilesLength());
+        File downloadDir = downloadInfo.getDownloadFile().getParentFile();
+        DiskSpaceLedger.Reservation reservation = diskSpaceLedger.reserve(downloadDir,
+                remainingSize + finishingSize, finishingSize, minUsableStorageSpace);
+        if (reservation == null) {
             Context context = PumpFactory.getService(IDownloadManager.class).getContext();
-            String downloadFileAvailableSize = Formatter.formatFileSize(context, downloadDirUsableSpace);
-            LogUtil.e("Download directory usable space is " + downloadFileAvailableSize + ";but download file's contentLength is " + contentLength);
+            String downloadFileAvailableSize = Formatter.formatFileSize(context, diskSpaceLedger.getAvailableSpace(downloadDir));
+            LogUtil.e("Download directory available space is " + downloadFileAvailableSize + ";but download file needs "
+                    + (remainingSize + finishingSize) + " bytes more");
+            return true;
+        }
+        if (configService.isSpacePreallocationEnabled()
+                && !reservation.preallocate(new File(downloadInfo.getFilePath() + SPACE_RESERVATION_SUFFIX))) {
+            diskSpaceLedger.release(reservation);
+            LogUtil.e("Preallocate " + contentLength + " bytes for " + downloadInfo.getName() + " failed.");
             return true;
         }
+        downloadTask.setSpaceReservation(reservation);
         return false;
     }
 
@@ -197,6 +344,13 @@ public class ConnectInterceptor implements DownloadInterceptor {
         long completedSize = firstBlockTask.getCompletedSize();
         DownloadProvider.CacheBean cacheBean = DBService.getInstance().queryCache(id);
         if (cacheBean == null) {
+            if (completedSize > 0 && !downloadInfo.isDisableBreakPointDownload()
+                    && (rangeResumeLength = readRangeResumeLength()) != null) {
+                //No validators to make it conditional,the Content-Range of a 206 response is checked instead
+                //and a 200 response restarts the download from zero.
+                connection.addHeader("Range", "bytes=" + completedSize + "-");
+            }
+            addCacheValidators(connection, downloadInfo.getCacheCandidate(), completedSize);
             return connection;
         }
         String eTag = cacheBean.eTag;
@@ -216,23 +370,242 @@ public class ConnectInterceptor implements DownloadInterceptor {
         return connection;
     }
 
-    private long getContentLength(DownloadConnection connection) {
-        long contentLength = CONTENT_LENGTH_NOT_FOUND;
+    /**
+     * @return true if the range starts at the end of the partial file and has the recorded complete length.
+     */
+    private boolean isResumedRangeValid(DownloadConnection connection, long rangeResumeLength) {
         String contentRange = connection.getHeader("Content-Range");
-        if (contentRange != null) {
-            final String[] session = contentRange.split("/");
-            if (session.length >= 2) {
-                try {
-                    contentLength = Long.parseLong(session[1]);
-                } catch (NumberFormatException e) {
-                    e.printStackTrace();
+        if (Util.parseContentRangeStart(contentRange) != firstBlockTask.getCompletedSize()) {
+            return false;
+        }
+        return rangeResumeLength == CONTENT_LENGTH_NOT_FOUND
+                || Util.parseContentRangeLength(contentRange) == rangeResumeLength;
+    }
+
+    /**
+     * @return the complete length recorded by {@link #updateRangeResumeFile(boolean, long)},
+     * or null if the download can't be resumed without validators.
+     */
+    private Long readRangeResumeLength() {
+        File tempDir = downloadInfo.getTempDir();
+        File file = tempDir == null ? null : new File(tempDir, RANGE_RESUME_FILE);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        BufferedSource bufferedSource = null;
+        try {
+            bufferedSource = Okio.buffer(Okio.source(file));
+            return bufferedSource.readDecimalLong();
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        } finally {
+            Util.closeQuietly(bufferedSource);
+        }
+    }
+
+    private void updateRangeResumeFile(boolean isRangeResumable, long contentLength) {
+        File tempDir = downloadInfo.getTempDir();
+        if (tempDir == null) {
+            return;
+        }
+        File file = new File(tempDir, RANGE_RESUME_FILE);
+        if (!isRangeResumable) {
+            if (file.exists()) {
+                FileUtil.deleteFile(file);
+            }
+            return;
+        }
+        BufferedSink bufferedSink = null;
+        try {
+            if (!tempDir.exists()) {
+                tempDir.mkdirs();
+            }
+            bufferedSink = Okio.buffer(Okio.sink(file));
+            bufferedSink.writeDecimalLong(contentLength);
+        } catch (IOException e) {
+            LogUtil.e("write " + file + " failed: " + e.getMessage());
+        } finally {
+            Util.closeQuietly(bufferedSink);
+        }
+    }
+
+    private boolean isStorageTargetEmpty() {
+        try {
+            return storageTarget.length() == 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return true;
+        }
+    }
+
+    /**
+     * Cut the content of an earlier download from the storage target,if no block is resumed into it.
+     */
+    private boolean truncateStorageTargetIfNeed() {
+        if (downloadInfo.getBlockFilesLength() > 0) {
+            return true;
+        }
+        try {
+            synchronized (storageTarget) {
+                storageTarget.truncate(0);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * A storage target is written in place by the blocks,it never takes the path of the small files.
+     */
+    private boolean isSmallFile(long contentLength) {
+        return storageTarget == null && !downloadInfo.isChunked() && contentLength >= 0 && contentLength
+                <= PumpFactory.getService(IDownloadConfigService.class).getSmallFileThreshold();
+    }
+
+    /**
+     * Write the body to a sibling of the download file and rename it when complete,
+     * without temp dir,block files and the intermediate database writes.
+     */
+    private DownloadInfo downloadSmallFile(DownloadConnection conn, long contentLength) {
+        downloadInfo.deleteTempDir();
+        downloadInfo.setThreadNum(1);
+        downloadInfo.setContentLength(contentLength);
+        downloadInfo.setCompletedSize(0);
+        downloadInfo.setFinished(0);
+        File downloadFile = downloadInfo.getDownloadFile();
+        File tempFile = new File(downloadFile.getParentFile(), downloadFile.getName() + SMALL_FILE_SUFFIX);
+        try {
+            FileUtil.deleteFile(tempFile);
+            if (!tempFile.getParentFile().exists()) {
+                tempFile.getParentFile().mkdirs();
+            }
+            conn.prepareDownload(tempFile);
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = conn.downloadBuffer(buffer, 0, buffer.length)) != -1 && !isCancelled()) {
+                FairShareScheduler.getInstance().paceBlocking(downloadInfo.getTag(), len);
+                if (!downloadTask.onDownload(len)) {
+                    break;
                 }
             }
+            conn.flushDownload();
+        } catch (IOException e) {
+            if (!isCancelled()) {
+                e.printStackTrace();
+                downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+            }
+        }
+        conn.close();
+        if (downloadInfo.getStatus() == DownloadInfo.Status.RUNNING && tempFile.length() == contentLength
+                && moveSmallFile(tempFile, downloadFile)) {
+            long length = downloadFile.length();
+            downloadInfo.setContentLength(length);
+            downloadInfo.setCompletedSize(length);
+            downloadInfo.setProgress(100);
+            downloadInfo.setFinished(1);
+            downloadInfo.setStatus(DownloadInfo.Status.FINISHED);
+        } else {
+            FileUtil.deleteFile(tempFile);
+            if (!isCancelled()) {
+                downloadInfo.setErrorCode(ErrorCode.ERROR_DOWNLOAD_FAILED);
+            }
+        }
+        return downloadInfo.snapshot();
+    }
+
+    private boolean moveSmallFile(File tempFile, File downloadFile) {
+        String contentEncoding = downloadInfo.getContentEncoding();
+        if (contentEncoding == null) {
+            return FileUtil.renameTo(tempFile, downloadFile)
+                    && CheckpointManager.getInstance().syncFinishedFile(downloadFile);
+        }
+        boolean decodeSuccess = ContentDecoder.decode(new File[]{tempFile}, downloadFile, contentEncoding, downloadTask);
+        FileUtil.deleteFile(tempFile);
+        decodeSuccess = decodeSuccess && CheckpointManager.getInstance().syncFinishedFile(downloadFile);
+        if (!decodeSuccess) {
+            FileUtil.deleteFile(downloadFile);
+        }
+        return decodeSuccess;
+    }
+
+    /**
+     * Revalidate the content cache entry of the same url,the server will respond 304 if it is unchanged.
+     */
+    private void addCacheValidators(DownloadConnection connection, DownloadProvider.ContentCacheBean cacheCandidate,
+                                    long completedSize) {
+        if (cacheCandidate == null || completedSize > 0) {
+            return;
+        }
+        if (!TextUtils.isEmpty(cacheCandidate.lastModified)) {
+            connection.addHeader("If-Modified-Since", cacheCandidate.lastModified);
+            isCacheRevalidation = true;
         }
-        if (!downloadInfo.isChunked() && contentLength == CONTENT_LENGTH_NOT_FOUND) {
-            contentLength = Util.parseContentLength(connection.getHeader("Content-Length"));
+        if (!TextUtils.isEmpty(cacheCandidate.eTag)) {
+            connection.addHeader("If-None-Match", cacheCandidate.eTag);
+            isCacheRevalidation = true;
+        }
+    }
+
+    private boolean restoreFromCache(DownloadProvider.ContentCacheBean cacheBean) {
+        if (cacheBean == null) {
+            return false;
+        }
+        if (ContentCache.getInstance().restore(downloadInfo, cacheBean)) {
+            downloadTask.updateInfo();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the time when the response become stale,or -1 if it must not be cached.
+     */
+    private long getCacheExpires(Response response) {
+        CacheControl cacheControl = response.cacheControl();
+        if (cacheControl.noStore()) {
+            return -1;
+        }
+        if (cacheControl.maxAgeSeconds() >= 0) {
+            return System.currentTimeMillis() + cacheControl.maxAgeSeconds() * 1000L;
+        }
+        Date expires = response.headers().getDate("Expires");
+        return expires == null ? 0 : expires.getTime();
+    }
+
+    private long getContentLength(DownloadConnection connection) {
+        String contentRange = connection.getHeader("Content-Range");
+        if (contentRange != null) {
+            //Content-Length is the length of the range.
+            return Util.parseContentRangeLength(contentRange);
+        }
+        if (!downloadInfo.isChunked()) {
+            return Util.parseContentLength(connection.getHeader("Content-Length"));
+        }
+        return CONTENT_LENGTH_NOT_FOUND;
+    }
+
+    /**
+     * Request the first byte to learn the complete length of a response without Content-Length,
+     * a 206 response also tells that the server honours range requests.
+     *
+     * @return the complete length,or {@link Util#CONTENT_LENGTH_NOT_FOUND} if ranges are not supported.
+     */
+    private long probeContentLength(DownloadRequest downloadRequest) {
+        DownloadConnection connection = createConnection(downloadRequest);
+        connection.addHeader("Range", "bytes=0-0");
+        try {
+            Response response = connect(connection);
+            if (response != null && response.code() == HttpURLConnection.HTTP_PARTIAL) {
+                long contentLength = Util.parseContentRangeLength(connection.getHeader("Content-Range"));
+                LogUtil.d("Probe " + downloadInfo.getName() + " contentLength=" + contentLength);
+                return contentLength;
+            }
+        } finally {
+            connection.close();
         }
-        return contentLength;
+        return CONTENT_LENGTH_NOT_FOUND;
     }
 
     private Response connect(DownloadConnection connection) {
@@ -261,7 +634,7 @@ public class ConnectInterceptor implements DownloadInterceptor {
 
     private DownloadConnection createConnection(DownloadRequest downloadRequest) {
         return PumpFactory.getService(IDownloadConfigService.class).getDownloadConnectionFactory()
-                .create(downloadRequest.getHttpRequestBuilder());
+                .create(MetricsTag.tag(downloadRequest.getHttpRequestBuilder(), downloadRequest.getId(), 0));
     }
 
 }
@@ -0,0 +1,79 @@
+package com.huxq17.download.core.interceptor;
+
+import com.huxq17.download.ErrorCode;
+import com.huxq17.download.TaskManager;
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.DownloadInfo;
+import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.extract.ArchiveExtractor;
+import com.huxq17.download.core.extract.DownloadPrefixInputStream;
+import com.huxq17.download.utils.LogUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Extracts the archive of {@link DownloadRequest.DownloadGenerator#extractTo}. Entries are extracted on another
+ * thread as the download proceeds,and the extraction is completed from the download file when it finishes.
+ * It runs outside the content cache so that a restored file is extracted as well.
+ */
+public class ExtractInterceptor implements DownloadInterceptor {
+
+    @Override
+    public DownloadInfo intercept(DownloadChain chain) {
+        DownloadRequest downloadRequest = chain.request();
+        File extractDir = downloadRequest.getExtractDir();
+        if (extractDir == null) {
+            return chain.proceed(downloadRequest);
+        }
+        DownloadDetailsInfo downloadInfo = downloadRequest.getDownloadInfo();
+        final ArchiveExtractor archiveExtractor = new ArchiveExtractor(extractDir, downloadRequest.getExtractListener());
+        DownloadPrefixInputStream prefixInputStream = null;
+        Future<?> future = null;
+        //Decoded and patched downloads are not the archive until they finish.
+        if (!downloadRequest.isContentDecoding() && downloadRequest.getPatchBaseFile() == null) {
+            prefixInputStream = new DownloadPrefixInputStream(downloadInfo);
+            final DownloadPrefixInputStream inputStream = prefixInputStream;
+            future = TaskManager.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        archiveExtractor.extract(inputStream);
+                    } catch (IOException e) {
+                        LogUtil.d("stop extracting while downloading: " + e.getMessage());
+                    } finally {
+                        closeQuietly(inputStream);
+                    }
+                }
+            });
+        }
+        DownloadInfo result = chain.proceed(downloadRequest);
+        boolean isFinished = result.getStatus() == DownloadInfo.Status.FINISHED;
+        if (prefixInputStream != null) {
+            prefixInputStream.finish(isFinished ? downloadInfo.getDownloadFile() : null);
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!isFinished) {
+            return result;
+        }
+        try {
+            archiveExtractor.finish(downloadInfo.getDownloadFile());
+        } catch (IOException e) {
+            LogUtil.e("extract " + downloadInfo.getName() + " failed: " + e.getMessage());
+            downloadInfo.setErrorCode(ErrorCode.ERROR_EXTRACT_FAILED, true);
+            return downloadInfo.snapshot();
+        }
+        return result;
+    }
+}
@@ -1,10 +1,14 @@
 package com.huxq17.download.core.interceptor;
 
 import com.huxq17.download.ErrorCode;
+import com.huxq17.download.core.CheckpointManager;
+import com.huxq17.download.core.ContentDecoder;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadInterceptor;
 import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+import com.huxq17.download.core.storage.StorageTarget;
 import com.huxq17.download.core.task.DownloadTask;
 import com.huxq17.download.utils.FileUtil;
 import com.huxq17.download.utils.LogUtil;
@@ -13,14 +17,17 @@ import java.io.File;
 import java.io.FilenameFilter;
 
 import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.DOWNLOAD_PROGRESS;
 
 public class MergeFileInterceptor implements DownloadInterceptor {
     private DownloadDetailsInfo downloadInfo;
+    private StorageTarget storageTarget;
 
     @Override
     public DownloadInfo intercept(DownloadChain chain) {
         DownloadRequest downloadRequest = chain.request();
         downloadInfo = downloadRequest.getDownloadInfo();
+        storageTarget = downloadRequest.getStorageTarget();
         DownloadTask downloadTask = downloadInfo.getDownloadTask();
         Object lock = downloadTask.getLock();
         if (lock == null) {
@@ -30,10 +37,11 @@ public class MergeFileInterceptor implements DownloadInterceptor {
             long contentLength = downloadInfo.getContentLength();
             long completedSize = downloadInfo.getCompletedSize();
             File tempDir = downloadInfo.getTempDir();
+            final String prefix = storageTarget == null ? DOWNLOAD_PART : DOWNLOAD_PROGRESS;
             File[] downloadPartFiles = tempDir.listFiles(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String name) {
-                    return name.startsWith(DOWNLOAD_PART);
+                    return name.startsWith(prefix);
                 }
             });
             if (contentLength > 0 && completedSize == contentLength && downloadPartFiles != null
@@ -41,18 +49,33 @@ public class MergeFileInterceptor implements DownloadInterceptor {
                 File file = downloadInfo.getDownloadFile();
                 downloadInfo.deleteDownloadFile();
                 long startTime = System.currentTimeMillis();
+                long mergeStartTime = System.nanoTime();
                 boolean mergeSuccess = false;
-                if (downloadPartFiles.length == 1) {
+                String contentEncoding = downloadInfo.getContentEncoding();
+                if (storageTarget != null) {
+                    //The blocks were written into the target in place,which syncs the content when it is published.
+                    mergeSuccess = FileUtil.publish(storageTarget, contentLength);
+                } else if (contentEncoding != null) {
+                    File[] sortedFiles = FileUtil.sortPartFiles(downloadPartFiles);
+                    mergeSuccess = sortedFiles != null
+                            && ContentDecoder.decode(sortedFiles, file, contentEncoding, downloadTask);
+                } else if (downloadPartFiles.length == 1) {
                     mergeSuccess = FileUtil.renameTo(downloadPartFiles[0], file);
                 } else {
                     mergeSuccess = FileUtil.mergeFiles(downloadPartFiles, file);
                 }
                 downloadInfo.deleteTempDir();
+                mergeSuccess = mergeSuccess
+                        && (storageTarget != null || CheckpointManager.getInstance().syncFinishedFile(file));
+                DownloadMetrics.getInstance().onMerge(downloadInfo.getId(), mergeStartTime);
                 if (mergeSuccess) {
                     LogUtil.d("Merge " + downloadInfo.getName() + " spend=" +
-                            (System.currentTimeMillis() - startTime) + "; file.length=" + file.length());
+                            (System.currentTimeMillis() - startTime) + "; file.length=" + getDownloadFileLength(contentLength));
                     checkDownloadResult(contentLength, completedSize);
                 } else {
+                    if (storageTarget != null) {
+                        storageTarget.abort();
+                    }
                     downloadInfo.setErrorCode(ErrorCode.ERROR_MERGE_FILE_FAILED);
                 }
             }
@@ -60,15 +83,29 @@ public class MergeFileInterceptor implements DownloadInterceptor {
         return downloadInfo.snapshot();
     }
 
-    private void checkDownloadResult(long contentLength, long completedSize) {
+    /**
+     * @return the length of the finished content,a published storage target was verified to be contentLength.
+     */
+    private long getDownloadFileLength(long contentLength) {
+        if (storageTarget != null) {
+            return contentLength;
+        }
         File downloadFile = downloadInfo.getDownloadFile();
-        long downloadFileLength = downloadFile == null ? 0 : downloadFile.length();
+        return downloadFile == null ? 0 : downloadFile.length();
+    }
+
+    private void checkDownloadResult(long contentLength, long completedSize) {
+        long downloadFileLength = getDownloadFileLength(contentLength);
+        //The decoded file is checked against the decoded bytes,the encoded ones were checked before decoding.
+        long expectedLength = downloadInfo.getContentEncoding() == null ? contentLength : downloadInfo.getDecodedSize();
         if (downloadInfo.getStatus() != DownloadInfo.Status.FAILED &&
-                downloadFileLength > 0 && downloadFileLength == contentLength
-                && downloadFileLength == completedSize) {
+                downloadFileLength > 0 && downloadFileLength == expectedLength
+                && completedSize == contentLength) {
             downloadInfo.setFinished(1);
             downloadInfo.setStatus(DownloadInfo.Status.FINISHED);
-            downloadInfo.setCompletedSize(completedSize);
+            //The finished info describes the download file,which is shorter or longer than the encoded bytes.
+            downloadInfo.setContentLength(downloadFileLength);
+            downloadInfo.setCompletedSize(downloadFileLength);
         } else {
             downloadInfo.setFinished(0);
             downloadInfo.setErrorCode(ErrorCode.ERROR_DOWNLOAD_FAILED);
@@ -0,0 +1,48 @@
+package com.huxq17.download.core.interceptor;
+
+import com.huxq17.download.ErrorCode;
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.DownloadInfo;
+import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.PatchApplier;
+import com.huxq17.download.utils.FileUtil;
+
+import java.io.File;
+
+/**
+ * Builds the new file from the downloaded patch,see {@link DownloadRequest.DownloadGenerator#patch(String, String)}.
+ * It runs outside the retry so the patch is applied once. Patch requests bypass the content cache and
+ * transfer sharing,whose entries are keyed by url and would mix up the patch and the patched file.
+ */
+public class PatchInterceptor implements DownloadInterceptor {
+    private static final String PATCHED_SUFFIX = ".pump_patched";
+
+    @Override
+    public DownloadInfo intercept(DownloadChain chain) {
+        DownloadRequest downloadRequest = chain.request();
+        DownloadInfo result = chain.proceed(downloadRequest);
+        File baseFile = downloadRequest.getPatchBaseFile();
+        if (baseFile == null || result.getStatus() != DownloadInfo.Status.FINISHED) {
+            return result;
+        }
+        DownloadDetailsInfo downloadInfo = downloadRequest.getDownloadInfo();
+        File downloadFile = downloadInfo.getDownloadFile();
+        //The download file is already the patched one if it was revalidated or restored.
+        if (!PatchApplier.isPatch(downloadFile)) {
+            return result;
+        }
+        File targetFile = new File(downloadFile.getParentFile(), downloadFile.getName() + PATCHED_SUFFIX);
+        if (PatchApplier.apply(baseFile, downloadFile, targetFile, downloadRequest.getPatchTargetMD5())
+                && FileUtil.renameTo(targetFile, downloadFile)) {
+            downloadInfo.setContentLength(downloadFile.length());
+            downloadInfo.setCompletedSize(downloadFile.length());
+        } else {
+            FileUtil.deleteFile(targetFile);
+            downloadInfo.deleteDownloadFile();
+            downloadInfo.setFinished(0);
+            downloadInfo.setErrorCode(ErrorCode.ERROR_PATCH_FAILED, true);
+        }
+        return downloadInfo.snapshot();
+    }
+}
@@ -5,6 +5,7 @@ import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadInterceptor;
 import com.huxq17.download.core.DownloadRequest;
 import com.huxq17.download.core.RealDownloadChain;
+import com.huxq17.download.core.metrics.DownloadMetrics;
 
 import static com.huxq17.download.ErrorCode.ERROR_NETWORK_UNAVAILABLE;
 
@@ -22,10 +23,13 @@ public class RetryInterceptor implements DownloadInterceptor {
         retryUpperLimit = downloadRequest.getRetryCount();
         DownloadInfo downloadInfo;
         boolean shouldRetry = false;
+        int retryCount = 0;
         while (true) {
             downloadInfo = realDownloadChain.proceed(downloadRequest, shouldRetry);
             shouldRetry = shouldRetry();
             if (shouldRetry) {
+                DownloadMetrics.getInstance().onRetry(downloadRequest.getId(), ++retryCount,
+                        downloadDetailsInfo.getErrorCode());
                 if(downloadDetailsInfo.isForceRetry()){
                     downloadDetailsInfo.deleteTempDir();
                     downloadDetailsInfo.setForceRetry(false);
@@ -0,0 +1,244 @@
+package com.huxq17.download.core.metrics;
+
+import com.huxq17.download.ErrorCode;
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.DownloadInfo;
+import com.huxq17.download.core.SpeedMonitor;
+import com.huxq17.download.core.service.IDownloadConfigService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated counters of all downloads,which can be read at any time,and the dispatcher of the events to the
+ * {@link DownloadMetricsListener}s. Counting the transferred bytes does not allocate.
+ */
+public class DownloadMetrics {
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger writeQueueDepth = new AtomicInteger();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Histogram firstByteHistogram = new Histogram();
+    private final Histogram wallTimeHistogram = new Histogram();
+    private final Histogram writeSizeHistogram = new Histogram();
+    private final SpeedMonitor speedMonitor = new SpeedMonitor();
+
+    private static DownloadMetrics instance = new DownloadMetrics();
+
+    private DownloadMetrics() {
+    }
+
+    public static DownloadMetrics getInstance() {
+        return instance;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return count of tasks waiting for an executor thread.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getRunningTasks() {
+        return runningTasks.get();
+    }
+
+    /**
+     * @return count of chunks waiting for a disk writer.
+     */
+    public int getWriteQueueDepth() {
+        return writeQueueDepth.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return exponentially weighted moving average of the speed of all downloads in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return speedMonitor.getBytesPerSecond();
+    }
+
+    /**
+     * @return the speed of all downloads measured in the last second in bytes per second.
+     */
+    public long getInstantBytesPerSecond() {
+        return speedMonitor.getInstantBytesPerSecond();
+    }
+
+    public Histogram getFirstByteHistogram() {
+        return firstByteHistogram;
+    }
+
+    public Histogram getWallTimeHistogram() {
+        return wallTimeHistogram;
+    }
+
+    /**
+     * @return sizes of the writes of the disk writers in bytes.
+     */
+    public Histogram getWriteSizeHistogram() {
+        return writeSizeHistogram;
+    }
+
+    static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private List<DownloadMetricsListener> getListeners() {
+        IDownloadConfigService configService = PumpFactory.getService(IDownloadConfigService.class);
+        return configService == null ? null : configService.getMetricsListeners();
+    }
+
+    public void onBytes(int length) {
+        totalBytes.addAndGet(length);
+        speedMonitor.download(length);
+    }
+
+    public void onWriteQueued() {
+        writeQueueDepth.incrementAndGet();
+    }
+
+    public void onWriteDequeued(int count) {
+        writeQueueDepth.addAndGet(-count);
+    }
+
+    public void onDiskWrite(long bytes) {
+        writeSizeHistogram.record(bytes);
+    }
+
+    public void onQueued() {
+        queueDepth.incrementAndGet();
+    }
+
+    public void onDequeued(int count) {
+        queueDepth.addAndGet(-count);
+    }
+
+    public void onStart(String id, long queuedNanos) {
+        queueDepth.decrementAndGet();
+        runningTasks.incrementAndGet();
+        long waitMillis = millisSince(queuedNanos);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onQueueWait(id, waitMillis);
+            }
+        }
+    }
+
+    public void onEnd(String id, DownloadInfo.Status status, long queuedNanos) {
+        runningTasks.decrementAndGet();
+        long wallMillis = millisSince(queuedNanos);
+        wallTimeHistogram.record(wallMillis);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onDownloadEnd(id, status, wallMillis);
+            }
+        }
+    }
+
+    void onConnectionAcquired() {
+        activeConnections.incrementAndGet();
+    }
+
+    void onConnectionReleased() {
+        activeConnections.decrementAndGet();
+    }
+
+    void onDns(String id, long dnsMillis) {
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onDns(id, dnsMillis);
+            }
+        }
+    }
+
+    void onConnect(String id, long connectMillis) {
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onConnect(id, connectMillis);
+            }
+        }
+    }
+
+    void onTls(String id, long tlsMillis) {
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onTls(id, tlsMillis);
+            }
+        }
+    }
+
+    void onFirstByte(String id, int blockId, long firstByteMillis) {
+        firstByteHistogram.record(firstByteMillis);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onFirstByte(id, blockId, firstByteMillis);
+            }
+        }
+    }
+
+    public void onSegmentEnd(String id, int blockId, long bytes, long startNanos) {
+        long transferMillis = millisSince(startNanos);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onSegmentEnd(id, blockId, bytes, transferMillis);
+            }
+        }
+    }
+
+    public void onRetry(String id, int retryCount, ErrorCode errorCode) {
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onRetry(id, retryCount, errorCode);
+            }
+        }
+    }
+
+    public void onMerge(String id, long startNanos) {
+        long mergeMillis = millisSince(startNanos);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onMerge(id, mergeMillis);
+            }
+        }
+    }
+
+    public void onFinalize(String id, long startNanos) {
+        long finalizeMillis = millisSince(startNanos);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onFinalize(id, finalizeMillis);
+            }
+        }
+    }
+
+    public void onDatabaseWrite(String id, long startNanos) {
+        long writeMillis = millisSince(startNanos);
+        List<DownloadMetricsListener> listeners = getListeners();
+        if (listeners != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onDatabaseWrite(id, writeMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.huxq17.download.core.metrics;
+
+import com.huxq17.download.ErrorCode;
+import com.huxq17.download.core.DownloadInfo;
+
+/**
+ * Receives the metrics of every phase of a download,register it by
+ * {@link com.huxq17.download.config.DownloadConfig.Builder#addMetricsListener(DownloadMetricsListener)}.
+ * The methods are called on the download threads,so they should return quickly.
+ * All durations are in milliseconds.
+ */
+public abstract class DownloadMetricsListener {
+    /**
+     * The task waited in the executor's queue before it started.
+     */
+    public void onQueueWait(String id, long waitMillis) {
+    }
+
+    public void onDns(String id, long dnsMillis) {
+    }
+
+    public void onConnect(String id, long connectMillis) {
+    }
+
+    public void onTls(String id, long tlsMillis) {
+    }
+
+    /**
+     * Time from the start of the request of a segment to the first byte of the response.
+     */
+    public void onFirstByte(String id, int blockId, long firstByteMillis) {
+    }
+
+    /**
+     * A segment stopped transferring,its throughput is bytes * 1000 / transferMillis bytes per second.
+     */
+    public void onSegmentEnd(String id, int blockId, long bytes, long transferMillis) {
+    }
+
+    public void onRetry(String id, int retryCount, ErrorCode errorCode) {
+    }
+
+    public void onMerge(String id, long mergeMillis) {
+    }
+
+    /**
+     * Time spent to save the result after the download chain returns.
+     */
+    public void onFinalize(String id, long finalizeMillis) {
+    }
+
+    public void onDatabaseWrite(String id, long writeMillis) {
+    }
+
+    /**
+     * The task stopped running,wallMillis is counted from the time it was queued.
+     */
+    public void onDownloadEnd(String id, DownloadInfo.Status status, long wallMillis) {
+    }
+}
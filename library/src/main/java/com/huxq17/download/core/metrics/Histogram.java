@@ -0,0 +1,59 @@
+package com.huxq17.download.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in milliseconds or sizes in bytes in power-of-two buckets,recording does not allocate.
+ * Bucket 0 holds 0 and bucket n holds [2^(n-1), 2^n - 1].
+ */
+public class Histogram {
+    public static final int BUCKET_COUNT = 32;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long millis) {
+        buckets.incrementAndGet(getBucket(millis));
+    }
+
+    static int getBucket(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    public static long getBucketUpperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound of the bucket that contains the percentile,or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(BUCKET_COUNT - 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.huxq17.download.core.metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Reports the network phases of the calls made for downloads to {@link DownloadMetrics}.
+ */
+public class MetricsEventListener extends EventListener {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public EventListener create(Call call) {
+            MetricsTag tag = call.request().tag(MetricsTag.class);
+            return tag == null ? NONE : new MetricsEventListener(tag);
+        }
+    };
+
+    private final MetricsTag tag;
+    private final DownloadMetrics metrics = DownloadMetrics.getInstance();
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private boolean isConnectionAcquired;
+
+    private MetricsEventListener(MetricsTag tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        metrics.onDns(tag.id, DownloadMetrics.millisSince(dnsStart));
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        metrics.onTls(tag.id, DownloadMetrics.millisSince(secureConnectStart));
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        metrics.onConnect(tag.id, DownloadMetrics.millisSince(connectStart));
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                              IOException ioe) {
+        metrics.onConnect(tag.id, DownloadMetrics.millisSince(connectStart));
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        isConnectionAcquired = true;
+        metrics.onConnectionAcquired();
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        if (isConnectionAcquired) {
+            isConnectionAcquired = false;
+            metrics.onConnectionReleased();
+        }
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        metrics.onFirstByte(tag.id, tag.blockId, DownloadMetrics.millisSince(callStart));
+    }
+}
@@ -0,0 +1,20 @@
+package com.huxq17.download.core.metrics;
+
+import okhttp3.Request;
+
+/**
+ * Identifies the download and segment of an OkHttp call,so that {@link MetricsEventListener} can report its events.
+ */
+public final class MetricsTag {
+    final String id;
+    final int blockId;
+
+    private MetricsTag(String id, int blockId) {
+        this.id = id;
+        this.blockId = blockId;
+    }
+
+    public static Request.Builder tag(Request.Builder builder, String id, int blockId) {
+        return builder.tag(MetricsTag.class, new MetricsTag(id, blockId));
+    }
+}
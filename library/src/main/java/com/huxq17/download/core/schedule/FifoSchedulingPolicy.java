@@ -0,0 +1,14 @@
+package com.huxq17.download.core.schedule;
+
+import com.huxq17.download.core.task.DownloadTask;
+
+/**
+ * Tasks run in the order they were queued.
+ */
+public class FifoSchedulingPolicy implements SchedulingPolicy {
+
+    @Override
+    public double rank(DownloadTask downloadTask, long waitingTime) {
+        return 0;
+    }
+}
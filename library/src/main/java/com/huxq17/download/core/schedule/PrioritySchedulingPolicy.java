@@ -0,0 +1,15 @@
+package com.huxq17.download.core.schedule;
+
+import com.huxq17.download.core.task.DownloadTask;
+
+/**
+ * Tasks of higher {@link com.huxq17.download.core.DownloadRequest.DownloadGenerator#priority(int)} run first,
+ * tasks of the same priority run in the order they were queued.
+ */
+public class PrioritySchedulingPolicy implements SchedulingPolicy {
+
+    @Override
+    public double rank(DownloadTask downloadTask, long waitingTime) {
+        return -downloadTask.getRequest().getPriority();
+    }
+}
@@ -0,0 +1,21 @@
+package com.huxq17.download.core.schedule;
+
+import com.huxq17.download.core.task.DownloadTask;
+
+/**
+ * Decides which queued task runs next in the default executor.
+ * Set it by {@link com.huxq17.download.config.DownloadConfig.Builder#setSchedulingPolicy(SchedulingPolicy)}.
+ */
+public interface SchedulingPolicy {
+    /**
+     * Return the rank of a queued task,the task of the smallest rank runs first,
+     * and tasks of the same rank run in the order they were queued.
+     * It is called when the task is queued and then about once a second while it waits,so the rank may change
+     * while the task waits. It is never called with the lock of the executor held.
+     *
+     * @param downloadTask queued task
+     * @param waitingTime  nanoseconds since the task was queued
+     * @return rank of the task
+     */
+    double rank(DownloadTask downloadTask, long waitingTime);
+}
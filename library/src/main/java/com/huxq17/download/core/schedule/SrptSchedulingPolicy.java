@@ -0,0 +1,196 @@
+package com.huxq17.download.core.schedule;
+
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.LogUtil;
+import com.huxq17.download.utils.OKHttpUtil;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Shortest remaining first: the task with the fewest bytes left to download runs first,
+ * which keeps a large file from holding up many small ones.
+ * <p>
+ * The remaining bytes come from the saved progress of the download. If the length isn't known yet,
+ * a HEAD request is sent once for the queued task,and it ranks as {@link #getUnknownLength()} until
+ * the response arrives. At most {@link #MAX_RUNNING_PROBES} requests run at once,and at most
+ * {@link #MAX_PENDING_PROBES} wait for them. The rank is divided by how many aging periods the task has waited,
+ * so a large task moves ahead of newly queued small ones as it waits. That alone can't beat a stream of tiny tasks,
+ * so a task which has waited {@link #getMaxWaitingTime()} is promoted ahead of every task that hasn't,
+ * and the promoted tasks run in the order they were queued.
+ */
+public class SrptSchedulingPolicy implements SchedulingPolicy {
+    private static final long DEFAULT_AGING_PERIOD = 60 * 1000;
+    private static final long DEFAULT_UNKNOWN_LENGTH = 4 * 1024 * 1024;
+    private static final int MAX_WAITING_PERIODS = 10;
+    private final long agingPeriod;
+    private final long unknownLength;
+    private final long maxWaitingTime;
+    private static final int MAX_RUNNING_PROBES = 2;
+    private static final int MAX_PENDING_PROBES = 16;
+    private final Map<DownloadTask, Long> prefetchedLengths = new WeakHashMap<>();
+    private final Map<DownloadTask, Long> storedCompletedSizes = new WeakHashMap<>();
+    private final Queue<DownloadTask> pendingProbes = new ArrayDeque<>(MAX_PENDING_PROBES);
+    private int runningProbes;
+
+    public SrptSchedulingPolicy() {
+        this(DEFAULT_AGING_PERIOD, DEFAULT_UNKNOWN_LENGTH);
+    }
+
+    /**
+     * @param agingPeriod   milliseconds of waiting that halve the rank of a task,then reduce it to a third and so on.
+     * @param unknownLength bytes assumed for a task whose length isn't known.
+     */
+    public SrptSchedulingPolicy(long agingPeriod, long unknownLength) {
+        this(agingPeriod, unknownLength, Math.max(1, agingPeriod) * MAX_WAITING_PERIODS);
+    }
+
+    /**
+     * @param agingPeriod    milliseconds of waiting that halve the rank of a task,then reduce it to a third and so on.
+     * @param unknownLength  bytes assumed for a task whose length isn't known.
+     * @param maxWaitingTime milliseconds a task waits at most before it is promoted ahead of the others,
+     *                       {@link #MAX_WAITING_PERIODS} aging periods by default.
+     */
+    public SrptSchedulingPolicy(long agingPeriod, long unknownLength, long maxWaitingTime) {
+        this.agingPeriod = Math.max(1, agingPeriod);
+        this.unknownLength = unknownLength;
+        this.maxWaitingTime = Math.max(1, maxWaitingTime);
+    }
+
+    public long getAgingPeriod() {
+        return agingPeriod;
+    }
+
+    public long getUnknownLength() {
+        return unknownLength;
+    }
+
+    public long getMaxWaitingTime() {
+        return maxWaitingTime;
+    }
+
+    @Override
+    public double rank(DownloadTask downloadTask, long waitingTime) {
+        if (waitingTime / 1000000 >= maxWaitingTime) {
+            //Below every rank of remaining bytes,the task which has waited longest first.
+            return -(double) waitingTime;
+        }
+        long remaining = getRemainingLength(downloadTask);
+        return remaining / (1d + waitingTime / 1000000d / agingPeriod);
+    }
+
+    private long getRemainingLength(DownloadTask downloadTask) {
+        DownloadDetailsInfo downloadInfo = downloadTask.getDownloadInfo();
+        if (downloadInfo != null && downloadInfo.getContentLength() > 0) {
+            return Math.max(0, downloadInfo.getContentLength() - getCompletedSize(downloadTask, downloadInfo));
+        }
+        Long length;
+        synchronized (prefetchedLengths) {
+            length = prefetchedLengths.get(downloadTask);
+            if (length == null && offerProbe(downloadTask)) {
+                prefetchedLengths.put(downloadTask, -1L);
+            }
+        }
+        return length != null && length > 0 ? length : unknownLength;
+    }
+
+    /**
+     * A queued task has been reset to zero by {@link DownloadTask},so its progress is read from the
+     * block files once and cached while it waits.
+     */
+    private long getCompletedSize(DownloadTask downloadTask, DownloadDetailsInfo downloadInfo) {
+        Long completedSize;
+        synchronized (storedCompletedSizes) {
+            completedSize = storedCompletedSizes.get(downloadTask);
+        }
+        if (completedSize == null) {
+            completedSize = downloadInfo.getBlockFilesLength();
+            synchronized (storedCompletedSizes) {
+                storedCompletedSizes.put(downloadTask, completedSize);
+            }
+        }
+        return Math.max(completedSize, downloadInfo.getCompletedSize());
+    }
+
+    /**
+     * Send the HEAD request now if fewer than {@link #MAX_RUNNING_PROBES} are running,or queue it.
+     * Must be called with the lock of {@link #prefetchedLengths}.
+     *
+     * @return false if the probe queue is full,the task will be offered again when it is ranked next time.
+     */
+    private boolean offerProbe(DownloadTask downloadTask) {
+        if (runningProbes < MAX_RUNNING_PROBES) {
+            runningProbes++;
+            if (!prefetchLength(downloadTask)) {
+                runningProbes--;
+            }
+            return true;
+        }
+        return pendingProbes.size() < MAX_PENDING_PROBES && pendingProbes.offer(downloadTask);
+    }
+
+    private void onProbeEnd() {
+        synchronized (prefetchedLengths) {
+            runningProbes--;
+            DownloadTask downloadTask;
+            while ((downloadTask = pendingProbes.poll()) != null) {
+                DownloadDetailsInfo downloadInfo = downloadTask.getDownloadInfo();
+                if (downloadInfo != null && downloadInfo.getContentLength() > 0) {
+                    continue;
+                }
+                runningProbes++;
+                if (prefetchLength(downloadTask)) {
+                    break;
+                }
+                runningProbes--;
+            }
+        }
+    }
+
+    /**
+     * @return true if the HEAD request was sent,{@link #onProbeEnd()} is called when it ends.
+     */
+    private boolean prefetchLength(final DownloadTask downloadTask) {
+        OkHttpClient okHttpClient = OKHttpUtil.get();
+        Request.Builder builder = downloadTask.getRequest().getHttpRequestBuilder();
+        //A HEAD of other methods may not describe the content.
+        if (okHttpClient == null || !"GET".equals(builder.build().method())) {
+            return false;
+        }
+        Request request = builder.head().build();
+        okHttpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LogUtil.d("prefetch length of " + downloadTask.getName() + " failed: " + e.getMessage());
+                onProbeEnd();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    String contentLength = response.header("Content-Length");
+                    if (response.isSuccessful() && contentLength != null) {
+                        synchronized (prefetchedLengths) {
+                            prefetchedLengths.put(downloadTask, Long.parseLong(contentLength));
+                        }
+                    }
+                } catch (NumberFormatException ignore) {
+                } finally {
+                    response.close();
+                    onProbeEnd();
+                }
+            }
+        });
+        return true;
+    }
+}
@@ -2,7 +2,10 @@ package com.huxq17.download.core.service;
 
 import com.huxq17.download.config.DownloadConfig;
 import com.huxq17.download.core.DownloadInterceptor;
+import com.huxq17.download.core.DurabilityPolicy;
 import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.metrics.DownloadMetricsListener;
+import com.huxq17.download.core.schedule.SchedulingPolicy;
 
 import java.util.List;
 
@@ -13,7 +16,33 @@ public interface IDownloadConfigService {
 
     long getMinUsableSpace();
 
+    boolean isTransferSharingEnabled();
+
+    long getContentCacheSize();
+
+    int getTransferWorkerCount();
+
+    long getSmallFileThreshold();
+
+    boolean isSpacePreallocationEnabled();
+
+    long getMaxBandwidth();
+
+    int getTagWeight(String tag);
+
+    SchedulingPolicy getSchedulingPolicy();
+
+    DurabilityPolicy getDurabilityPolicy();
+
+    long getCheckpointInterval();
+
+    int getPrewarmCount();
+
+    int getDiskWriterCount();
+
     List<DownloadInterceptor> getDownloadInterceptors();
 
+    List<DownloadMetricsListener> getMetricsListeners();
+
     DownloadConnection.Factory getDownloadConnectionFactory();
 }
@@ -2,11 +2,13 @@ package com.huxq17.download.core.service;
 
 import android.content.Context;
 
+import com.huxq17.download.callback.Func;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadRequest;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public interface IDownloadManager {
     void start(Context context);
@@ -17,6 +19,10 @@ public interface IDownloadManager {
 
     void deleteByTag(String tag);
 
+    Future<List<String>> deleteByTag(String tag, Func<List<String>> callback);
+
+    Future<List<String>> delete(List<String> ids, Func<List<String>> callback);
+
     void pause(String id);
 
     void stop(String id);
@@ -29,6 +35,10 @@ public interface IDownloadManager {
 
     List<DownloadInfo> getDownloadListByTag(String tag);
 
+    int getDownloadCountByTag(String tag);
+
+    int getDownloadCountByStatus(DownloadInfo.Status status);
+
     List<DownloadInfo> getAllDownloadList();
 
     DownloadInfo getDownloadInfoById(String id);
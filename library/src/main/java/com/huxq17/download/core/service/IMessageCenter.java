@@ -5,11 +5,19 @@ import android.content.Context;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadListener;
 
+import java.util.concurrent.Executor;
+
 public interface IMessageCenter {
     void start(Context context);
 
     void register(DownloadListener downloadListener);
 
+    /**
+     * Register a listener whose callbacks are delivered on the executor,only the latest
+     * event of each download is delivered if the listener falls behind.
+     */
+    void register(DownloadListener downloadListener, Executor executor);
+
     void unRegister(String url);
 
     void unRegister(DownloadListener downloadListener);
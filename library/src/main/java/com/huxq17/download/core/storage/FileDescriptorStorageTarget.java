@@ -0,0 +1,89 @@
+package com.huxq17.download.core.storage;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Writes a seekable file descriptor opened for reading and writing,for example from
+ * {@code ContentResolver.openFileDescriptor(uri, "rw")} of a MediaStore or SAF document.
+ * <p>
+ * Override {@link #onPublish()} to make the content visible,for MediaStore it clears
+ * {@code MediaStore.MediaColumns.IS_PENDING} of the item.
+ */
+public class FileDescriptorStorageTarget implements StorageTarget {
+    private final ParcelFileDescriptor parcelFileDescriptor;
+    private final FileOutputStream outputStream;
+    private final FileChannel channel;
+
+    public FileDescriptorStorageTarget(ParcelFileDescriptor parcelFileDescriptor) {
+        this.parcelFileDescriptor = parcelFileDescriptor;
+        this.outputStream = new FileOutputStream(parcelFileDescriptor.getFileDescriptor());
+        this.channel = outputStream.getChannel();
+    }
+
+    /**
+     * @param fileDescriptor the file descriptor,which is closed by the caller after the target is released.
+     */
+    public FileDescriptorStorageTarget(FileDescriptor fileDescriptor) {
+        this.parcelFileDescriptor = null;
+        this.outputStream = new FileOutputStream(fileDescriptor);
+        this.channel = outputStream.getChannel();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void write(long position, byte[] buffer, int offset, int byteCount) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, byteCount);
+        while (byteBuffer.hasRemaining()) {
+            position += channel.write(byteBuffer, position);
+        }
+    }
+
+    @Override
+    public void append(byte[] buffer, int offset, int byteCount) throws IOException {
+        write(channel.size(), buffer, offset, byteCount);
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+        channel.truncate(size);
+    }
+
+    @Override
+    public void publish() throws IOException {
+        try {
+            channel.force(true);
+        } finally {
+            release();
+        }
+        onPublish();
+    }
+
+    /**
+     * Called after the content is synced and the file descriptor is released.
+     */
+    protected void onPublish() throws IOException {
+    }
+
+    @Override
+    public void abort() {
+        release();
+    }
+
+    private void release() {
+        if (parcelFileDescriptor != null) {
+            closeQuietly(parcelFileDescriptor);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.huxq17.download.core.storage;
+
+import com.huxq17.download.utils.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static com.huxq17.download.utils.Util.closeQuietly;
+
+/**
+ * Writes a file next to the destination and renames it to the destination when it is published,
+ * so the destination never holds partial content.
+ */
+public class FileStorageTarget implements StorageTarget {
+    private static final String PENDING_SUFFIX = ".pending";
+    private final File file;
+    private final File pendingFile;
+    private RandomAccessFile randomAccessFile;
+
+    public FileStorageTarget(File file) {
+        this.file = file;
+        this.pendingFile = new File(file.getParentFile(), file.getName() + PENDING_SUFFIX);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private RandomAccessFile getRandomAccessFile() throws IOException {
+        if (randomAccessFile == null) {
+            File dir = pendingFile.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            randomAccessFile = new RandomAccessFile(pendingFile, "rw");
+        }
+        return randomAccessFile;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return getRandomAccessFile().length();
+    }
+
+    @Override
+    public void write(long position, byte[] buffer, int offset, int byteCount) throws IOException {
+        RandomAccessFile randomAccessFile = getRandomAccessFile();
+        randomAccessFile.seek(position);
+        randomAccessFile.write(buffer, offset, byteCount);
+    }
+
+    @Override
+    public void append(byte[] buffer, int offset, int byteCount) throws IOException {
+        RandomAccessFile randomAccessFile = getRandomAccessFile();
+        randomAccessFile.seek(randomAccessFile.length());
+        randomAccessFile.write(buffer, offset, byteCount);
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+        getRandomAccessFile().setLength(size);
+    }
+
+    @Override
+    public void publish() throws IOException {
+        RandomAccessFile randomAccessFile = getRandomAccessFile();
+        try {
+            randomAccessFile.getFD().sync();
+        } finally {
+            closeQuietly(randomAccessFile);
+            this.randomAccessFile = null;
+        }
+        //rename(2) replaces the destination atomically.
+        if (!pendingFile.renameTo(file) && !FileUtil.renameTo(pendingFile, file)) {
+            FileUtil.deleteFile(pendingFile);
+            throw new IOException("rename " + pendingFile.getName() + " to " + file.getName() + " failed");
+        }
+    }
+
+    @Override
+    public void abort() {
+        closeQuietly(randomAccessFile);
+        randomAccessFile = null;
+        FileUtil.deleteFile(pendingFile);
+    }
+}
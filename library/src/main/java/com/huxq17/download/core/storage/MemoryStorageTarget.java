@@ -0,0 +1,67 @@
+package com.huxq17.download.core.storage;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the content in memory,for tests and small downloads.
+ */
+public class MemoryStorageTarget implements StorageTarget {
+    private byte[] data = new byte[0];
+    private int length;
+    private boolean isPublished;
+
+    @Override
+    public synchronized long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized void write(long position, byte[] buffer, int offset, int byteCount) {
+        long end = position + byteCount;
+        if (end > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("content is too large for memory");
+        }
+        if (end > data.length) {
+            data = Arrays.copyOf(data, (int) Math.max(end, Math.min(Integer.MAX_VALUE, data.length * 2L)));
+        }
+        if (position > length) {
+            Arrays.fill(data, length, (int) position, (byte) 0);
+        }
+        System.arraycopy(buffer, offset, data, (int) position, byteCount);
+        length = (int) Math.max(length, end);
+    }
+
+    @Override
+    public synchronized void append(byte[] buffer, int offset, int byteCount) {
+        write(length, buffer, offset, byteCount);
+    }
+
+    @Override
+    public synchronized void truncate(long size) {
+        if (size < length) {
+            length = (int) size;
+        }
+    }
+
+    @Override
+    public synchronized void publish() {
+        isPublished = true;
+    }
+
+    @Override
+    public synchronized void abort() {
+        data = new byte[0];
+        length = 0;
+    }
+
+    public synchronized boolean isPublished() {
+        return isPublished;
+    }
+
+    /**
+     * @return a copy of the content.
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+}
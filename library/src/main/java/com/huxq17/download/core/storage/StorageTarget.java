@@ -0,0 +1,43 @@
+package com.huxq17.download.core.storage;
+
+import java.io.IOException;
+
+/**
+ * The final destination of a download,set by
+ * {@link com.huxq17.download.core.DownloadRequest.DownloadGenerator#storeTo(StorageTarget)}.
+ * Each block of the download writes its range straight into the target at its position,instead of a block file,
+ * and the target is published only after its length is verified. The length downloaded by each block is recorded
+ * in the temp dir of the download,a download resumes into the target it was written to,an empty target makes it
+ * start again.
+ * <p>
+ * The blocks write while holding the monitor of the target,so writes come from one thread at a time.
+ */
+public interface StorageTarget {
+
+    /**
+     * @return the count of bytes written to the target.
+     */
+    long length() throws IOException;
+
+    /**
+     * Write the bytes at the position,the target grows if it is shorter.
+     */
+    void write(long position, byte[] buffer, int offset, int byteCount) throws IOException;
+
+    /**
+     * Write the bytes at the end of the target.
+     */
+    void append(byte[] buffer, int offset, int byteCount) throws IOException;
+
+    void truncate(long size) throws IOException;
+
+    /**
+     * Make the written content visible at its destination at once,and release the target.
+     */
+    void publish() throws IOException;
+
+    /**
+     * Discard the content which is not published and release the target.
+     */
+    void abort();
+}
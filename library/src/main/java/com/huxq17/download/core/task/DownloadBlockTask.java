@@ -6,21 +6,31 @@ import android.text.TextUtils;
 import com.huxq17.download.DownloadProvider;
 import com.huxq17.download.ErrorCode;
 import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.AsyncTransferEngine;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadRequest;
+import com.huxq17.download.core.FairShareScheduler;
 import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+import com.huxq17.download.core.metrics.MetricsTag;
 import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.core.storage.StorageTarget;
 import com.huxq17.download.utils.FileUtil;
+import com.huxq17.download.utils.Util;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Response;
 
 import static com.huxq17.download.ErrorCode.ERROR_FILE_OUT_LIMIT;
 import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+import static com.huxq17.download.utils.Util.DOWNLOAD_PROGRESS;
 
 
 public class DownloadBlockTask extends Task {
@@ -29,6 +39,20 @@ public class DownloadBlockTask extends Task {
     private File tempFile;
     private DownloadDetailsInfo downloadInfo;
     private boolean isConnected;
+    private volatile boolean isCanceled;
+    private StorageTarget storageTarget;
+    private long position;
+    private long endPosition;
+    private long startPosition;
+    /**
+     * The position whose progress is recorded,when the blocks are written into a storage target.
+     */
+    private long savedPosition;
+    private byte[] buffer;
+    private long segmentStartTime;
+    private long segmentBytes;
+    private static final int SLICE_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL = 1024 * 1024;
 
 
     public DownloadBlockTask(DownloadRequest downloadRequest, int blockId) {
@@ -39,121 +63,393 @@ public class DownloadBlockTask extends Task {
         downloadInfo = downloadRequest.getDownloadInfo();
         isConnected = connection != null;
         if (connection == null) {
-            this.connection = PumpFactory.getService(IDownloadConfigService.class).getDownloadConnectionFactory().create(downloadRequest.getHttpRequestBuilder());
+            this.connection = PumpFactory.getService(IDownloadConfigService.class).getDownloadConnectionFactory()
+                    .create(MetricsTag.tag(downloadRequest.getHttpRequestBuilder(), downloadRequest.getId(), blockId));
         } else {
             this.connection = connection;
         }
         this.blockId = blockId;
+        storageTarget = downloadRequest.getStorageTarget();
         calculateCompletedSize();
     }
 
     @Override
     public void cancel() {
+        isCanceled = true;
         if (currentThread != null) {
             currentThread.interrupt();
         }
         connection.cancel();
     }
 
+    @Override
+    protected boolean isCanceled() {
+        return isCanceled || super.isCanceled();
+    }
+
     @Override
     public void execute() {
         DownloadTask downloadTask = downloadInfo.getDownloadTask();
-        long threadNum = downloadInfo.getThreadNum();
-        long fileLength = downloadInfo.getContentLength();
-        long startPosition = blockId * fileLength / threadNum + getCompletedSize();
-
-        long endPosition;
-        if (threadNum == blockId + 1) {
-            endPosition = fileLength;
-        } else {
-            endPosition = (blockId + 1) * fileLength / threadNum;
-        }
-        if (startPosition < endPosition || downloadInfo.isChunked()) {
+        if (computeRange(downloadTask)) {
+            segmentStartTime = System.nanoTime();
             try {
                 if (!isConnected) {
-                    DownloadProvider.CacheBean cacheBean = downloadInfo.getCacheBean();
-                    String eTag = cacheBean.eTag;
-                    String lastModified = cacheBean.lastModified;
-                    connection.addHeader("Range", "bytes=" + startPosition + "-");
-                    if (!TextUtils.isEmpty(lastModified)) {
-                        connection.addHeader("If-Unmodified-Since", lastModified);
-                    }
-                    if (!TextUtils.isEmpty(eTag)) {
-                        connection.addHeader("If-Match", eTag);
-                    }
+                    addRangeHeaders();
                     Response response = connection.connect();
-                    int code = response.code();
-                    if (code == HttpURLConnection.HTTP_PARTIAL) {
-                        download(connection, downloadTask, startPosition, endPosition);
-                    } else if (code == HttpURLConnection.HTTP_PRECON_FAILED || code == 416) {
-                        if (downloadInfo.getErrorCode() == null) {
-                            downloadInfo.setForceRetry(true);
-                        }
-                        downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
-                        downloadTask.cancel();
-                    } else {
-                        downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
-                        downloadTask.cancel();
+                    if (checkResponse(downloadTask, response.code())) {
+                        download(downloadTask);
                     }
                 } else {
-                    download(connection, downloadTask, startPosition, endPosition);
+                    download(downloadTask);
                 }
-                if (downloadInfo.isChunked() && downloadInfo.getErrorCode() == null && !isCanceled()) {
-                    downloadInfo.setContentLength(tempFile.length());
-                    downloadInfo.setProgress(100);
-                }
-
+                onTransferEnd();
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             } catch (IOException e) {
-                if (!isCanceled()) {
-                    e.printStackTrace();
-                    downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+                onTransferError(e);
+            }
+            onSegmentEnd();
+        }
+        saveProgress();
+        connection.close();
+    }
+
+    /**
+     * Start the transfer without blocking the current thread,the buffered response is read in slices by the workers
+     * of {@link AsyncTransferEngine},and {@link #waitUntilFinished()} returns once the block is done.
+     * The waits for the network run on the waiters of the engine,see {@link #awaitData(DownloadTask)}.
+     */
+    public void enqueue() {
+        if (!(connection instanceof OkHttpDownloadConnection)) {
+            //Custom connection can only be used blocking,keep it off the workers.
+            if (!AsyncTransferEngine.getInstance().executeBlocking(this)) {
+                finishAsync();
+            }
+            return;
+        }
+        final DownloadTask downloadTask = downloadInfo.getDownloadTask();
+        if (isCanceled() || !computeRange(downloadTask)) {
+            finishAsync();
+            return;
+        }
+        segmentStartTime = System.nanoTime();
+        if (isConnected) {
+            startReading(downloadTask);
+            return;
+        }
+        addRangeHeaders();
+        ((OkHttpDownloadConnection) connection).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                onTransferError(e);
+                finishAsync();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                if (isCanceled() || !checkResponse(downloadTask, response.code())) {
+                    finishAsync();
+                } else {
+                    startReading(downloadTask);
                 }
             }
-        } else if (startPosition > endPosition) {
+        });
+    }
+
+    private void startReading(final DownloadTask downloadTask) {
+        try {
+            prepareDownload();
+        } catch (IOException e) {
+            onTransferError(e);
+            finishAsync();
+            return;
+        }
+        scheduleSlice(downloadTask, 0);
+    }
+
+    /**
+     * @param delay nanoseconds to wait before the slice is read,the pace of {@link FairShareScheduler}.
+     */
+    private void scheduleSlice(final DownloadTask downloadTask, long delay) {
+        AsyncTransferEngine engine = AsyncTransferEngine.getInstance();
+        boolean scheduled;
+        if (delay > 0) {
+            scheduled = engine.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleSlice(downloadTask, 0);
+                }
+            }, delay);
+        } else {
+            scheduled = engine.execute(new Runnable() {
+                @Override
+                public void run() {
+                    readSlice(downloadTask);
+                }
+            });
+        }
+        if (!scheduled) {
+            finishAsync();
+        }
+    }
+
+    /**
+     * Read at most {@link #SLICE_SIZE} of the buffered bytes,then give the worker to the other blocks.
+     * It never waits for the network,an empty buffer is awaited on a waiter.
+     * The slice is paced as a whole,a tag over its share of the bandwidth reads the next one later.
+     */
+    private void readSlice(DownloadTask downloadTask) {
+        boolean isDone = true;
+        boolean shouldAwait = false;
+        long delay = 0;
+        try {
+            int sliceRemain = SLICE_SIZE;
+            int len = 0;
+            while (sliceRemain > 0 && !isCanceled() && (len = transferBuffer(downloadTask, true)) > 0) {
+                sliceRemain -= len;
+            }
+            if (sliceRemain < SLICE_SIZE) {
+                delay = FairShareScheduler.getInstance().pace(downloadInfo.getTag(), SLICE_SIZE - sliceRemain);
+            }
+            if (len == -1 || isCanceled()) {
+                endTransfer();
+            } else {
+                isDone = false;
+                shouldAwait = len == 0;
+            }
+        } catch (IOException e) {
+            onTransferError(e);
+        } finally {
+            if (isDone) {
+                finishAsync();
+            }
+        }
+        if (shouldAwait) {
+            //The delay is still owed by the tag,the next slice pays it.
+            awaitData(downloadTask);
+        } else if (!isDone) {
+            scheduleSlice(downloadTask, delay);
+        }
+    }
+
+    /**
+     * Wait on a waiter until the response has buffered bytes,then read them on the workers again.
+     * A stalled socket fails the wait with the read timeout of the client.
+     */
+    private void awaitData(final DownloadTask downloadTask) {
+        boolean scheduled = AsyncTransferEngine.getInstance().executeWaiting(new Runnable() {
+            @Override
+            public void run() {
+                boolean hasData = false;
+                try {
+                    if (!isCanceled()) {
+                        hasData = ((OkHttpDownloadConnection) connection).awaitBuffered();
+                    }
+                    if (!hasData) {
+                        endTransfer();
+                    }
+                } catch (IOException e) {
+                    onTransferError(e);
+                }
+                if (hasData && !isCanceled()) {
+                    scheduleSlice(downloadTask, 0);
+                } else {
+                    finishAsync();
+                }
+            }
+        });
+        if (!scheduled) {
+            finishAsync();
+        }
+    }
+
+    private void endTransfer() throws IOException {
+        connection.flushDownload();
+        onTransferEnd();
+    }
+
+    private void finishAsync() {
+        if (segmentStartTime != 0) {
+            onSegmentEnd();
+        }
+        saveProgress();
+        connection.close();
+        finish();
+    }
+
+    private void onSegmentEnd() {
+        DownloadMetrics.getInstance().onSegmentEnd(downloadInfo.getId(), blockId, segmentBytes, segmentStartTime);
+    }
+
+    /**
+     * @return true if there is something to download in this block.
+     */
+    private boolean computeRange(DownloadTask downloadTask) {
+        long threadNum = downloadInfo.getThreadNum();
+        long fileLength = downloadInfo.getContentLength();
+        startPosition = blockId * fileLength / threadNum;
+        position = startPosition + getCompletedSize();
+        savedPosition = position;
+
+        if (threadNum == blockId + 1) {
+            endPosition = fileLength;
+        } else {
+            endPosition = (blockId + 1) * fileLength / threadNum;
+        }
+        if (position < endPosition || downloadInfo.isChunked()) {
+            return true;
+        } else if (position > endPosition) {
             if (downloadInfo.getErrorCode() == null) {
                 downloadInfo.setForceRetry(true);
             }
             downloadTask.cancel();
             downloadInfo.setErrorCode(ERROR_FILE_OUT_LIMIT);
         }
-        connection.close();
+        return false;
     }
 
-    private void download(DownloadConnection connection, DownloadTask downloadTask,
-                          long startPosition, long endPosition) throws IOException {
-        int len;
-        createTempFileIfNeed();
-        connection.prepareDownload(tempFile);
-        byte[] buffer = new byte[8092];
-        int byteCount = buffer.length;
-        if (!downloadInfo.isChunked()) {
-            if (endPosition - startPosition < buffer.length) {
-                byteCount = (int) (endPosition - startPosition);
+    private void addRangeHeaders() {
+        connection.addHeader("Range", "bytes=" + position + "-");
+        DownloadProvider.CacheBean cacheBean = downloadInfo.getCacheBean();
+        if (cacheBean == null) {
+            //The range support was probed,there is no validator.
+            return;
+        }
+        String eTag = cacheBean.eTag;
+        String lastModified = cacheBean.lastModified;
+        if (!TextUtils.isEmpty(lastModified)) {
+            connection.addHeader("If-Unmodified-Since", lastModified);
+        }
+        if (!TextUtils.isEmpty(eTag)) {
+            connection.addHeader("If-Match", eTag);
+        }
+    }
+
+    private boolean checkResponse(DownloadTask downloadTask, int code) {
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            if (isRangeValid()) {
+                return true;
+            }
+            //Without validators the resource may have changed,download it again from zero.
+            if (downloadInfo.getErrorCode() == null) {
+                downloadInfo.setForceRetry(true);
             }
+            downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+            downloadTask.cancel();
+        } else if (code == HttpURLConnection.HTTP_PRECON_FAILED || code == 416) {
+            if (downloadInfo.getErrorCode() == null) {
+                downloadInfo.setForceRetry(true);
+            }
+            downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+            downloadTask.cancel();
+        } else {
+            downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
+            downloadTask.cancel();
+        }
+        return false;
+    }
+
+    /**
+     * The range requests without validators are checked by the Content-Range of the response.
+     */
+    private boolean isRangeValid() {
+        if (downloadInfo.getCacheBean() != null) {
+            return true;
+        }
+        String contentRange = connection.getHeader("Content-Range");
+        long contentLength = downloadInfo.getContentLength();
+        return Util.parseContentRangeStart(contentRange) == position
+                && (contentLength == Util.CONTENT_LENGTH_NOT_FOUND
+                || Util.parseContentRangeLength(contentRange) == contentLength);
+    }
+
+    private void onTransferEnd() {
+        if (downloadInfo.isChunked() && downloadInfo.getErrorCode() == null && !isCanceled()) {
+            downloadInfo.setContentLength(storageTarget == null ? tempFile.length() : position);
+            downloadInfo.setProgress(100);
+        }
+    }
+
+    private void onTransferError(IOException e) {
+        if (!isCanceled()) {
+            e.printStackTrace();
+            downloadInfo.setErrorCode(ErrorCode.ERROR_NETWORK_UNAVAILABLE);
         }
+    }
+
+    private void download(DownloadTask downloadTask) throws IOException {
+        prepareDownload();
         if (isCanceled()) return;
-        while ((downloadInfo.isChunked() || startPosition < endPosition)
-                && (len = connection.downloadBuffer(buffer, 0, byteCount)) != -1 && !isCanceled()) {
-            startPosition += len;
-            if (!downloadInfo.isChunked()) {
-                long remainCount = endPosition - startPosition;
-                if (remainCount < byteCount) {
-                    byteCount = (int) remainCount;
-                }
+        while (transferBuffer(downloadTask, false) != -1 && !isCanceled()) {
+        }
+        connection.flushDownload();
+    }
+
+    private void prepareDownload() throws IOException {
+        createTempFileIfNeed();
+        if (storageTarget == null) {
+            connection.prepareDownload(tempFile);
+        } else {
+            connection.prepareDownload(storageTarget, position);
+        }
+        buffer = new byte[8092];
+    }
+
+    /**
+     * Read the response into the temp file once.
+     *
+     * @param bufferedOnly only read the bytes already buffered,see {@link OkHttpDownloadConnection#downloadBuffered}.
+     * @return the count of bytes read,0 if nothing is buffered,or -1 if this block is done.
+     */
+    private int transferBuffer(DownloadTask downloadTask, boolean bufferedOnly) throws IOException {
+        int byteCount = buffer.length;
+        if (!downloadInfo.isChunked()) {
+            if (position >= endPosition) {
+                return -1;
             }
-            if (!downloadTask.onDownload(len)) {
-                break;
+            if (endPosition - position < byteCount) {
+                byteCount = (int) (endPosition - position);
             }
         }
-        connection.flushDownload();
+        int len = bufferedOnly ? ((OkHttpDownloadConnection) connection).downloadBuffered(buffer, 0, byteCount)
+                : connection.downloadBuffer(buffer, 0, byteCount);
+        if (len <= 0) {
+            return len;
+        }
+        if (!bufferedOnly) {
+            //This block owns the thread,it may sleep. The async slices are paced in readSlice.
+            FairShareScheduler.getInstance().paceBlocking(downloadInfo.getTag(), len);
+        }
+        position += len;
+        segmentBytes += len;
+        if (position - savedPosition >= PROGRESS_INTERVAL) {
+            saveProgress();
+        }
+        return downloadTask.onDownload(len) ? len : -1;
+    }
+
+    /**
+     * Record how far a block written into the storage target got,the block resumes from there.
+     * The bytes are in the target before their progress is,a block which saved less downloads them again.
+     */
+    private void saveProgress() {
+        if (storageTarget != null && position > savedPosition
+                && FileUtil.writeBlockProgress(tempFile, position - startPosition)) {
+            savedPosition = position;
+        }
+    }
+
+    /**
+     * @return the block file,or the progress file of the block written into the storage target.
+     */
+    private String getTempFileName() {
+        return (storageTarget == null ? DOWNLOAD_PART : DOWNLOAD_PROGRESS) + blockId;
     }
 
     private void calculateCompletedSize() {
         File tempDir = downloadInfo.getTempDir();
         if (tempDir != null) {
-            tempFile = new File(tempDir, DOWNLOAD_PART + blockId);
+            tempFile = new File(tempDir, getTempFileName());
         }
     }
 
@@ -161,7 +457,7 @@ public class DownloadBlockTask extends Task {
         if (tempFile != null && tempFile.exists()) return;
 
         File tempDir = downloadInfo.getTempDir();
-        tempFile = new File(tempDir, DOWNLOAD_PART + blockId);
+        tempFile = new File(tempDir, getTempFileName());
         try {
             if (!tempDir.exists()) {
                 tempDir.mkdirs();
@@ -174,7 +470,7 @@ public class DownloadBlockTask extends Task {
 
     public long getCompletedSize() {
         if (tempFile == null) return 0L;
-        return tempFile.length();
+        return storageTarget == null ? tempFile.length() : FileUtil.readBlockProgress(tempFile);
     }
 
     public void clearTemp() {
@@ -3,19 +3,29 @@ package com.huxq17.download.core.task;
 
 import android.text.TextUtils;
 
+import com.huxq17.download.ErrorCode;
 import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.DiskSpaceLedger;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadInfo;
 import com.huxq17.download.core.DownloadInterceptor;
 import com.huxq17.download.core.DownloadRequest;
 import com.huxq17.download.core.RealDownloadChain;
+import com.huxq17.download.core.SharedTransferManager;
+import com.huxq17.download.core.interceptor.CacheInterceptor;
 import com.huxq17.download.core.interceptor.ConnectInterceptor;
+import com.huxq17.download.core.interceptor.ExtractInterceptor;
 import com.huxq17.download.core.interceptor.MergeFileInterceptor;
+import com.huxq17.download.core.interceptor.PatchInterceptor;
 import com.huxq17.download.core.interceptor.RetryInterceptor;
+import com.huxq17.download.core.metrics.DownloadMetrics;
 import com.huxq17.download.core.service.IDownloadConfigService;
+import com.huxq17.download.core.service.IDownloadManager;
 import com.huxq17.download.core.service.IMessageCenter;
 import com.huxq17.download.db.DBService;
+import com.huxq17.download.utils.FileUtil;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,6 +37,15 @@ public class DownloadTask extends Task {
     private int lastProgress;
     private DownloadRequest downloadRequest;
     private ConnectInterceptor connectInterceptor;
+    /**
+     * Tasks that receive the data of this task's transfer instead of downloading it themselves.
+     */
+    private final List<DownloadTask> followers = new ArrayList<>();
+    private boolean isTransferClosed;
+    private volatile DownloadTask primaryTask;
+    private boolean isQueued;
+    private long queuedTime;
+    private DiskSpaceLedger.Reservation spaceReservation;
 
     public DownloadTask(DownloadRequest downloadRequest) {
         if (downloadRequest != null) {
@@ -77,14 +96,155 @@ public class DownloadTask extends Task {
         return name;
     }
 
+    /**
+     * Called by the dispatcher when the task is handed to its executor.
+     */
+    public void onQueued() {
+        isQueued = true;
+        queuedTime = System.nanoTime();
+        DownloadMetrics.getInstance().onQueued();
+    }
+
     @Override
     public void execute() {
+        if (isQueued) {
+            DownloadMetrics.getInstance().onStart(getId(), queuedTime);
+        }
         if (isRunning()) {
             downloadInfo.setStatus(DownloadInfo.Status.RUNNING);
             notifyProgressChanged(downloadInfo);
             downloadWithDownloadChain();
             notifyProgressChanged(downloadInfo);
         }
+        setSpaceReservation(null);
+        SharedTransferManager.getInstance().release(this);
+        completeFollowers();
+        if (isQueued) {
+            DownloadMetrics.getInstance().onEnd(getId(), downloadInfo.getStatus(), queuedTime);
+        }
+        downloadInfo.setDownloadTask(null);
+    }
+
+    /**
+     * Let the follower receive the data of this task's transfer.
+     *
+     * @param follower the task of another request for the same resource.
+     * @return false if this task is no longer running or is finishing.
+     */
+    public boolean addFollower(DownloadTask follower) {
+        synchronized (followers) {
+            if (isTransferClosed || !isRunning() || follower == this) {
+                return false;
+            }
+            followers.add(follower);
+            follower.primaryTask = this;
+        }
+        follower.syncWithPrimary(downloadInfo);
+        return true;
+    }
+
+    private void removeFollower(DownloadTask follower) {
+        synchronized (followers) {
+            followers.remove(follower);
+        }
+    }
+
+    private List<DownloadTask> getFollowers() {
+        synchronized (followers) {
+            return followers.isEmpty() ? null : new ArrayList<>(followers);
+        }
+    }
+
+    private void syncFollowers() {
+        List<DownloadTask> followers = getFollowers();
+        if (followers != null) {
+            for (DownloadTask follower : followers) {
+                follower.syncWithPrimary(downloadInfo);
+            }
+        }
+    }
+
+    private void completeFollowers() {
+        List<DownloadTask> followers;
+        synchronized (this.followers) {
+            isTransferClosed = true;
+            followers = new ArrayList<>(this.followers);
+            this.followers.clear();
+        }
+        for (DownloadTask follower : followers) {
+            follower.completeSharedTransfer(downloadInfo);
+        }
+    }
+
+    private void syncWithPrimary(DownloadDetailsInfo primaryInfo) {
+        synchronized (lock) {
+            if (!isRunning()) {
+                return;
+            }
+            if (primaryInfo.getStatus() == DownloadInfo.Status.RUNNING) {
+                downloadInfo.setStatus(DownloadInfo.Status.RUNNING);
+            }
+            downloadInfo.setContentLength(primaryInfo.getContentLength());
+            downloadInfo.setCompletedSize(primaryInfo.getCompletedSize());
+            downloadInfo.setProgress(primaryInfo.getProgress());
+        }
+        notifyProgressChanged(downloadInfo);
+    }
+
+    private void completeSharedTransfer(DownloadDetailsInfo primaryInfo) {
+        boolean shouldResubmit = false;
+        synchronized (lock) {
+            primaryTask = null;
+            if (!isRunning()) {
+                downloadInfo.setDownloadTask(null);
+                return;
+            }
+            DownloadInfo.Status primaryStatus = primaryInfo.getStatus();
+            if (primaryStatus == DownloadInfo.Status.FINISHED) {
+                if (downloadInfo.getFilePath() == null) {
+                    downloadRequest.setFilePath(primaryInfo.getFilePath());
+                }
+                File source = primaryInfo.getDownloadFile();
+                File dest = downloadInfo.getDownloadFile();
+                if (source.equals(dest) || FileUtil.linkOrCopy(source, dest)) {
+                    downloadInfo.deleteTempDir();
+                    downloadInfo.setContentLength(primaryInfo.getContentLength());
+                    downloadInfo.setCompletedSize(primaryInfo.getContentLength());
+                    downloadInfo.setProgress(100);
+                    downloadInfo.setFinished(1);
+                    downloadInfo.setStatus(DownloadInfo.Status.FINISHED);
+                } else {
+                    downloadInfo.setErrorCode(ErrorCode.ERROR_CREATE_FILE_FAILED);
+                }
+            } else if (primaryStatus == DownloadInfo.Status.FAILED) {
+                ErrorCode errorCode = primaryInfo.getErrorCode();
+                downloadInfo.setErrorCode(errorCode == null ? ErrorCode.ERROR_DOWNLOAD_FAILED : errorCode);
+            } else {
+                //The primary task was paused,stopped or deleted by its owner,so download by itself.
+                shouldResubmit = true;
+            }
+        }
+        downloadInfo.setDownloadTask(null);
+        if (shouldResubmit) {
+            PumpFactory.getService(IDownloadManager.class).submit(downloadRequest);
+        } else {
+            updateInfo();
+            notifyProgressChanged(downloadInfo);
+        }
+    }
+
+    private void detachFromPrimary() {
+        DownloadTask primaryTask = this.primaryTask;
+        if (primaryTask == null) {
+            return;
+        }
+        this.primaryTask = null;
+        primaryTask.removeFollower(this);
+        if (downloadInfo.getStatus() == DownloadInfo.Status.PAUSING) {
+            downloadInfo.setStatus(DownloadInfo.Status.PAUSED);
+        }
+        updateInfo();
+        notifyProgressChanged(downloadInfo);
         downloadInfo.setDownloadTask(null);
     }
 
@@ -92,25 +252,40 @@ public class DownloadTask extends Task {
         List<DownloadInterceptor> interceptors = new ArrayList<>(PumpFactory.getService(IDownloadConfigService.class)
                 .getDownloadInterceptors());
         connectInterceptor = new ConnectInterceptor();
+        interceptors.add(new ExtractInterceptor());
+        interceptors.add(new CacheInterceptor());
+        interceptors.add(new PatchInterceptor());
         interceptors.add(new RetryInterceptor());
         interceptors.add(connectInterceptor);
         interceptors.add(new MergeFileInterceptor());
         RealDownloadChain realDownloadChain = new RealDownloadChain(interceptors, downloadRequest, 0);
         realDownloadChain.proceed(downloadRequest);
+        long finalizeStartTime = System.nanoTime();
         synchronized (lock) {
             if (downloadInfo.getStatus() == DownloadInfo.Status.PAUSING) {
                 downloadInfo.setStatus(DownloadInfo.Status.PAUSED);
             }
         }
         updateInfo();
+        DownloadMetrics.getInstance().onFinalize(getId(), finalizeStartTime);
     }
 
-    boolean onDownload(int length) {
+    /**
+     * Count the downloaded bytes and notify the progress.
+     *
+     * @return false if the task is no longer running.
+     */
+    public boolean onDownload(int length) {
+        DownloadMetrics.getInstance().onBytes(length);
+        boolean isProgressChanged = false;
         synchronized (lock) {
             if (!isRunning()) {
                 return false;
             }
             downloadInfo.download(length);
+            if (spaceReservation != null) {
+                spaceReservation.consume(length);
+            }
             int progress = (int) (downloadInfo.getCompletedSize() * 1f / downloadInfo.getContentLength() * 100);
             if (progress < 0) {
                 progress = 0;
@@ -119,16 +294,35 @@ public class DownloadTask extends Task {
             if (progress != lastProgress) {
                 if (progress != 100) {
                     lastProgress = progress;
-                    notifyProgressChanged(downloadInfo);
+                    isProgressChanged = true;
                 }
             }
         }
+        //Notified without the lock,a listener delivered on this thread may call back into the task.
+        if (isProgressChanged) {
+            notifyProgressChanged(downloadInfo);
+        }
         return true;
     }
 
+    /**
+     * Hold the disk space reserved for this task,the previous reservation is released.
+     */
+    public void setSpaceReservation(DiskSpaceLedger.Reservation spaceReservation) {
+        synchronized (lock) {
+            if (this.spaceReservation != null) {
+                DiskSpaceLedger.getInstance().release(this.spaceReservation);
+            }
+            this.spaceReservation = spaceReservation;
+        }
+    }
+
     public void notifyProgressChanged(DownloadDetailsInfo downloadInfo) {
         if (messageCenter != null)
             messageCenter.notifyProgressChanged(downloadInfo);
+        if (downloadInfo == this.downloadInfo) {
+            syncFollowers();
+        }
     }
 
     public DownloadDetailsInfo getDownloadInfo() {
@@ -136,13 +330,17 @@ public class DownloadTask extends Task {
     }
 
     public void pause() {
+        boolean isPausing = false;
         synchronized (lock) {
             if (isRunning()) {
                 downloadInfo.setStatus(DownloadInfo.Status.PAUSING);
-                notifyProgressChanged(downloadInfo);
+                isPausing = true;
                 cancel();
             }
         }
+        if (isPausing) {
+            notifyProgressChanged(downloadInfo);
+        }
     }
 
     public void stop() {
@@ -155,6 +353,10 @@ public class DownloadTask extends Task {
     }
 
     public void cancel() {
+        if (primaryTask != null) {
+            detachFromPrimary();
+            return;
+        }
         if (connectInterceptor != null) {
             connectInterceptor.cancel();
         }
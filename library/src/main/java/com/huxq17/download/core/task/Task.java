@@ -1,16 +1,17 @@
 package com.huxq17.download.core.task;
 
+import java.util.concurrent.CountDownLatch;
+
 public abstract class Task implements Runnable {
     protected Thread currentThread;
-    private volatile boolean isFinished = false;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
 
 
     public void waitUntilFinished() {
-        while (!isFinished) {
+        while (true) {
             try {
-                synchronized (this) {
-                    wait();
-                }
+                finishedLatch.await();
+                return;
             } catch (InterruptedException ignore) {
             }
         }
@@ -23,11 +24,14 @@ public abstract class Task implements Runnable {
             execute();
         }
         currentThread = null;
+        finish();
+    }
 
-        isFinished = true;
-        synchronized (this) {
-            notify();
-        }
+    /**
+     * Release the threads waiting in {@link #waitUntilFinished()},for the task which is not finished in {@link #run()}.
+     */
+    protected void finish() {
+        finishedLatch.countDown();
     }
 
     protected abstract void execute();
@@ -10,7 +10,7 @@ import com.huxq17.download.DownloadProvider;
 
 public class DBOpenHelper extends SQLiteOpenHelper {
     public DBOpenHelper(Context context) {
-        super(context, "pump.db", null, 5);
+        super(context, "pump.db", null, 6);
     }
 
     @Override
@@ -41,6 +41,24 @@ public class DBOpenHelper extends SQLiteOpenHelper {
                 + DownloadProvider.CacheTable.ETAG + " CHAR,"
                 + DownloadProvider.CacheTable.LAST_MODIFIED + " CHAR"
                 + ");");
+        createContentCacheTable(db);
+    }
+
+    private void createContentCacheTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + DownloadProvider.ContentCacheTable.TABLE_NAME + " ("
+                + DownloadProvider.ContentCacheTable.URL + " CHAR,"
+                + DownloadProvider.ContentCacheTable.ETAG + " CHAR,"
+                + DownloadProvider.ContentCacheTable.LAST_MODIFIED + " CHAR,"
+                + DownloadProvider.ContentCacheTable.CONTENT_HASH + " CHAR,"
+                + DownloadProvider.ContentCacheTable.NAME + " CHAR,"
+                + DownloadProvider.ContentCacheTable.LENGTH + " INTEGER,"
+                + DownloadProvider.ContentCacheTable.EXPIRES + " INTEGER,"
+                + DownloadProvider.ContentCacheTable.LAST_ACCESS + " INTEGER,"
+                + DownloadProvider.ContentCacheTable.PINNED + " INTEGER default 0,"
+                + "primary key(" + DownloadProvider.ContentCacheTable.URL + "," + DownloadProvider.ContentCacheTable.ETAG + ")"
+                + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS content_cache_hash ON " + DownloadProvider.ContentCacheTable.TABLE_NAME
+                + "(" + DownloadProvider.ContentCacheTable.CONTENT_HASH + ");");
     }
 
     private void newVersion3(SQLiteDatabase db, int oldVersion) {
@@ -129,6 +147,13 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         db.execSQL(String.format("DROP TABLE %s", tempTable));
     }
 
+    private void newVersion6(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion < 5) {
+            newVersion5(db, oldVersion);
+        }
+        createContentCacheTable(db);
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         if (oldVersion == 0) {
@@ -142,6 +167,8 @@ public class DBOpenHelper extends SQLiteOpenHelper {
                 newVersion4(db, oldVersion);
             } else if (newVersion == 5) {
                 newVersion5(db, oldVersion);
+            } else if (newVersion == 6) {
+                newVersion6(db, oldVersion);
             }
         }
     }
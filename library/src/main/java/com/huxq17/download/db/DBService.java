@@ -7,14 +7,22 @@ import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
 import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.core.CompletionIndex;
 import com.huxq17.download.core.DownloadDetailsInfo;
 import com.huxq17.download.core.DownloadInfoManager;
+import com.huxq17.download.core.metrics.DownloadMetrics;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class DBService {
+    /**
+     * SQLite limits the host parameters of a statement to 999.
+     */
+    private static final int MAX_QUERY_ARGS = 500;
     private DBOpenHelper helper;
     private static DBService instance;
     private DownloadInfoManager downloadInfoManager;
@@ -60,11 +68,127 @@ public class DBService {
         return cacheBean;
     }
 
+    public void updateContentCache(DownloadProvider.ContentCacheBean cacheBean) {
+        SQLiteDatabase db = getDatabase();
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(DownloadProvider.ContentCacheTable.URL, cacheBean.url);
+        contentValues.put(DownloadProvider.ContentCacheTable.ETAG, cacheBean.eTag == null ? "" : cacheBean.eTag);
+        contentValues.put(DownloadProvider.ContentCacheTable.LAST_MODIFIED, cacheBean.lastModified);
+        contentValues.put(DownloadProvider.ContentCacheTable.CONTENT_HASH, cacheBean.contentHash);
+        contentValues.put(DownloadProvider.ContentCacheTable.NAME, cacheBean.name);
+        contentValues.put(DownloadProvider.ContentCacheTable.LENGTH, cacheBean.length);
+        contentValues.put(DownloadProvider.ContentCacheTable.EXPIRES, cacheBean.expires);
+        contentValues.put(DownloadProvider.ContentCacheTable.LAST_ACCESS, cacheBean.lastAccess);
+        contentValues.put(DownloadProvider.ContentCacheTable.PINNED, cacheBean.pinned ? 1 : 0);
+        db.replace(DownloadProvider.ContentCacheTable.TABLE_NAME, null, contentValues);
+        closeDatabase();
+    }
+
+    public DownloadProvider.ContentCacheBean queryContentCacheByUrl(String url) {
+        return queryContentCache(DownloadProvider.ContentCacheTable.URL + "=?", url);
+    }
+
+    public DownloadProvider.ContentCacheBean queryContentCacheByHash(String contentHash) {
+        return queryContentCache(DownloadProvider.ContentCacheTable.CONTENT_HASH + "=?", contentHash);
+    }
+
+    private DownloadProvider.ContentCacheBean queryContentCache(String selection, String arg) {
+        List<DownloadProvider.ContentCacheBean> list = queryContentCacheList(selection, new String[]{arg},
+                DownloadProvider.ContentCacheTable.LAST_ACCESS + " DESC", "1");
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * @return all cache entries,the least recently used first.
+     */
+    public List<DownloadProvider.ContentCacheBean> getContentCacheList() {
+        return queryContentCacheList(null, null, DownloadProvider.ContentCacheTable.LAST_ACCESS + " ASC", null);
+    }
+
+    private List<DownloadProvider.ContentCacheBean> queryContentCacheList(String selection, String[] selectionArgs,
+                                                                          String orderBy, String limit) {
+        List<DownloadProvider.ContentCacheBean> list = new ArrayList<>();
+        SQLiteDatabase db = getDatabase();
+        Cursor cursor = db.query(DownloadProvider.ContentCacheTable.TABLE_NAME, new String[]{
+                        DownloadProvider.ContentCacheTable.URL,
+                        DownloadProvider.ContentCacheTable.ETAG,
+                        DownloadProvider.ContentCacheTable.LAST_MODIFIED,
+                        DownloadProvider.ContentCacheTable.CONTENT_HASH,
+                        DownloadProvider.ContentCacheTable.NAME,
+                        DownloadProvider.ContentCacheTable.LENGTH,
+                        DownloadProvider.ContentCacheTable.EXPIRES,
+                        DownloadProvider.ContentCacheTable.LAST_ACCESS,
+                        DownloadProvider.ContentCacheTable.PINNED},
+                selection, selectionArgs, null, null, orderBy, limit);
+        while (cursor.moveToNext()) {
+            DownloadProvider.ContentCacheBean cacheBean = new DownloadProvider.ContentCacheBean(
+                    cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                    cursor.getString(4), cursor.getLong(5), cursor.getLong(6));
+            cacheBean.lastAccess = cursor.getLong(7);
+            cacheBean.pinned = cursor.getInt(8) == 1;
+            list.add(cacheBean);
+        }
+        cursor.close();
+        closeDatabase();
+        return list;
+    }
+
+    public void setContentCachePinned(String url, boolean pinned) {
+        SQLiteDatabase db = getDatabase();
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(DownloadProvider.ContentCacheTable.PINNED, pinned ? 1 : 0);
+        db.update(DownloadProvider.ContentCacheTable.TABLE_NAME, contentValues,
+                DownloadProvider.ContentCacheTable.URL + "=?", new String[]{url});
+        closeDatabase();
+    }
+
+    public void deleteContentCache(DownloadProvider.ContentCacheBean cacheBean) {
+        SQLiteDatabase db = getDatabase();
+        db.delete(DownloadProvider.ContentCacheTable.TABLE_NAME, DownloadProvider.ContentCacheTable.URL + "=? and "
+                        + DownloadProvider.ContentCacheTable.ETAG + "=?",
+                new String[]{cacheBean.url, cacheBean.eTag == null ? "" : cacheBean.eTag});
+        closeDatabase();
+    }
+
     public void updateInfo(DownloadDetailsInfo downloadInfo) {
         if (downloadInfo.isDeleted()) {
             return;
         }
+        long startTime = System.nanoTime();
         SQLiteDatabase db = getDatabase();
+        db.replace(DownloadProvider.DownloadTable.TABLE_NAME, null, toContentValues(downloadInfo));
+        closeDatabase();
+        CompletionIndex.getInstance().update(downloadInfo);
+        DownloadMetrics.getInstance().onDatabaseWrite(downloadInfo.getId(), startTime);
+    }
+
+    /**
+     * Write the download infos in one transaction.
+     */
+    public void updateInfos(List<DownloadDetailsInfo> downloadInfos) {
+        long startTime = System.nanoTime();
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (DownloadDetailsInfo downloadInfo : downloadInfos) {
+                if (!downloadInfo.isDeleted()) {
+                    db.replace(DownloadProvider.DownloadTable.TABLE_NAME, null, toContentValues(downloadInfo));
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            closeDatabase();
+        }
+        for (DownloadDetailsInfo downloadInfo : downloadInfos) {
+            if (!downloadInfo.isDeleted()) {
+                CompletionIndex.getInstance().update(downloadInfo);
+            }
+            DownloadMetrics.getInstance().onDatabaseWrite(downloadInfo.getId(), startTime);
+        }
+    }
+
+    private ContentValues toContentValues(DownloadDetailsInfo downloadInfo) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(DownloadProvider.DownloadTable.URL, downloadInfo.getUrl());
         contentValues.put(DownloadProvider.DownloadTable.PATH, downloadInfo.getFilePath());
@@ -74,8 +198,7 @@ public class DBService {
         contentValues.put(DownloadProvider.DownloadTable.TAG, downloadInfo.getTag());
         contentValues.put(DownloadProvider.DownloadTable.ID, downloadInfo.getId());
         contentValues.put(DownloadProvider.DownloadTable.CREATE_TIME, downloadInfo.getCreateTime());
-        db.replace(DownloadProvider.DownloadTable.TABLE_NAME, null, contentValues);
-        closeDatabase();
+        return contentValues;
     }
 
     public List<DownloadDetailsInfo> getDownloadList() {
@@ -120,11 +243,95 @@ public class DBService {
         return info;
     }
 
+    /**
+     * Query the download infos of ids,with one query for every {@link #MAX_QUERY_ARGS} ids.
+     *
+     * @return the download infos found by id.
+     */
+    public Map<String, DownloadDetailsInfo> getDownloadInfos(List<String> ids) {
+        Map<String, DownloadDetailsInfo> infos = new HashMap<>();
+        if (ids.isEmpty()) {
+            return infos;
+        }
+        SQLiteDatabase db = getDatabase();
+        for (int start = 0; start < ids.size(); start += MAX_QUERY_ARGS) {
+            List<String> args = ids.subList(start, Math.min(start + MAX_QUERY_ARGS, ids.size()));
+            StringBuilder selection = new StringBuilder(DownloadProvider.DownloadTable.ID).append(" in (");
+            for (int i = 0; i < args.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+            Cursor cursor = db.query(DownloadProvider.DownloadTable.TABLE_NAME, null, selection.toString(),
+                    args.toArray(new String[args.size()]), null, null, null, null);
+            while (cursor.moveToNext()) {
+                DownloadDetailsInfo info = downloadInfoManager.createInfoByCursor(cursor);
+                infos.put(info.getId(), info);
+            }
+            cursor.close();
+        }
+        closeDatabase();
+        return infos;
+    }
+
     public void deleteInfo(String id) {
         SQLiteDatabase db = getDatabase();
         db.delete(DownloadProvider.DownloadTable.TABLE_NAME, DownloadProvider.DownloadTable.ID + "=?", new String[]{id});
         db.delete(DownloadProvider.CacheTable.TABLE_NAME, DownloadProvider.CacheTable.URL + "=?", new String[]{id});
         closeDatabase();
+        CompletionIndex.getInstance().remove(id);
+    }
+
+    /**
+     * Delete the infos of ids in one transaction,with one statement per table for every {@link #MAX_QUERY_ARGS} ids.
+     */
+    public void deleteInfos(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_QUERY_ARGS) {
+                List<String> args = ids.subList(start, Math.min(start + MAX_QUERY_ARGS, ids.size()));
+                StringBuilder placeholders = new StringBuilder(" in (");
+                for (int i = 0; i < args.size(); i++) {
+                    placeholders.append(i == 0 ? "?" : ",?");
+                }
+                placeholders.append(')');
+                String[] whereArgs = args.toArray(new String[args.size()]);
+                db.delete(DownloadProvider.DownloadTable.TABLE_NAME,
+                        DownloadProvider.DownloadTable.ID + placeholders, whereArgs);
+                db.delete(DownloadProvider.CacheTable.TABLE_NAME,
+                        DownloadProvider.CacheTable.URL + placeholders, whereArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            closeDatabase();
+        }
+        for (String id : ids) {
+            CompletionIndex.getInstance().remove(id);
+        }
+    }
+
+    /**
+     * Query the finished downloads without loading them into {@link DownloadInfoManager} or checking their files.
+     */
+    public List<DownloadDetailsInfo> getFinishedInfos() {
+        List<DownloadDetailsInfo> infos = new ArrayList<>();
+        SQLiteDatabase db = getDatabase();
+        Cursor cursor = db.query(DownloadProvider.DownloadTable.TABLE_NAME, null,
+                DownloadProvider.DownloadTable.FINISHED + " = 1", null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            DownloadDetailsInfo info = new DownloadDetailsInfo(cursor.getString(0), cursor.getString(1),
+                    cursor.getString(6), cursor.getString(7), cursor.getLong(5));
+            info.setContentLength(cursor.getLong(3));
+            info.setFinished(1);
+            infos.add(info);
+        }
+        cursor.close();
+        closeDatabase();
+        return infos;
     }
 
     private synchronized SQLiteDatabase getDatabase() {
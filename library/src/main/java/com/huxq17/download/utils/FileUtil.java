@@ -1,10 +1,23 @@
 package com.huxq17.download.utils;
 
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import android.text.TextUtils;
 
+import androidx.annotation.RequiresApi;
+
+import com.huxq17.download.core.storage.StorageTarget;
+
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import okio.BufferedSink;
 import okio.BufferedSource;
@@ -64,6 +77,147 @@ public class FileUtil {
 
     }
 
+    /**
+     * Make dest have the same content as source,use a hard link when the file system supports it
+     * and fall back to a channel copy.
+     *
+     * @return {@code true} if dest is ready.
+     */
+    public static boolean linkOrCopy(File source, File dest) {
+        if (!source.exists()) {
+            return false;
+        }
+        File parentFile = dest.getParentFile();
+        if (parentFile != null && !parentFile.exists()) {
+            parentFile.mkdirs();
+        }
+        if (dest.exists() && !deleteFile(dest)) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                Os.link(source.getAbsolutePath(), dest.getAbsolutePath());
+                //Some environments,e.g. the JVM tests,accept the call without linking.
+                if (dest.exists()) {
+                    return true;
+                }
+            } catch (ErrnoException ignore) {
+                //Cross file system or the file system doesn't support hard link,copy it.
+            }
+        }
+        return transferTo(source, dest);
+    }
+
+    /**
+     * Copy source to dest by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so the kernel can move the bytes without copying them through the java heap.
+     */
+    public static boolean transferTo(File source, File dest) {
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
+        try {
+            fis = new FileInputStream(source);
+            fos = new FileOutputStream(dest);
+            FileChannel sourceChannel = fis.getChannel();
+            FileChannel destChannel = fos.getChannel();
+            long size = sourceChannel.size();
+            long position = 0;
+            while (position < size) {
+                long count = sourceChannel.transferTo(position, size - position, destChannel);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+            return position == size;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(fos);
+            closeQuietly(fis);
+        }
+        return false;
+    }
+
+    /**
+     * Allocate the disk blocks of file,so that the space is really taken.
+     *
+     * @return false if the file system can't allocate size bytes.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public static boolean preallocate(File file, long size) {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(file);
+            Os.posix_fallocate(fos.getFD(), 0, size);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ErrnoException e) {
+            LogUtil.e("preallocate " + file.getName() + " failed: " + e.getMessage());
+        } finally {
+            closeQuietly(fos);
+        }
+        return false;
+    }
+
+    public static boolean truncate(File file, long size) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(size);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+        return false;
+    }
+
+    /**
+     * Flush the written data of file to the storage device.
+     *
+     * @return false if the file doesn't exist or can't be synced.
+     */
+    public static boolean sync(File file) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            fis.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            LogUtil.e("sync " + file.getName() + " failed: " + e.getMessage());
+        } finally {
+            closeQuietly(fis);
+        }
+        return false;
+    }
+
+    /**
+     * Flush the entries of dir to the storage device,so that a file renamed into it survives a crash.
+     * Before Lollipop a dir can't be opened for syncing,and it is left to the file system.
+     *
+     * @return false if the dir can't be synced.
+     */
+    public static boolean syncDir(File dir) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return true;
+        }
+        try {
+            FileDescriptor fd = Os.open(dir.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+            return true;
+        } catch (ErrnoException e) {
+            LogUtil.e("sync " + dir.getName() + " failed: " + e.getMessage());
+        }
+        return false;
+    }
+
     public static boolean rename(String filePathName, String newPathName) {
         if (TextUtils.isEmpty(filePathName)) return false;
         if (TextUtils.isEmpty(newPathName)) return false;
@@ -155,7 +309,12 @@ public class FileUtil {
 //        return false;
 //    }
 
-    public static boolean mergeFiles(File[] sources, File dest) {
+    /**
+     * Sort the block files by the id suffix of their names.
+     *
+     * @return the sorted files,or null if the ids are not continuous.
+     */
+    public static File[] sortPartFiles(File[] sources) {
         File[] sortedFiles = new File[sources.length];
         for (int i = 0; i < sources.length; i++) {
             File partFile = sources[i];
@@ -165,9 +324,17 @@ public class FileUtil {
             if (id < sortedFiles.length) {
                 sortedFiles[id] = partFile;
             } else {
-                return false;
+                return null;
             }
         }
+        return sortedFiles;
+    }
+
+    public static boolean mergeFiles(File[] sources, File dest) {
+        File[] sortedFiles = sortPartFiles(sources);
+        if (sortedFiles == null) {
+            return false;
+        }
         BufferedSink bufferedSink = null;
         BufferedSource bufferedSource = null;
         try {
@@ -195,4 +362,56 @@ public class FileUtil {
         }
         return false;
     }
+
+    /**
+     * @return the length recorded by {@link #writeBlockProgress(File, long)},or 0 if there is none.
+     */
+    public static long readBlockProgress(File file) {
+        if (file == null || file.length() != 8) {
+            return 0;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            return randomAccessFile.readLong();
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Record the downloaded length of a block which is written into a storage target.
+     * The file is not created if its directory was deleted.
+     */
+    public static boolean writeBlockProgress(File file, long length) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.writeLong(length);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Publish the storage target if it holds the expected length,otherwise discard its content.
+     */
+    public static boolean publish(StorageTarget target, long expectedLength) {
+        try {
+            if (target.length() == expectedLength) {
+                target.publish();
+                return true;
+            }
+            LogUtil.e("storage target length is " + target.length() + ",but expected " + expectedLength);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        target.abort();
+        return false;
+    }
 }
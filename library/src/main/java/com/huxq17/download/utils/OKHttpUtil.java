@@ -2,6 +2,8 @@ package com.huxq17.download.utils;
 
 import android.content.Context;
 
+import com.huxq17.download.core.metrics.MetricsEventListener;
+
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
@@ -26,6 +28,7 @@ public class OKHttpUtil {
                 .writeTimeout(20, TimeUnit.SECONDS)
                 .readTimeout(20, TimeUnit.SECONDS)
                 .connectTimeout(15, TimeUnit.SECONDS)
+                .eventListenerFactory(MetricsEventListener.FACTORY)
                 .build();
     }
 
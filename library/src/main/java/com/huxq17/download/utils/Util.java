@@ -29,6 +29,10 @@ import okhttp3.Response;
 
 public class Util {
     public static final String DOWNLOAD_PART = "DOWNLOAD_PART-";
+    /**
+     * Records the downloaded length of a block written into a storage target,instead of a block file.
+     */
+    public static final String DOWNLOAD_PROGRESS = "DOWNLOAD_PROGRESS-";
     public static final String BIN = "bin";
     public static final String TRANSFER_ENCODING_CHUNKED = "chunked";
     public static final int CONTENT_LENGTH_NOT_FOUND = -1;
@@ -127,6 +131,43 @@ public class Util {
         return CONTENT_LENGTH_NOT_FOUND;
     }
 
+    /**
+     * Parse the complete length from a Content-Range header such as "bytes 0-0/1024".
+     *
+     * @return the complete length,or {@link #CONTENT_LENGTH_NOT_FOUND} if it is absent or unknown("*").
+     */
+    public static long parseContentRangeLength(@Nullable String contentRange) {
+        if (contentRange == null) return CONTENT_LENGTH_NOT_FOUND;
+
+        int index = contentRange.lastIndexOf('/');
+        if (index == -1) return CONTENT_LENGTH_NOT_FOUND;
+        try {
+            return Long.parseLong(contentRange.substring(index + 1).trim());
+        } catch (NumberFormatException ignored) {
+        }
+
+        return CONTENT_LENGTH_NOT_FOUND;
+    }
+
+    /**
+     * Parse the first byte position from a Content-Range header such as "bytes 100-199/1024".
+     *
+     * @return the first byte position,or -1 if it is absent.
+     */
+    public static long parseContentRangeStart(@Nullable String contentRange) {
+        if (contentRange == null) return -1;
+
+        int start = contentRange.indexOf(' ') + 1;
+        int end = contentRange.indexOf('-', start);
+        if (end == -1) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(start, end).trim());
+        } catch (NumberFormatException ignored) {
+        }
+
+        return -1;
+    }
+
     public static String guessFileName(
             String url,
             @Nullable String contentDisposition,
@@ -41,4 +41,22 @@ public class SpeedMonitorTest {
         Mockito.doReturn(currentTime).when(speedMonitor).currentTime();
         assertEquals("1.11GB/s", speedMonitor.getSpeed());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void movingAverage() {
+        long currentTime = SECOND;
+        Mockito.doReturn(currentTime).when(speedMonitor).currentTime();
+        assertEquals(-1, speedMonitor.getRemainingTime(1000));
+        speedMonitor.download(1000);
+        currentTime += SECOND;
+        Mockito.doReturn(currentTime).when(speedMonitor).currentTime();
+        assertEquals(1000, speedMonitor.getBytesPerSecond());
+        assertEquals(2000, speedMonitor.getRemainingTime(2000));
+
+        speedMonitor.download(2000);
+        currentTime += SECOND;
+        Mockito.doReturn(currentTime).when(speedMonitor).currentTime();
+        assertEquals(2000, speedMonitor.getInstantBytesPerSecond());
+        assertEquals(1300, speedMonitor.getBytesPerSecond());
+    }
+}
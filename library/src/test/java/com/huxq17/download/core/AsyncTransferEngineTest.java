@@ -0,0 +1,185 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.Okio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class AsyncTransferEngineTest {
+    private static final int CONTENT_LENGTH = 192 * 1024;
+    private MockWebServer server;
+    private File downloadDir;
+    private volatile boolean disconnect;
+    private int waitersPeak;
+
+    @Before
+    public void setup() throws IOException {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        Pump.newConfigBuilder()
+                .setMaxRunningTaskNum(4)
+                .setTransferWorkerCount(1)
+                .build();
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                byte[] content = content(request.getPath());
+                MockResponse response = new MockResponse()
+                        .addHeader("ETag", "\"" + request.getPath().hashCode() + "\"")
+                        .addHeader("Accept-Ranges", "bytes")
+                        //Slow sockets,every block has to wait for its bytes many times.
+                        .throttleBody(8 * 1024, 10, TimeUnit.MILLISECONDS);
+                String range = request.getHeader("Range");
+                if (range == null) {
+                    return response.setBody(new Buffer().write(content));
+                }
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(bounds[0]);
+                int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : content.length - 1;
+                if (disconnect && start > 0) {
+                    response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+                }
+                return response.setResponseCode(206)
+                        .addHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length)
+                        .setBody(new Buffer().write(content, start, end - start + 1));
+            }
+        });
+        server.start();
+        downloadDir = new File(RuntimeEnvironment.application.getCacheDir(), "async");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Pump.shutdown();
+        Pump.newConfigBuilder().build();
+        server.shutdown();
+    }
+
+    private static byte[] content(String path) {
+        byte[] content = new byte[CONTENT_LENGTH];
+        new Random(path.hashCode()).nextBytes(content);
+        return content;
+    }
+
+    private byte[] read(String id) throws IOException {
+        return Okio.buffer(Okio.source(new File(downloadDir, id))).readByteArray();
+    }
+
+    private void submit(String id) {
+        Pump.newRequest(server.url("/" + id).toString(), new File(downloadDir, id).getAbsolutePath())
+                .setId(id)
+                .threadNum(3)
+                .forceReDownload(true)
+                .submit();
+    }
+
+    private DownloadInfo.Status awaitStatus(String id, DownloadInfo.Status... statuses) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20000;
+        DownloadInfo.Status status = null;
+        while (System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            sampleWaiters();
+            DownloadInfo downloadInfo = Pump.getDownloadInfoById(id);
+            status = downloadInfo == null ? null : downloadInfo.getStatus();
+            if (Arrays.asList(statuses).contains(status)) {
+                break;
+            }
+            Thread.sleep(5);
+        }
+        return status;
+    }
+
+    private void sampleWaiters() {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        Thread[] threads = new Thread[group.activeCount() * 2];
+        int count = group.enumerate(threads);
+        int waiters = 0;
+        for (int i = 0; i < count; i++) {
+            if (threads[i].getName().startsWith("AsyncTransferEngine-waiter-")) {
+                waiters++;
+            }
+        }
+        waitersPeak = Math.max(waitersPeak, waiters);
+    }
+
+    @Test
+    public void slowSockets_waitOnBoundedWaiters() throws Exception {
+        String[] ids = {"slow0", "slow1", "slow2", "slow3"};
+        for (String id : ids) {
+            submit(id);
+        }
+        for (String id : ids) {
+            assertEquals(DownloadInfo.Status.FINISHED, awaitStatus(id, DownloadInfo.Status.FINISHED, DownloadInfo.Status.FAILED));
+            assertArrayEquals(content("/" + id), read(id));
+        }
+        //8 async blocks waited on the network,but never on more threads than the waiters of one worker.
+        assertTrue(waitersPeak > 0);
+        assertTrue(waitersPeak <= AsyncTransferEngine.WAITERS_PER_WORKER);
+    }
+
+    @Test
+    public void pause_endsWaitingBlocks_thenResumes() throws Exception {
+        String id = "pause";
+        submit(id);
+        long deadline = System.currentTimeMillis() + 10000;
+        DownloadInfo downloadInfo = Pump.getDownloadInfoById(id);
+        while ((downloadInfo == null || downloadInfo.getCompletedSize() < CONTENT_LENGTH / 4)
+                && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(5);
+            downloadInfo = Pump.getDownloadInfoById(id);
+        }
+        Pump.pause(id);
+        assertEquals(DownloadInfo.Status.PAUSED, awaitStatus(id, DownloadInfo.Status.PAUSED, DownloadInfo.Status.FINISHED));
+        assertTrue(Pump.getDownloadInfoById(id).getCompletedSize() < CONTENT_LENGTH);
+        //Every block has to come back from its wait,otherwise the task never ends.
+        deadline = System.currentTimeMillis() + 10000;
+        while (DownloadInfoManager.getInstance().get(id).getDownloadTask() != null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNull(DownloadInfoManager.getInstance().get(id).getDownloadTask());
+
+        Pump.resume(id);
+        assertEquals(DownloadInfo.Status.FINISHED, awaitStatus(id, DownloadInfo.Status.FINISHED, DownloadInfo.Status.FAILED));
+        assertArrayEquals(content("/" + id), read(id));
+    }
+
+    @Test
+    public void disconnect_failsWaitingBlock() throws Exception {
+        disconnect = true;
+        String id = "disconnect";
+        submit(id);
+        assertEquals(DownloadInfo.Status.FAILED, awaitStatus(id, DownloadInfo.Status.FINISHED, DownloadInfo.Status.FAILED));
+    }
+}
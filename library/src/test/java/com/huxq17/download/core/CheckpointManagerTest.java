@@ -0,0 +1,83 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+
+@RunWith(RobolectricTestRunner.class)
+public class CheckpointManagerTest {
+    private DownloadDetailsInfo downloadInfo;
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        Pump.newConfigBuilder()
+                .setDurabilityPolicy(DurabilityPolicy.PERIODIC)
+                .build();
+        File file = new File(RuntimeEnvironment.application.getCacheDir(), "checkpoint/a.bin");
+        downloadInfo = new DownloadDetailsInfo("http://example.com/a.bin", file.getAbsolutePath(), null, "a", 0);
+        downloadInfo.setThreadNum(2);
+        downloadInfo.setContentLength(1024);
+        downloadInfo.getTempDir().mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        downloadInfo.deleteTempDir();
+        Pump.newConfigBuilder().build();
+    }
+
+    private static void append(File file, int length) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file, true);
+        try {
+            fos.write(new byte[length]);
+        } finally {
+            fos.close();
+        }
+    }
+
+    @Test
+    public void restore_toLastCheckpoint() throws IOException {
+        File block0 = new File(downloadInfo.getTempDir(), DOWNLOAD_PART + 0);
+        File block1 = new File(downloadInfo.getTempDir(), DOWNLOAD_PART + 1);
+        append(block0, 300);
+        append(block1, 100);
+        CheckpointManager checkpointManager = CheckpointManager.getInstance();
+        checkpointManager.register(downloadInfo);
+        checkpointManager.unregister(downloadInfo);
+        //Written after the checkpoint,as if power was lost before they reached the device.
+        append(block0, 200);
+        append(block1, 50);
+        checkpointManager.restore(downloadInfo);
+        Assert.assertEquals(300, block0.length());
+        Assert.assertEquals(100, block1.length());
+
+        downloadInfo.setContentLength(2048);
+        checkpointManager.restore(downloadInfo);
+        Assert.assertFalse(block0.exists());
+        Assert.assertFalse(block1.exists());
+    }
+
+    @Test
+    public void restore_keepsBlocksWithoutCheckpoint() throws IOException {
+        File block0 = new File(downloadInfo.getTempDir(), DOWNLOAD_PART + 0);
+        append(block0, 300);
+        //Written before the policy was enabled,there is no checkpoint yet.
+        CheckpointManager.getInstance().restore(downloadInfo);
+        Assert.assertEquals(300, block0.length());
+    }
+}
@@ -0,0 +1,74 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.db.DBService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompletionIndexTest {
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+    }
+
+    @After
+    public void tearDown() {
+        CompletionIndex.getInstance().clear();
+    }
+
+    @Test
+    public void getFinishedFile_followsDatabaseUpdates() throws IOException {
+        CompletionIndex completionIndex = CompletionIndex.getInstance();
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "completion");
+        File file = createFile(new File(dir, "finished"), 100);
+        DownloadDetailsInfo downloadInfo = DownloadInfoManager.getInstance().createDownloadInfo("http://example.com/finished",
+                file.getAbsolutePath(), null, "finished", 0, false);
+        downloadInfo.setContentLength(100);
+        downloadInfo.setFinished(1);
+        DBService.getInstance().updateInfo(downloadInfo);
+        //Loaded from the database.
+        Assert.assertEquals(file.getAbsolutePath(), completionIndex.getFinishedFile("finished").getAbsolutePath());
+        Assert.assertNotNull(completionIndex.getFinishedFile("finished"));
+        Assert.assertNull(completionIndex.getFinishedFile("unknown"));
+
+        downloadInfo.setFinished(0);
+        DBService.getInstance().updateInfo(downloadInfo);
+        Assert.assertNull(completionIndex.getFinishedFile("finished"));
+
+        File otherFile = createFile(new File(dir, "other"), 50);
+        downloadInfo.setFilePath(otherFile.getAbsolutePath());
+        downloadInfo.setContentLength(100);
+        downloadInfo.setFinished(1);
+        DBService.getInstance().updateInfo(downloadInfo);
+        //The length of the file doesn't match.
+        Assert.assertNull(completionIndex.getFinishedFile("finished"));
+
+        DBService.getInstance().deleteInfo(downloadInfo.getId());
+        completionIndex.clear();
+        Assert.assertNull(completionIndex.getFinishedFile("finished"));
+    }
+
+    private static File createFile(File file, int length) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(new byte[length]);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+}
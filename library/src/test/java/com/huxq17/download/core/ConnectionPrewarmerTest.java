@@ -0,0 +1,51 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectionPrewarmerTest {
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        Pump.newConfigBuilder().setPrewarmCount(2).build();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        Pump.newConfigBuilder().build();
+    }
+
+    @Test
+    public void prewarm_oncePerHost() throws InterruptedException {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        ConnectionPrewarmer prewarmer = ConnectionPrewarmer.getInstance();
+        prewarmer.prewarm(new DownloadRequest(DownloadRequest.newRequest(server.url("/a").toString(), null)));
+        prewarmer.prewarm(new DownloadRequest(DownloadRequest.newRequest(server.url("/b").toString(), null)));
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        Assert.assertEquals("HEAD", request.getMethod());
+        Assert.assertEquals("/a", request.getPath());
+        Assert.assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+    }
+}
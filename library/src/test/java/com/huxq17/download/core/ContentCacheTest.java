@@ -0,0 +1,182 @@
+package com.huxq17.download.core;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Base64;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.db.DBOpenHelper;
+import com.huxq17.download.db.DBService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentCacheTest {
+    private File dir;
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        Pump.newConfigBuilder().setContentCacheSize(1024 * 1024).build();
+        dir = new File(RuntimeEnvironment.application.getCacheDir(), "content_cache");
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        Pump.newConfigBuilder().build();
+    }
+
+    private static byte[] fill(int length, int value) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+
+    /**
+     * Cache the content as a finished download of url,used at lastAccess.
+     */
+    private DownloadProvider.ContentCacheBean put(String url, byte[] content, long lastAccess) throws IOException {
+        File file = new File(dir, String.valueOf(url.hashCode()));
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+        DownloadDetailsInfo downloadInfo = DownloadInfoManager.getInstance().createDownloadInfo(url,
+                file.getAbsolutePath(), null, url, 0, false);
+        downloadInfo.setCacheExpires(System.currentTimeMillis() + 60 * 1000);
+        ContentCache contentCache = ContentCache.getInstance();
+        contentCache.put(downloadInfo);
+        DownloadProvider.ContentCacheBean cacheBean = contentCache.get(url);
+        Assert.assertNotNull(cacheBean);
+        cacheBean.lastAccess = lastAccess;
+        DBService.getInstance().updateContentCache(cacheBean);
+        return cacheBean;
+    }
+
+    @Test
+    public void trimToSize_countsSharedContentOnce() throws IOException {
+        ContentCache contentCache = ContentCache.getInstance();
+        DownloadProvider.ContentCacheBean a = put("http://example.com/a", fill(1000, 1), 1);
+        DownloadProvider.ContentCacheBean b = put("http://example.com/b", fill(1000, 1), 2);
+        put("http://example.com/c", fill(1000, 2), 3);
+        Assert.assertEquals(a.contentHash, b.contentHash);
+
+        //a and b share 1000 bytes,the cache holds 2000 bytes and already fits.
+        contentCache.trimToSize(2000);
+        Assert.assertNotNull(contentCache.get("http://example.com/a"));
+
+        //Evicting a frees nothing,b still references the content,so b is evicted too.
+        contentCache.trimToSize(1500);
+        Assert.assertNull(contentCache.get("http://example.com/a"));
+        Assert.assertNull(contentCache.get("http://example.com/b"));
+        Assert.assertNotNull(contentCache.get("http://example.com/c"));
+    }
+
+    @Test
+    public void trimToSize_keepsPinnedEntries() throws IOException {
+        ContentCache contentCache = ContentCache.getInstance();
+        put("http://example.com/a", fill(1000, 1), 1);
+        put("http://example.com/b", fill(1000, 1), 2);
+        put("http://example.com/c", fill(1000, 2), 3);
+        contentCache.setPinned("http://example.com/b", true);
+
+        contentCache.trimToSize(1500);
+        Assert.assertNull(contentCache.get("http://example.com/a"));
+        //The pinned entry keeps the content it shares with the evicted one.
+        DownloadProvider.ContentCacheBean b = contentCache.get("http://example.com/b");
+        Assert.assertNotNull(b);
+        Assert.assertTrue(b.pinned);
+        Assert.assertNull(contentCache.get("http://example.com/c"));
+
+        //Nothing but pinned entries is left,they are kept even beyond the size.
+        contentCache.trimToSize(0);
+        Assert.assertNotNull(contentCache.get("http://example.com/b"));
+        contentCache.setPinned("http://example.com/b", false);
+        contentCache.trimToSize(0);
+        Assert.assertNull(contentCache.get("http://example.com/b"));
+    }
+
+    @Test
+    public void getByContentMD5() throws Exception {
+        ContentCache contentCache = ContentCache.getInstance();
+        byte[] content = fill(1000, 3);
+        DownloadProvider.ContentCacheBean cacheBean = put("http://example.com/md5", content, 1);
+        byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+        DownloadProvider.ContentCacheBean found = contentCache.getByContentMD5(
+                Base64.encodeToString(digest, Base64.NO_WRAP));
+        Assert.assertNotNull(found);
+        Assert.assertEquals(cacheBean.contentHash, found.contentHash);
+
+        Assert.assertNull(contentCache.getByContentMD5(null));
+        Assert.assertNull(contentCache.getByContentMD5("not a digest"));
+        byte[] otherDigest = MessageDigest.getInstance("MD5").digest(fill(1000, 4));
+        Assert.assertNull(contentCache.getByContentMD5(Base64.encodeToString(otherDigest, Base64.NO_WRAP)));
+    }
+
+    @Test
+    public void upgradeToVersion6_addsContentCacheTable() {
+        File dbFile = RuntimeEnvironment.application.getDatabasePath("pump_v5.db");
+        dbFile.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        db.execSQL("CREATE TABLE " + DownloadProvider.DownloadTable.TABLE_NAME + " ("
+                + DownloadProvider.DownloadTable.URL + " CHAR,"
+                + DownloadProvider.DownloadTable.PATH + " CHAR,"
+                + DownloadProvider.DownloadTable.THREAD_NUM + " INTEGER,"
+                + DownloadProvider.DownloadTable.FILE_LENGTH + " INTEGER,"
+                + DownloadProvider.DownloadTable.FINISHED + " INTEGER,"
+                + DownloadProvider.DownloadTable.CREATE_TIME + " INTEGER,"
+                + DownloadProvider.DownloadTable.TAG + " CHAR,"
+                + DownloadProvider.DownloadTable.ID + " CHAR primary key);");
+        db.execSQL("CREATE TABLE " + DownloadProvider.CacheTable.TABLE_NAME + " ("
+                + DownloadProvider.CacheTable.URL + " CHAR primary key,"
+                + DownloadProvider.CacheTable.ETAG + " CHAR,"
+                + DownloadProvider.CacheTable.LAST_MODIFIED + " CHAR);");
+        ContentValues values = new ContentValues();
+        values.put(DownloadProvider.DownloadTable.ID, "v5");
+        values.put(DownloadProvider.DownloadTable.URL, "http://example.com/v5");
+        values.put(DownloadProvider.DownloadTable.CREATE_TIME, 5);
+        db.insert(DownloadProvider.DownloadTable.TABLE_NAME, null, values);
+        db.setVersion(5);
+        db.close();
+
+        DBOpenHelper helper = new DBOpenHelper(RuntimeEnvironment.application);
+        SQLiteDatabase upgradedDb = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        helper.onUpgrade(upgradedDb, 5, 6);
+        upgradedDb.setVersion(6);
+
+        Cursor cursor = upgradedDb.query(DownloadProvider.DownloadTable.TABLE_NAME, null,
+                DownloadProvider.DownloadTable.ID + "=?", new String[]{"v5"}, null, null, null);
+        Assert.assertEquals(1, cursor.getCount());
+        cursor.close();
+        ContentValues cacheValues = new ContentValues();
+        cacheValues.put(DownloadProvider.ContentCacheTable.URL, "http://example.com/v5");
+        cacheValues.put(DownloadProvider.ContentCacheTable.ETAG, "\"v5\"");
+        cacheValues.put(DownloadProvider.ContentCacheTable.CONTENT_HASH, "hash");
+        cacheValues.put(DownloadProvider.ContentCacheTable.LENGTH, 5);
+        Assert.assertNotEquals(-1, upgradedDb.insert(DownloadProvider.ContentCacheTable.TABLE_NAME, null, cacheValues));
+        cursor = upgradedDb.query(DownloadProvider.ContentCacheTable.TABLE_NAME,
+                new String[]{DownloadProvider.ContentCacheTable.PINNED}, null, null, null, null, null);
+        Assert.assertTrue(cursor.moveToNext());
+        Assert.assertEquals(0, cursor.getInt(0));
+        cursor.close();
+        upgradedDb.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.core.task.DownloadTask;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import okio.Okio;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentDecoderTest {
+
+    @Test
+    public void decode_gzipParts() throws IOException {
+        byte[] content = new byte[1024 * 1024];
+        Random random = new Random(1);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(encoded);
+        gzipOutputStream.write(content);
+        gzipOutputStream.close();
+        byte[] encodedBytes = encoded.toByteArray();
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "content_decoder_test");
+        dir.mkdirs();
+        File[] parts = new File[3];
+        int blockSize = encodedBytes.length / parts.length;
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new File(dir, "part-" + i);
+            int end = i == parts.length - 1 ? encodedBytes.length : (i + 1) * blockSize;
+            FileOutputStream fos = new FileOutputStream(parts[i]);
+            fos.write(encodedBytes, i * blockSize, end - i * blockSize);
+            fos.close();
+        }
+        File dest = new File(dir, "dest");
+
+        DownloadDetailsInfo downloadInfo = new DownloadDetailsInfo("http://example.com/a.txt", dest.getPath());
+        DownloadTask downloadTask = mock(DownloadTask.class);
+        doReturn(downloadInfo).when(downloadTask).getDownloadInfo();
+
+        Assert.assertTrue(ContentDecoder.decode(parts, dest, "gzip", downloadTask));
+        Assert.assertEquals(content.length, downloadInfo.getDecodedSize());
+        Assert.assertTrue(Arrays.equals(content, Okio.buffer(Okio.source(dest)).readByteArray()));
+
+        Assert.assertFalse(ContentDecoder.decode(new File[]{parts[0]}, dest, "gzip", downloadTask));
+        for (File part : parts) {
+            part.delete();
+        }
+        dest.delete();
+    }
+}
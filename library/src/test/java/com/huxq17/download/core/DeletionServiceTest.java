@@ -0,0 +1,97 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.db.DBService;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeletionServiceTest {
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+    }
+
+    @Test
+    public void delete_removesInfosRowsAndFiles() throws Exception {
+        DownloadInfoManager downloadInfoManager = DownloadInfoManager.getInstance();
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "deletion");
+        List<DownloadDetailsInfo> infos = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String id = "deletion" + i;
+            DownloadDetailsInfo downloadInfo = downloadInfoManager.createDownloadInfo("http://example.com/" + i,
+                    new File(dir, id).getAbsolutePath(), "deletion", id, i);
+            downloadInfo.getTempDir().mkdirs();
+            createFile(new File(downloadInfo.getTempDir(), DOWNLOAD_PART + 0));
+            createFile(downloadInfo.getDownloadFile());
+            infos.add(downloadInfo);
+            ids.add(id);
+        }
+        DBService.getInstance().updateInfos(infos);
+        //Only in the database.
+        downloadInfoManager.remove(ids.get(0));
+
+        List<String> deletedIds = DeletionService.getInstance().delete(ids, null).get();
+        Assert.assertEquals(ids, deletedIds);
+        for (DownloadDetailsInfo downloadInfo : infos) {
+            Assert.assertNull(downloadInfoManager.get(downloadInfo.getId()));
+            Assert.assertNull(DBService.getInstance().getDownloadInfo(downloadInfo.getId()));
+            Assert.assertFalse(downloadInfo.getTempDir().exists());
+            Assert.assertFalse(downloadInfo.getDownloadFile().exists());
+        }
+    }
+
+    @Test
+    public void delete_doesNotReloadDeletingInfo() throws Exception {
+        DownloadInfoManager downloadInfoManager = DownloadInfoManager.getInstance();
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "deletion");
+        String id = "ghost";
+        DownloadDetailsInfo downloadInfo = downloadInfoManager.createDownloadInfo("http://example.com/ghost",
+                new File(dir, id).getAbsolutePath(), "deletion", id, 0);
+        DBService dbService = DBService.getInstance();
+        dbService.updateInfos(Collections.singletonList(downloadInfo));
+        Future<List<String>> future;
+        //The deletion can't reach the database until the monitor is released,the row is still there.
+        synchronized (dbService) {
+            future = DeletionService.getInstance().delete(Collections.singletonList(id), null);
+            Assert.assertNull(Pump.getDownloadInfoById(id));
+            Assert.assertFalse(containsId(Pump.getAllDownloadList(), id));
+            Assert.assertNull(downloadInfoManager.get(id));
+        }
+        Assert.assertEquals(Collections.singletonList(id), future.get());
+        Assert.assertNull(downloadInfoManager.get(id));
+        Assert.assertNull(Pump.getDownloadInfoById(id));
+    }
+
+    private static boolean containsId(List<DownloadInfo> downloadInfos, String id) {
+        for (DownloadInfo downloadInfo : downloadInfos) {
+            if (downloadInfo.getId().equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void createFile(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        Assert.assertTrue(file.createNewFile());
+    }
+}
@@ -0,0 +1,28 @@
+package com.huxq17.download.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiskSpaceLedgerTest {
+
+    @Test
+    public void reserve() {
+        DiskSpaceLedger diskSpaceLedger = DiskSpaceLedger.getInstance();
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        long size = diskSpaceLedger.getUsableSpace(directory) / 2 + 1;
+        DiskSpaceLedger.Reservation reservation = diskSpaceLedger.reserve(directory, size, 0, 0);
+        Assert.assertNotNull(reservation);
+        Assert.assertNull(diskSpaceLedger.reserve(directory, size, 0, 0));
+
+        reservation.consume(size - 1);
+        DiskSpaceLedger.Reservation reservation2 = diskSpaceLedger.reserve(directory, size, 0, 0);
+        Assert.assertNotNull(reservation2);
+        diskSpaceLedger.release(reservation);
+        diskSpaceLedger.release(reservation2);
+    }
+}
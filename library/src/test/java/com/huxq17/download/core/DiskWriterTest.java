@@ -0,0 +1,102 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiskWriterTest {
+    private File dir;
+
+    @Before
+    public void setup() {
+        Pump.newConfigBuilder()
+                .setDiskWriterCount(2)
+                .build();
+        dir = new File(RuntimeEnvironment.application.getCacheDir(), "disk_writer");
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        DiskWriter.getInstance().shutdown();
+        Pump.newConfigBuilder().build();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += fis.read(data, offset, data.length - offset);
+            }
+        } finally {
+            fis.close();
+        }
+        return data;
+    }
+
+    @Test
+    public void write_keepsOrderOfEachFile() throws Exception {
+        final int fileCount = 4;
+        final int length = 3 * DiskWriter.CHUNK_SIZE + 1000;
+        final File[] files = new File[fileCount];
+        Thread[] readers = new Thread[fileCount];
+        final IOException[] errors = new IOException[fileCount];
+        long writeCount = DownloadMetrics.getInstance().getWriteSizeHistogram().getCount();
+        for (int i = 0; i < fileCount; i++) {
+            final int index = i;
+            files[i] = new File(dir, "file" + i);
+            files[i].delete();
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        DiskWriter.FileOutput fileOutput = DiskWriter.getInstance().open(files[index]);
+                        byte[] buffer = new byte[1000];
+                        int written = 0;
+                        try {
+                            while (written < length) {
+                                int count = Math.min(buffer.length, length - written);
+                                for (int j = 0; j < count; j++) {
+                                    buffer[j] = (byte) (written + j + index);
+                                }
+                                fileOutput.write(buffer, 0, count);
+                                written += count;
+                            }
+                            fileOutput.flush();
+                        } finally {
+                            fileOutput.close();
+                        }
+                    } catch (IOException e) {
+                        errors[index] = e;
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 0; i < fileCount; i++) {
+            readers[i].join();
+            Assert.assertNull(errors[i]);
+            byte[] data = read(files[i]);
+            Assert.assertEquals(length, data.length);
+            for (int j = 0; j < length; j++) {
+                Assert.assertEquals((byte) (j + i), data[j]);
+            }
+        }
+        Assert.assertTrue(DownloadMetrics.getInstance().getWriteSizeHistogram().getCount() > writeCount);
+        Assert.assertEquals(0, DownloadMetrics.getInstance().getWriteQueueDepth());
+    }
+}
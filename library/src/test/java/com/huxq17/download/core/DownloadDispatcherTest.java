@@ -0,0 +1,205 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.PumpFactory;
+import com.huxq17.download.core.service.IDownloadManager;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.db.DBService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class DownloadDispatcherTest {
+    private DownloadDispatcher dispatcher;
+    private RecordingExecutor executor;
+    private File dir;
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        dispatcher = new DownloadDispatcher((DownloadManager) PumpFactory.getService(IDownloadManager.class));
+        executor = new RecordingExecutor();
+        dir = new File(RuntimeEnvironment.application.getCacheDir(), "dispatcher");
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.cancel();
+    }
+
+    private DownloadRequest newRequest(String id) {
+        return new DownloadRequest(DownloadRequest.newRequest("http://example.com/" + id,
+                new File(dir, id).getAbsolutePath())
+                .setId(id)
+                .threadNum(3)
+                .setDownloadTaskExecutor(executor));
+    }
+
+    /**
+     * Wait until the admission thread is blocked on the monitor of {@link DBService},which the caller holds.
+     */
+    private void awaitAdmissionBlocked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+                if (entry.getKey().getState() == Thread.State.BLOCKED && isAdmitting(entry.getValue())) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        Assert.fail("The admission didn't start.");
+    }
+
+    private static boolean isAdmitting(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            if ("admitRequests".equals(element.getMethodName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void awaitExecuted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.executeCount.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        //Give a duplicate the time to be dispatched too.
+        Thread.sleep(50);
+    }
+
+    @Test
+    public void enqueue_rejectsDuplicateWhileAdmitting() throws Exception {
+        DBService dbService = DBService.getInstance();
+        synchronized (dbService) {
+            dispatcher.enqueueRequest(newRequest("duplicate"));
+            awaitAdmissionBlocked();
+            //The id is still queued while its info is queried.
+            dispatcher.enqueueRequest(newRequest("duplicate"));
+        }
+        awaitExecuted(1);
+        Assert.assertEquals(1, executor.executeCount.get());
+        Assert.assertEquals(1, executor.initCount.get());
+        Assert.assertTrue(executor.tasks.containsKey("duplicate"));
+    }
+
+    @Test
+    public void enqueue_admitsRequestQueuedWhileAdmissionFinishes() throws Exception {
+        final AtomicBoolean isFinishing = new AtomicBoolean();
+        dispatcher = new DownloadDispatcher((DownloadManager) PumpFactory.getService(IDownloadManager.class)) {
+            @Override
+            public boolean isRunning() {
+                if (executor.tasks.containsKey("first") && isFinishing.compareAndSet(false, true)) {
+                    //The run has admitted the first request and stops looking at the queue,
+                    //the second one is queued before it has finished.
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            enqueueRequest(newRequest("second"));
+                        }
+                    });
+                    thread.start();
+                    try {
+                        thread.join();
+                    } catch (InterruptedException ignore) {
+                    }
+                    return false;
+                }
+                return super.isRunning();
+            }
+        };
+        dispatcher.enqueueRequest(newRequest("first"));
+        awaitExecuted(2);
+        Assert.assertTrue(isFinishing.get());
+        //The finishing run scheduled another one for the request it didn't see.
+        Assert.assertEquals(2, executor.executeCount.get());
+        Assert.assertTrue(executor.tasks.containsKey("second"));
+    }
+
+    @Test
+    public void admit_batchOfKnownAndUnknownIds() throws Exception {
+        DownloadInfoManager downloadInfoManager = DownloadInfoManager.getInstance();
+        //Only in the database,like a download of the last launch.
+        DownloadDetailsInfo storedInfo = downloadInfoManager.createDownloadInfo("http://example.com/known0",
+                new File(dir, "known0").getAbsolutePath(), null, "known0", 1000);
+        DBService.getInstance().updateInfos(Arrays.asList(storedInfo));
+        downloadInfoManager.remove("known0");
+        //Already loaded,the request carries its info.
+        DownloadDetailsInfo loadedInfo = downloadInfoManager.createDownloadInfo("http://example.com/known1",
+                new File(dir, "known1").getAbsolutePath(), null, "known1", 2000);
+        DownloadRequest loadedRequest = newRequest("known1");
+        loadedRequest.setDownloadInfo(loadedInfo);
+        List<DownloadRequest> batch = Arrays.asList(newRequest("unknown0"), newRequest("known0"),
+                loadedRequest, newRequest("unknown1"), newRequest("unknown0"));
+
+        DBService dbService = DBService.getInstance();
+        synchronized (dbService) {
+            dispatcher.enqueueRequest(newRequest("blocker"));
+            awaitAdmissionBlocked();
+            //Queued behind the blocked run,so they are admitted in one batch.
+            for (DownloadRequest downloadRequest : batch) {
+                dispatcher.enqueueRequest(downloadRequest);
+            }
+        }
+        awaitExecuted(5);
+        Assert.assertEquals(5, executor.executeCount.get());
+        Assert.assertEquals(1000, executor.tasks.get("known0").getDownloadInfo().getCreateTime());
+        Assert.assertSame(loadedInfo, executor.tasks.get("known1").getDownloadInfo());
+        for (String id : new String[]{"unknown0", "unknown1"}) {
+            Assert.assertNotNull(executor.tasks.get(id));
+            Assert.assertNotNull(DBService.getInstance().getDownloadInfo(id));
+        }
+    }
+
+    private static class RecordingExecutor implements DownloadTaskExecutor {
+        final AtomicInteger initCount = new AtomicInteger();
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Map<String, DownloadTask> tasks = new ConcurrentHashMap<>();
+
+        @Override
+        public void init() {
+            initCount.incrementAndGet();
+        }
+
+        @Override
+        public void execute(DownloadTask downloadTask) {
+            tasks.put(downloadTask.getId(), downloadTask);
+            executeCount.incrementAndGet();
+        }
+
+        @Override
+        public int getMaxDownloadNumber() {
+            return 1;
+        }
+
+        @Override
+        public String getName() {
+            return "RecordingExecutor";
+        }
+
+        @Override
+        public String getTag() {
+            return null;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.huxq17.download.core;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DownloadInfoManagerTest {
+
+    @After
+    public void tearDown() {
+        DownloadInfoManager.getInstance().clear();
+    }
+
+    @Test
+    public void index_followsStatusChanges() {
+        DownloadInfoManager downloadInfoManager = DownloadInfoManager.getInstance();
+        DownloadDetailsInfo a = downloadInfoManager.createDownloadInfo("http://example.com/a", null, "music", "a", 0);
+        DownloadDetailsInfo b = downloadInfoManager.createDownloadInfo("http://example.com/b", null, "music", "b", 0);
+        downloadInfoManager.createDownloadInfo("http://example.com/c", null, "video", "c", 0);
+        Assert.assertEquals(2, downloadInfoManager.getCountByTag("music"));
+        Assert.assertEquals(3, downloadInfoManager.getCountByStatus(null));
+
+        a.setStatus(DownloadInfo.Status.RUNNING);
+        b.setStatus(DownloadInfo.Status.RUNNING);
+        b.setStatus(DownloadInfo.Status.FINISHED);
+        Assert.assertEquals(1, downloadInfoManager.getCountByStatus(DownloadInfo.Status.RUNNING));
+        Assert.assertSame(b, downloadInfoManager.getByStatus(DownloadInfo.Status.FINISHED).get(0));
+        Assert.assertEquals(1, downloadInfoManager.getCountByStatus(null));
+
+        downloadInfoManager.remove("b");
+        Assert.assertEquals(0, downloadInfoManager.getCountByStatus(DownloadInfo.Status.FINISHED));
+        Assert.assertEquals(1, downloadInfoManager.getCountByTag("music"));
+        //Not managed anymore.
+        b.setStatus(DownloadInfo.Status.STOPPED);
+        Assert.assertEquals(0, downloadInfoManager.getCountByStatus(DownloadInfo.Status.STOPPED));
+    }
+}
@@ -0,0 +1,60 @@
+package com.huxq17.download.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import okhttp3.Request;
+
+@RunWith(RobolectricTestRunner.class)
+public class DownloadRequestTest {
+
+    private DownloadRequest newRequest(String url, String id, Request.Builder builder) {
+        DownloadRequest.DownloadGenerator generator = DownloadRequest.newRequest(url, null).setId(id);
+        if (builder != null) {
+            generator.setRequestBuilder(builder);
+        }
+        return new DownloadRequest(generator);
+    }
+
+    @Test
+    public void getTransferKey_normalizeUrl() {
+        DownloadRequest request1 = newRequest("http://Example.com:80/a.apk#top", "id1", null);
+        DownloadRequest request2 = newRequest("http://example.com/a.apk", "id2", null);
+        Assert.assertEquals(request1.getTransferKey(), request2.getTransferKey());
+    }
+
+    @Test
+    public void getTransferKey_headers() {
+        String url = "http://example.com/a.apk";
+        DownloadRequest request1 = newRequest(url, "id1",
+                new Request.Builder().addHeader("A", "1").addHeader("B", "2"));
+        DownloadRequest request2 = newRequest(url, "id2",
+                new Request.Builder().addHeader("b", "2").addHeader("a", "1"));
+        DownloadRequest request3 = newRequest(url, "id3",
+                new Request.Builder().addHeader("a", "3"));
+        Assert.assertEquals(request1.getTransferKey(), request2.getTransferKey());
+        Assert.assertNotEquals(request1.getTransferKey(), request3.getTransferKey());
+    }
+
+    @Test
+    public void hasRequestHeaders() {
+        String url = "http://example.com/a.apk";
+        Assert.assertFalse(newRequest(url, "id1", null).hasRequestHeaders());
+        Assert.assertFalse(newRequest(url, "id2", new Request.Builder()).hasRequestHeaders());
+        Assert.assertTrue(newRequest(url, "id3", new Request.Builder().addHeader("Authorization", "a"))
+                .hasRequestHeaders());
+    }
+
+    @Test
+    public void decodeContent() {
+        String url = "http://example.com/a.apk";
+        DownloadRequest request1 = newRequest(url, "id1", null);
+        DownloadRequest request2 = new DownloadRequest(DownloadRequest.newRequest(url, null).setId("id2").decodeContent());
+        Assert.assertNull(request1.getHttpRequestBuilder().build().header("Accept-Encoding"));
+        Assert.assertEquals(ContentDecoder.ACCEPT_ENCODING,
+                request2.getHttpRequestBuilder().build().header("Accept-Encoding"));
+        Assert.assertNotEquals(request1.getTransferKey(), request2.getTransferKey());
+    }
+}
@@ -0,0 +1,28 @@
+package com.huxq17.download.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FairShareSchedulerTest {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void reserve_sharesBandwidthByWeight() {
+        FairShareScheduler scheduler = FairShareScheduler.getInstance();
+        scheduler.setWeight("fair-a", 3);
+        scheduler.setWeight("fair-b", 1);
+        long now = 100 * SECOND;
+        //Alone,fair-a gets the whole bandwidth: 1000 bytes at 1000 B/s after the burst.
+        long delay = scheduler.reserve("fair-a", 1000, 1000, now);
+        Assert.assertEquals(SECOND - SECOND / 10, delay, SECOND / 100);
+
+        long later = 200 * SECOND;
+        scheduler.reserve("fair-a", 0, 1000, later);
+        //Both are busy,fair-b gets a quarter of the bandwidth.
+        delay = scheduler.reserve("fair-b", 250, 1000, later);
+        Assert.assertEquals(SECOND - SECOND / 10, delay, SECOND / 100);
+    }
+}
@@ -0,0 +1,86 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.metrics.DownloadMetrics;
+import com.huxq17.download.core.task.DownloadTask;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class FairShareTaskExecutorTest {
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+    }
+
+    @After
+    public void tearDown() {
+        Pump.newConfigBuilder().build();
+    }
+
+    private DownloadTask newTask(final String id, final CountDownLatch started, final CountDownLatch release) {
+        DownloadTask downloadTask = mock(DownloadTask.class);
+        doReturn(id).when(downloadTask).getId();
+        doReturn(new DownloadRequest(DownloadRequest.newRequest("http://example.com/" + id, null).setId(id)))
+                .when(downloadTask).getRequest();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                long queuedTime = System.nanoTime();
+                DownloadMetrics.getInstance().onStart(id, queuedTime);
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } finally {
+                    DownloadMetrics.getInstance().onEnd(id, DownloadInfo.Status.FINISHED, queuedTime);
+                }
+                return null;
+            }
+        }).when(downloadTask).run();
+        return downloadTask;
+    }
+
+    @Test
+    public void shutdown_dequeuesDroppedTasks() throws Exception {
+        Pump.newConfigBuilder()
+                .setMaxRunningTaskNum(1)
+                .setPrewarmCount(0)
+                .build();
+        DownloadMetrics metrics = DownloadMetrics.getInstance();
+        int queueDepth = metrics.getQueueDepth();
+        FairShareTaskExecutor executor = new FairShareTaskExecutor();
+        executor.init();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                metrics.onQueued();
+                executor.execute(newTask("fair-executor" + i, started, release));
+            }
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            //One runs,two wait for its slot.
+            Assert.assertEquals(queueDepth + 2, metrics.getQueueDepth());
+            executor.shutdown();
+            Assert.assertEquals(queueDepth, metrics.getQueueDepth());
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Message;
 
+import com.huxq17.download.DownloadInfoSnapshot;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,7 +15,11 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -84,6 +90,25 @@ public class MessageCenterTest {
         messageCenter.handleDownloadInfoSnapshot(iterator, snapshot);
     }
 
+    @Test
+    public void handleDownloadInfoSnapshot_pooled() {
+        final DownloadInfo[] received = new DownloadInfo[1];
+        DownloadListener downloadListener = new DownloadListener() {
+            @Override
+            public void onProgress(int progress) {
+                received[0] = getDownloadInfo();
+            }
+        };
+        downloadListener.setId("id1");
+        messageCenter.register(downloadListener);
+        DownloadDetailsInfo downloadDetailsInfo = new DownloadDetailsInfo("url1", null, null, "id1", 0);
+        DownloadInfoSnapshot snapshot = downloadDetailsInfo.obtainSnapshot();
+        messageCenter.handleDownloadInfoSnapshot(messageCenter.getObserverIterator(), snapshot);
+        Assert.assertEquals("id1", received[0].getId());
+        snapshot.recycle();
+        Assert.assertSame(snapshot, DownloadInfoSnapshot.obtain());
+    }
+
     @Test
     public void register() {
         DownloadListener listener1 = spy(DownloadListener.class);
@@ -123,4 +148,61 @@ public class MessageCenterTest {
         Assert.assertEquals(observerSize - 1, messageCenter.getObserverSize());
         Assert.assertFalse(downloadListener.isEnable());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void register_executorConflatesEvents() {
+        Mockito.doReturn(false).when(messageCenter).isShutdown();
+        final List<Runnable> pending = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        };
+        final List<Integer> received = new ArrayList<>();
+        DownloadListener downloadListener = new DownloadListener() {
+            @Override
+            public void onProgress(int progress) {
+                received.add(progress);
+            }
+        };
+        downloadListener.setId("id1");
+        Handler handler = mock(Handler.class);
+        messageCenter.setHandler(handler);
+        messageCenter.register(downloadListener, executor);
+        DownloadDetailsInfo downloadDetailsInfo = new DownloadDetailsInfo("url1", null, null, "id1", 0);
+        for (int progress = 1; progress <= 3; progress++) {
+            downloadDetailsInfo.setProgress(progress);
+            messageCenter.notifyProgressChanged(downloadDetailsInfo);
+        }
+        Assert.assertEquals(1, pending.size());
+        pending.remove(0).run();
+        Assert.assertEquals(Collections.singletonList(3), received);
+        verify(handler, never()).sendMessage(any(Message.class));
+        messageCenter.unRegister("id1");
+        Assert.assertEquals(0, messageCenter.getMailboxSize());
+    }
+
+    @Test
+    public void register_watchedIdsSkipOtherDownloads() {
+        Mockito.doReturn(false).when(messageCenter).isShutdown();
+        final List<String> received = new ArrayList<>();
+        DownloadListener downloadListener = new DownloadListener() {
+            @Override
+            public boolean filter(DownloadInfo downloadInfo) {
+                return true;
+            }
+
+            @Override
+            public void onProgress(int progress) {
+                received.add(getDownloadInfo().getId());
+            }
+        }.setWatchedIds("id1");
+        messageCenter.register(downloadListener, DeliveryExecutors.direct());
+        DownloadDetailsInfo otherInfo = spy(new DownloadDetailsInfo("url2", null, null, "id2", 0));
+        messageCenter.notifyProgressChanged(otherInfo);
+        verify(otherInfo, never()).snapshot();
+        messageCenter.notifyProgressChanged(new DownloadDetailsInfo("url1", null, null, "id1", 0));
+        Assert.assertEquals(Collections.singletonList("id1"), received);
+    }
+}
@@ -0,0 +1,105 @@
+package com.huxq17.download.core;
+
+import com.huxq17.download.utils.MD5Util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import okio.Okio;
+
+@RunWith(RobolectricTestRunner.class)
+public class PatchApplierTest {
+
+    private static void writeOffset(ByteArrayOutputStream out, long value) {
+        long magnitude = Math.abs(value);
+        for (int i = 0; i < 8; i++) {
+            int b = (int) (magnitude >>> (8 * i)) & 0xFF;
+            if (i == 7 && value < 0) {
+                b |= 0x80;
+            }
+            out.write(b);
+        }
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+    }
+
+    @Test
+    public void apply() throws IOException {
+        Random random = new Random(1);
+        byte[] base = new byte[200 * 1024];
+        random.nextBytes(base);
+        byte[] extra = new byte[1000];
+        random.nextBytes(extra);
+        //target = base[0,100K) with a few changed bytes + extra + base[150K,200K)
+        int head = 100 * 1024;
+        int tailStart = 150 * 1024;
+        int tail = base.length - tailStart;
+        byte[] target = new byte[head + extra.length + tail];
+        System.arraycopy(base, 0, target, 0, head);
+        target[10] ^= 1;
+        target[head - 1] ^= 1;
+        System.arraycopy(extra, 0, target, head, extra.length);
+        System.arraycopy(base, tailStart, target, head + extra.length, tail);
+
+        ByteArrayOutputStream ctrl = new ByteArrayOutputStream();
+        writeOffset(ctrl, head);
+        writeOffset(ctrl, extra.length);
+        writeOffset(ctrl, tailStart - head);
+        writeOffset(ctrl, tail);
+        writeOffset(ctrl, 0);
+        writeOffset(ctrl, 0);
+        ByteArrayOutputStream diff = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(diff);
+        for (int i = 0; i < head; i++) {
+            gzipOutputStream.write(target[i] - base[i]);
+        }
+        for (int i = 0; i < tail; i++) {
+            gzipOutputStream.write(target[head + extra.length + i] - base[tailStart + i]);
+        }
+        gzipOutputStream.close();
+
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        patch.write("BSDIFF40".getBytes());
+        writeOffset(patch, ctrl.size());
+        writeOffset(patch, diff.size());
+        writeOffset(patch, target.length);
+        patch.write(ctrl.toByteArray());
+        patch.write(diff.toByteArray());
+        patch.write(extra);
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "patch_applier_test");
+        dir.mkdirs();
+        File baseFile = new File(dir, "base");
+        File patchFile = new File(dir, "patch");
+        File targetFile = new File(dir, "target");
+        File expectedFile = new File(dir, "expected");
+        writeFile(baseFile, base);
+        writeFile(patchFile, patch.toByteArray());
+        writeFile(expectedFile, target);
+
+        Assert.assertTrue(PatchApplier.isPatch(patchFile));
+        Assert.assertFalse(PatchApplier.isPatch(baseFile));
+        Assert.assertTrue(PatchApplier.apply(baseFile, patchFile, targetFile, MD5Util.getMD5(expectedFile)));
+        Assert.assertTrue(Arrays.equals(target, Okio.buffer(Okio.source(targetFile)).readByteArray()));
+
+        Assert.assertFalse(PatchApplier.apply(baseFile, patchFile, targetFile, MD5Util.getMD5(baseFile)));
+        Assert.assertFalse(targetFile.exists());
+        for (File file : new File[]{baseFile, patchFile, expectedFile}) {
+            file.delete();
+        }
+    }
+}
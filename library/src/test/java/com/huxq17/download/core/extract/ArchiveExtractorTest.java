@@ -0,0 +1,159 @@
+package com.huxq17.download.core.extract;
+
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.ExtractListener;
+import com.huxq17.download.utils.FileUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import okio.Okio;
+
+import static com.huxq17.download.utils.Util.DOWNLOAD_PART;
+
+@RunWith(RobolectricTestRunner.class)
+public class ArchiveExtractorTest {
+    private final File dir = new File(System.getProperty("java.io.tmpdir"), "archive_extractor_test");
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(File file, byte[] content, int offset, int length, boolean append) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file, append);
+        fos.write(content, offset, length);
+        fos.close();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Okio.buffer(Okio.source(file)).readByteArray();
+    }
+
+    @Test
+    public void extractZip_whileDownloading() throws Exception {
+        byte[] a = randomBytes(300 * 1024, 1);
+        byte[] b = randomBytes(100 * 1024, 2);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipOutputStream zipOutputStream = new ZipOutputStream(archive);
+        zipOutputStream.putNextEntry(new ZipEntry("a.bin"));
+        zipOutputStream.write(a);
+        zipOutputStream.putNextEntry(new ZipEntry("sub/b.bin"));
+        zipOutputStream.write(b);
+        zipOutputStream.close();
+        byte[] archiveBytes = archive.toByteArray();
+
+        FileUtil.deleteDir(dir);
+        File downloadFile = new File(dir, "bundle.zip");
+        File extractDir = new File(dir, "out");
+        DownloadDetailsInfo downloadInfo = new DownloadDetailsInfo("http://example.com/bundle.zip", downloadFile.getPath());
+        downloadInfo.setThreadNum(2);
+        downloadInfo.setContentLength(archiveBytes.length);
+        File tempDir = downloadInfo.getTempDir();
+        tempDir.mkdirs();
+        int blockSize = archiveBytes.length / 2;
+        File block0 = new File(tempDir, DOWNLOAD_PART + 0);
+        File block1 = new File(tempDir, DOWNLOAD_PART + 1);
+
+        final List<String> entries = new ArrayList<>();
+        final ArchiveExtractor archiveExtractor = new ArchiveExtractor(extractDir, new ExtractListener() {
+            @Override
+            public void onEntryExtracted(String name, File file) {
+                synchronized (entries) {
+                    entries.add(name);
+                    entries.notifyAll();
+                }
+            }
+        });
+        final DownloadPrefixInputStream inputStream = new DownloadPrefixInputStream(downloadInfo);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    archiveExtractor.extract(inputStream);
+                } catch (IOException ignore) {
+                }
+            }
+        });
+        thread.start();
+        //The second block completes first,nothing can be extracted until the first one is written.
+        write(block1, archiveBytes, blockSize, archiveBytes.length - blockSize, false);
+        write(block0, archiveBytes, 0, 10, false);
+        Thread.sleep(300);
+        synchronized (entries) {
+            Assert.assertTrue(entries.isEmpty());
+        }
+        write(block0, archiveBytes, 10, blockSize - 10, true);
+        synchronized (entries) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (entries.size() < 2 && System.currentTimeMillis() < deadline) {
+                entries.wait(100);
+            }
+            Assert.assertEquals(Arrays.asList("a.bin", "sub/b.bin"), entries);
+        }
+
+        write(downloadFile, archiveBytes, 0, archiveBytes.length, false);
+        inputStream.finish(downloadFile);
+        thread.join(5000);
+        archiveExtractor.finish(downloadFile);
+        Assert.assertEquals(2, entries.size());
+        Assert.assertTrue(Arrays.equals(a, read(new File(extractDir, "a.bin"))));
+        Assert.assertTrue(Arrays.equals(b, read(new File(extractDir, "sub/b.bin"))));
+        FileUtil.deleteDir(dir);
+    }
+
+    private static byte[] tarHeader(String name, long size) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes("UTF-8");
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] sizeBytes = String.format("%011o", size).getBytes("UTF-8");
+        System.arraycopy(sizeBytes, 0, header, 124, sizeBytes.length);
+        header[156] = '0';
+        return header;
+    }
+
+    @Test
+    public void extractTarGz_filter() throws IOException {
+        byte[] a = randomBytes(1000, 3);
+        byte[] b = randomBytes(513, 4);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(archive);
+        gzipOutputStream.write(tarHeader("a.txt", a.length));
+        gzipOutputStream.write(a);
+        gzipOutputStream.write(new byte[1024 - a.length]);
+        gzipOutputStream.write(tarHeader("b.bin", b.length));
+        gzipOutputStream.write(b);
+        gzipOutputStream.write(new byte[1024 - b.length]);
+        gzipOutputStream.write(new byte[1024]);
+        gzipOutputStream.close();
+
+        FileUtil.deleteDir(dir);
+        File extractDir = new File(dir, "out");
+        ArchiveExtractor archiveExtractor = new ArchiveExtractor(extractDir, new ExtractListener() {
+            @Override
+            public boolean accept(String name) {
+                return name.endsWith(".bin");
+            }
+        });
+        archiveExtractor.extract(new ByteArrayInputStream(archive.toByteArray()));
+        Assert.assertFalse(new File(extractDir, "a.txt").exists());
+        Assert.assertTrue(Arrays.equals(b, read(new File(extractDir, "b.bin"))));
+        FileUtil.deleteDir(dir);
+    }
+}
@@ -0,0 +1,102 @@
+package com.huxq17.download.core.interceptor;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.ContentCache;
+import com.huxq17.download.core.DownloadListener;
+import com.huxq17.download.db.DBService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectInterceptorTest {
+    private static final String ETAG = "\"small-v1\"";
+    private static final String LAST_MODIFIED = "Mon, 19 Oct 2026 08:00:00 GMT";
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        Pump.newConfigBuilder().setContentCacheSize(1024 * 1024).build();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Pump.shutdown();
+        server.shutdown();
+        Pump.newConfigBuilder().build();
+    }
+
+    @Test
+    public void smallFile_keepsValidators() throws Exception {
+        server.enqueue(new MockResponse()
+                .addHeader("ETag", ETAG)
+                .addHeader("Last-Modified", LAST_MODIFIED)
+                .addHeader("Accept-Ranges", "bytes")
+                .addHeader("Cache-Control", "max-age=60")
+                .setBody(new Buffer().write(new byte[1024])));
+        final AtomicBoolean isSuccess = new AtomicBoolean();
+        final AtomicBoolean isEnded = new AtomicBoolean();
+        DownloadListener listener = new DownloadListener() {
+            @Override
+            public void onSuccess() {
+                isSuccess.set(true);
+                isEnded.set(true);
+            }
+
+            @Override
+            public void onFailed() {
+                isEnded.set(true);
+            }
+        };
+        Pump.subscribe(listener);
+        String url = server.url("/small").toString();
+        File downloadFile = new File(RuntimeEnvironment.application.getCacheDir(), "small_validators");
+        try {
+            Pump.newRequest(url, downloadFile.getAbsolutePath())
+                    .setId("small_validators")
+                    .submit();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!isEnded.get() && System.currentTimeMillis() < deadline) {
+                ShadowLooper.idleMainLooper();
+                Thread.sleep(5);
+            }
+        } finally {
+            Pump.unSubscribe(listener);
+        }
+        Assert.assertTrue(isSuccess.get());
+        Assert.assertEquals(1024, downloadFile.length());
+        DownloadProvider.CacheBean cacheBean = DBService.getInstance().queryCache("small_validators");
+        Assert.assertNotNull(cacheBean);
+        Assert.assertEquals(ETAG, cacheBean.eTag);
+        Assert.assertEquals(LAST_MODIFIED, cacheBean.lastModified);
+        //The content cache is written on the download thread,wait for it.
+        DownloadProvider.ContentCacheBean contentCacheBean = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (contentCacheBean == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            contentCacheBean = ContentCache.getInstance().get(url);
+        }
+        Assert.assertNotNull(contentCacheBean);
+        Assert.assertEquals(ETAG, contentCacheBean.eTag);
+        Assert.assertEquals(LAST_MODIFIED, contentCacheBean.lastModified);
+    }
+}
@@ -0,0 +1,31 @@
+package com.huxq17.download.core.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void getBucket() {
+        Assert.assertEquals(0, Histogram.getBucket(0));
+        Assert.assertEquals(1, Histogram.getBucket(1));
+        Assert.assertEquals(2, Histogram.getBucket(3));
+        Assert.assertEquals(3, Histogram.getBucket(4));
+        Assert.assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void getPercentile() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getPercentile(50));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(15, histogram.getPercentile(50));
+        Assert.assertEquals(1023, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,82 @@
+package com.huxq17.download.core.schedule;
+
+import com.huxq17.download.core.DownloadDetailsInfo;
+import com.huxq17.download.core.task.DownloadTask;
+import com.huxq17.download.utils.Util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class SrptSchedulingPolicyTest {
+    private static final long MILLIS = 1000000L;
+
+    private DownloadTask newTask(long contentLength, long completedSize) {
+        DownloadDetailsInfo downloadInfo = new DownloadDetailsInfo("http://example.com/a.apk", null);
+        downloadInfo.setContentLength(contentLength);
+        downloadInfo.setCompletedSize(completedSize);
+        DownloadTask downloadTask = mock(DownloadTask.class);
+        doReturn(downloadInfo).when(downloadTask).getDownloadInfo();
+        return downloadTask;
+    }
+
+    @Test
+    public void rank_remainingBytesWithAging() {
+        SrptSchedulingPolicy policy = new SrptSchedulingPolicy(1000, 1024);
+        DownloadTask largeTask = newTask(4096 * 1024, 0);
+        DownloadTask smallTask = newTask(1024 * 1024, 512 * 1024);
+        Assert.assertTrue(policy.rank(smallTask, 0) < policy.rank(largeTask, 0));
+        Assert.assertEquals(512 * 1024, policy.rank(smallTask, 0), 0);
+        //The large task has waited 9 aging periods,so it ranks as a tenth of its size.
+        Assert.assertTrue(policy.rank(largeTask, 9000 * MILLIS) < policy.rank(smallTask, 0));
+    }
+
+    @Test
+    public void rank_promotesTaskAfterMaxWaitingTime() {
+        SrptSchedulingPolicy policy = new SrptSchedulingPolicy(1000, 1024);
+        Assert.assertEquals(10000, policy.getMaxWaitingTime());
+        DownloadTask largeTask = newTask(4096 * 1024, 0);
+        DownloadTask tinyTask = newTask(1, 0);
+        //A new tiny task is queued every second,the large task still runs within the max waiting time.
+        long waitingTime = 0;
+        while (policy.rank(largeTask, waitingTime * MILLIS) >= policy.rank(tinyTask, 0)) {
+            waitingTime += 1000;
+            Assert.assertTrue(waitingTime <= policy.getMaxWaitingTime());
+        }
+        Assert.assertEquals(policy.getMaxWaitingTime(), waitingTime);
+        Assert.assertTrue(policy.rank(largeTask, 10000 * MILLIS) < policy.rank(newTask(1, 1), 0));
+        //Promoted tasks run in the order they were queued.
+        Assert.assertTrue(policy.rank(largeTask, 12000 * MILLIS) < policy.rank(tinyTask, 11000 * MILLIS));
+    }
+
+    @Test
+    public void rank_countsResumedBlockFiles() throws IOException {
+        File downloadFile = new File(RuntimeEnvironment.application.getCacheDir(), "srpt/resumed.apk");
+        File tempDir = Util.getTempDir(downloadFile.getAbsolutePath());
+        tempDir.mkdirs();
+        FileOutputStream fos = new FileOutputStream(new File(tempDir, Util.DOWNLOAD_PART + 0));
+        try {
+            fos.write(new byte[768]);
+        } finally {
+            fos.close();
+        }
+        DownloadDetailsInfo downloadInfo = new DownloadDetailsInfo("http://example.com/resumed.apk",
+                downloadFile.getAbsolutePath());
+        downloadInfo.setContentLength(1024);
+        //A queued task starts from zero until it connects.
+        downloadInfo.setCompletedSize(0);
+        DownloadTask downloadTask = mock(DownloadTask.class);
+        doReturn(downloadInfo).when(downloadTask).getDownloadInfo();
+        Assert.assertEquals(256, new SrptSchedulingPolicy(1000, 1024).rank(downloadTask, 0), 0);
+    }
+}
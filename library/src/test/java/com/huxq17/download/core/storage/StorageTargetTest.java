@@ -0,0 +1,165 @@
+package com.huxq17.download.core.storage;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.DownloadListener;
+import com.huxq17.download.utils.FileUtil;
+import com.huxq17.download.utils.Util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageTargetTest {
+
+    private static byte[] fill(int length, int value) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+
+    @Test
+    public void publish_verifiesPositionalWrites() throws IOException {
+        MemoryStorageTarget memoryTarget = new MemoryStorageTarget();
+        memoryTarget.write(1000, fill(500, 2), 0, 500);
+        memoryTarget.write(0, fill(1000, 1), 0, 1000);
+        Assert.assertTrue(FileUtil.publish(memoryTarget, 1500));
+        Assert.assertTrue(memoryTarget.isPublished());
+        byte[] content = memoryTarget.toByteArray();
+        Assert.assertEquals(1500, content.length);
+        Assert.assertEquals(1, content[999]);
+        Assert.assertEquals(2, content[1000]);
+
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "storage");
+        dir.mkdirs();
+        File file = new File(dir, "dest");
+        FileUtil.deleteFile(file);
+        FileStorageTarget fileTarget = new FileStorageTarget(file);
+        fileTarget.write(0, fill(1500, 1), 0, 1500);
+        Assert.assertFalse(file.exists());
+        Assert.assertFalse(FileUtil.publish(fileTarget, 2000));
+        Assert.assertFalse(file.exists());
+
+        fileTarget = new FileStorageTarget(file);
+        fileTarget.write(1000, fill(500, 2), 0, 500);
+        fileTarget.write(0, fill(1000, 1), 0, 1000);
+        Assert.assertTrue(FileUtil.publish(fileTarget, 1500));
+        Assert.assertEquals(1500, file.length());
+        Assert.assertFalse(new File(dir, "dest.pending").exists());
+    }
+
+    @Test
+    public void blockProgress_roundTrip() {
+        File dir = new File(RuntimeEnvironment.application.getCacheDir(), "progress");
+        dir.mkdirs();
+        File progressFile = new File(dir, "DOWNLOAD_PROGRESS-0");
+        FileUtil.deleteFile(progressFile);
+        Assert.assertEquals(0, FileUtil.readBlockProgress(progressFile));
+        Assert.assertTrue(FileUtil.writeBlockProgress(progressFile, 123456789L));
+        Assert.assertEquals(123456789L, FileUtil.readBlockProgress(progressFile));
+        Assert.assertTrue(FileUtil.writeBlockProgress(progressFile, 5));
+        Assert.assertEquals(5, FileUtil.readBlockProgress(progressFile));
+        Assert.assertFalse(FileUtil.writeBlockProgress(new File(new File(dir, "deleted"), "DOWNLOAD_PROGRESS-0"), 1));
+    }
+
+    @Test
+    public void storeTo_writesBlocksInPlace() throws Exception {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        final byte[] content = new byte[300 * 1024];
+        new Random(47).nextBytes(content);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                MockResponse response = new MockResponse()
+                        .addHeader("ETag", "\"47\"")
+                        .addHeader("Accept-Ranges", "bytes");
+                String range = request.getHeader("Range");
+                if (range == null) {
+                    return response.setBody(new Buffer().write(content));
+                }
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(bounds[0]);
+                int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : content.length - 1;
+                return response.setResponseCode(206)
+                        .addHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length)
+                        .setBody(new Buffer().write(content, start, end - start + 1));
+            }
+        });
+        server.start();
+        File downloadFile = new File(RuntimeEnvironment.application.getCacheDir(), "store_to");
+        final File tempDir = Util.getTempDir(downloadFile.getAbsolutePath());
+        final Set<Long> writePositions = Collections.synchronizedSet(new HashSet<Long>());
+        final AtomicBoolean hasBlockFile = new AtomicBoolean();
+        MemoryStorageTarget target = new MemoryStorageTarget() {
+            @Override
+            public synchronized void write(long position, byte[] buffer, int offset, int byteCount) {
+                writePositions.add(position);
+                String[] names = tempDir.list();
+                for (int i = 0; names != null && i < names.length; i++) {
+                    hasBlockFile.compareAndSet(false, names[i].startsWith(Util.DOWNLOAD_PART));
+                }
+                super.write(position, buffer, offset, byteCount);
+            }
+        };
+        final AtomicBoolean isSuccess = new AtomicBoolean();
+        final AtomicBoolean isEnded = new AtomicBoolean();
+        DownloadListener listener = new DownloadListener() {
+            @Override
+            public void onSuccess() {
+                isSuccess.set(true);
+                isEnded.set(true);
+            }
+
+            @Override
+            public void onFailed() {
+                isEnded.set(true);
+            }
+        };
+        Pump.subscribe(listener);
+        try {
+            Pump.newRequest(server.url("/store").toString(), downloadFile.getAbsolutePath())
+                    .setId("store_to")
+                    .threadNum(3)
+                    .storeTo(target)
+                    .submit();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!isEnded.get() && System.currentTimeMillis() < deadline) {
+                ShadowLooper.idleMainLooper();
+                Thread.sleep(5);
+            }
+        } finally {
+            Pump.unSubscribe(listener);
+            Pump.shutdown();
+            server.shutdown();
+        }
+        Assert.assertTrue(isSuccess.get());
+        Assert.assertTrue(target.isPublished());
+        Assert.assertArrayEquals(content, target.toByteArray());
+        //Every block wrote its range in place while downloading,there was no block file to copy from.
+        Assert.assertTrue(writePositions.contains(100 * 1024L));
+        Assert.assertTrue(writePositions.contains(200 * 1024L));
+        Assert.assertFalse(hasBlockFile.get());
+        Assert.assertFalse(downloadFile.exists());
+    }
+}
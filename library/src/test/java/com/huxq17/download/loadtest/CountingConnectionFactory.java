@@ -0,0 +1,33 @@
+package com.huxq17.download.loadtest;
+
+import androidx.annotation.NonNull;
+
+import com.huxq17.download.core.connection.DownloadConnection;
+import com.huxq17.download.core.connection.OkHttpDownloadConnection;
+import com.huxq17.download.utils.OKHttpUtil;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Request;
+
+/**
+ * Counts the bytes Pump reads from the network,including those thrown away by failed attempts.
+ */
+class CountingConnectionFactory implements DownloadConnection.Factory {
+    final AtomicLong bytesReceived = new AtomicLong();
+
+    @Override
+    public DownloadConnection create(@NonNull Request.Builder requestBuilder) {
+        return new OkHttpDownloadConnection(OKHttpUtil.get(), requestBuilder) {
+            @Override
+            public int downloadBuffer(byte[] buffer, int offset, int byteCount) throws IOException {
+                int len = super.downloadBuffer(buffer, offset, byteCount);
+                if (len > 0) {
+                    bytesReceived.addAndGet(len);
+                }
+                return len;
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package com.huxq17.download.loadtest;
+
+import com.huxq17.download.DownloadProvider;
+import com.huxq17.download.Pump;
+import com.huxq17.download.core.DownloadInfo;
+import com.huxq17.download.core.DownloadListener;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Drives hundreds of concurrent downloads against a local server and reports throughput,
+ * time to complete,retries and wasted bytes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DownloadLoadTest {
+    private static final int DOWNLOAD_COUNT = 200;
+    private static final int THREAD_NUM = 3;
+    private static final long TIMEOUT = 120 * 1000;
+    private static final int TRANSFER_WORKER_COUNT = 2;
+    private MockWebServer server;
+    private CountingConnectionFactory connectionFactory;
+    private File downloadDir;
+
+    @Before
+    public void setup() {
+        Robolectric.setupContentProvider(DownloadProvider.class);
+        connectionFactory = new CountingConnectionFactory();
+        Pump.newConfigBuilder()
+                .setMaxRunningTaskNum(16)
+                .setDownloadConnectionFactory(connectionFactory)
+                .build();
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        server = new MockWebServer();
+        downloadDir = new File(RuntimeEnvironment.application.getCacheDir(), "load");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Pump.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void steadyLoad() throws Exception {
+        FaultInjectingDispatcher dispatcher = new FaultInjectingDispatcher(new FaultInjectingDispatcher.Config()
+                .bandwidth(2 * 1024 * 1024)
+                .latency(20), 1);
+        LoadTestReport report = run("steady", dispatcher, 0);
+        Assert.assertEquals(DOWNLOAD_COUNT, report.getSucceeded());
+    }
+
+    @Test
+    public void asyncSteadyLoad() throws Exception {
+        Pump.newConfigBuilder()
+                .setMaxRunningTaskNum(16)
+                .setTransferWorkerCount(TRANSFER_WORKER_COUNT)
+                .setDownloadConnectionFactory(connectionFactory)
+                .build();
+        FaultInjectingDispatcher dispatcher = new FaultInjectingDispatcher(new FaultInjectingDispatcher.Config()
+                .bandwidth(2 * 1024 * 1024)
+                .latency(20), 4);
+        LoadTestReport report = run("async", dispatcher, 0);
+        Assert.assertEquals(DOWNLOAD_COUNT, report.getSucceeded());
+        //48 blocks were running at once,but only the workers,their 4 waiters each and the timer had threads.
+        Assert.assertTrue(report.getTransferThreadsPeak() > 0);
+        Assert.assertTrue(report.getTransferThreadsPeak() <= TRANSFER_WORKER_COUNT * 5 + 1);
+    }
+
+    @Test
+    public void faultInjection() throws Exception {
+        FaultInjectingDispatcher dispatcher = new FaultInjectingDispatcher(new FaultInjectingDispatcher.Config()
+                .bandwidth(2 * 1024 * 1024)
+                .latency(20)
+                .disconnectRate(0.05)
+                .preconditionFailedRate(0.05)
+                .rangeNotSatisfiableRate(0.05), 2);
+        LoadTestReport report = run("faults", dispatcher, 0.1);
+        //Every download must come to an end,the failures are in the report.
+        Assert.assertEquals(DOWNLOAD_COUNT, report.getCompletedCount());
+        Assert.assertTrue(dispatcher.getFaultCount() > 0);
+    }
+
+    @Test
+    public void chunkedWithRange() throws Exception {
+        FaultInjectingDispatcher dispatcher = new FaultInjectingDispatcher(new FaultInjectingDispatcher.Config()
+                .bandwidth(2 * 1024 * 1024)
+                .latency(20)
+                .chunkedRange(true), 3);
+        LoadTestReport report = run("chunked", dispatcher, 1);
+        Assert.assertEquals(DOWNLOAD_COUNT, report.getSucceeded());
+        //The probe found the length,so every download was split into blocks.
+        Assert.assertTrue(dispatcher.requestCount.get() > DOWNLOAD_COUNT * THREAD_NUM);
+    }
+
+    private LoadTestReport run(String name, FaultInjectingDispatcher dispatcher, double chunkedRate) throws Exception {
+        server.setDispatcher(dispatcher);
+        server.start();
+        Random random = new Random(name.hashCode());
+        final LoadTestReport report = new LoadTestReport(name);
+        final Map<String, Long> submitTimes = new ConcurrentHashMap<>();
+        DownloadListener downloadListener = new DownloadListener() {
+            @Override
+            public void onSuccess() {
+                DownloadInfo downloadInfo = getDownloadInfo();
+                Long submitTime = submitTimes.remove(downloadInfo.getId());
+                if (submitTime != null) {
+                    report.onSuccess(System.currentTimeMillis() - submitTime, downloadInfo.getContentLength());
+                }
+            }
+
+            @Override
+            public void onFailed() {
+                DownloadInfo downloadInfo = getDownloadInfo();
+                Long submitTime = submitTimes.remove(downloadInfo.getId());
+                if (submitTime != null) {
+                    report.onFailed(System.currentTimeMillis() - submitTime, String.valueOf(downloadInfo.getErrorCode()));
+                }
+            }
+        };
+        Pump.subscribe(downloadListener);
+        int expectedRequests = 0;
+        for (int i = 0; i < DOWNLOAD_COUNT; i++) {
+            String path = "/" + name + "/" + i;
+            byte[] content = new byte[128 * 1024 + random.nextInt(384 * 1024)];
+            random.nextBytes(content);
+            boolean chunked = random.nextDouble() < chunkedRate;
+            dispatcher.addResource(path, content, chunked);
+            expectedRequests += chunked ? 1 : THREAD_NUM;
+        }
+        for (int i = 0; i < DOWNLOAD_COUNT; i++) {
+            String id = name + i;
+            submitTimes.put(id, System.currentTimeMillis());
+            Pump.newRequest(server.url("/" + name + "/" + i).toString(), new File(downloadDir, id).getAbsolutePath())
+                    .setId(id)
+                    .threadNum(THREAD_NUM)
+                    .setRetry(10, 20)
+                    .submit();
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (report.getCompletedCount() < DOWNLOAD_COUNT && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            report.sampleTransferThreads();
+            Thread.sleep(5);
+        }
+        report.finish();
+        Pump.unSubscribe(downloadListener);
+        System.out.println(report.format(dispatcher, connectionFactory.bytesReceived.get(), expectedRequests));
+        return report;
+    }
+}
@@ -0,0 +1,172 @@
+package com.huxq17.download.loadtest;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * Serves registered resources like a download server,with Range support, limited bandwidth,latency
+ * and randomly injected faults: mid-stream disconnects,412 and 416 responses.
+ */
+public class FaultInjectingDispatcher extends Dispatcher {
+    private static final String LAST_MODIFIED = "Mon, 01 Jun 2020 00:00:00 GMT";
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final Random random;
+    private final Config config;
+
+    final AtomicInteger requestCount = new AtomicInteger();
+    final AtomicInteger disconnectCount = new AtomicInteger();
+    final AtomicInteger preconditionFailedCount = new AtomicInteger();
+    final AtomicInteger rangeNotSatisfiableCount = new AtomicInteger();
+
+    public FaultInjectingDispatcher(Config config, long seed) {
+        this.config = config;
+        this.random = new Random(seed);
+    }
+
+    public void addResource(String path, byte[] content, boolean chunked) {
+        resources.put(path, new Resource(content, chunked));
+    }
+
+    public boolean isChunked(String path) {
+        return resources.get(path).chunked;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        requestCount.incrementAndGet();
+        Resource resource = resources.get(request.getPath());
+        if (resource == null) {
+            return new MockResponse().setResponseCode(404);
+        }
+        String range = request.getHeader("Range");
+        boolean isRangeRequest = range != null && config.supportRange && (!resource.chunked || config.chunkedRange);
+        boolean isConditional = request.getHeader("If-Match") != null
+                || request.getHeader("If-Unmodified-Since") != null;
+        if (isConditional && chance(config.preconditionFailedRate)) {
+            preconditionFailedCount.incrementAndGet();
+            return new MockResponse().setResponseCode(412);
+        }
+        if (isRangeRequest && chance(config.rangeNotSatisfiableRate)) {
+            rangeNotSatisfiableCount.incrementAndGet();
+            return new MockResponse().setResponseCode(416);
+        }
+        byte[] content = resource.content;
+        int start = isRangeRequest ? parseRangeStart(range) : 0;
+        int end = isRangeRequest ? parseRangeEnd(range, content.length) : content.length - 1;
+        if (start >= content.length) {
+            return new MockResponse().setResponseCode(416);
+        }
+        MockResponse response = new MockResponse()
+                .setHeadersDelay(config.latencyMillis, TimeUnit.MILLISECONDS)
+                .addHeader("ETag", "\"" + request.getPath().hashCode() + "\"")
+                .addHeader("Last-Modified", LAST_MODIFIED);
+        if (config.supportRange && !resource.chunked) {
+            response.addHeader("Accept-Ranges", "bytes");
+        }
+        if (isRangeRequest) {
+            response.setResponseCode(206)
+                    .addHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        Buffer body = new Buffer().write(content, start, end + 1 - start);
+        if (resource.chunked) {
+            response.setChunkedBody(body, 16 * 1024);
+        } else {
+            response.setBody(body);
+        }
+        if (config.bytesPerSecond > 0) {
+            response.throttleBody(config.bytesPerSecond / 10, 100, TimeUnit.MILLISECONDS);
+        }
+        if (chance(config.disconnectRate)) {
+            disconnectCount.incrementAndGet();
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    int getFaultCount() {
+        return disconnectCount.get() + preconditionFailedCount.get() + rangeNotSatisfiableCount.get();
+    }
+
+    private int parseRangeStart(String range) {
+        String value = range.substring("bytes=".length());
+        return Integer.parseInt(value.substring(0, value.indexOf('-')));
+    }
+
+    private int parseRangeEnd(String range, int length) {
+        String value = range.substring(range.indexOf('-') + 1);
+        return value.isEmpty() ? length - 1 : Math.min(length - 1, Integer.parseInt(value));
+    }
+
+    private boolean chance(double rate) {
+        synchronized (random) {
+            return rate > 0 && random.nextDouble() < rate;
+        }
+    }
+
+    private static class Resource {
+        final byte[] content;
+        final boolean chunked;
+
+        Resource(byte[] content, boolean chunked) {
+            this.content = content;
+            this.chunked = chunked;
+        }
+    }
+
+    public static class Config {
+        long bytesPerSecond;
+        long latencyMillis;
+        boolean supportRange = true;
+        boolean chunkedRange;
+        double disconnectRate;
+        double preconditionFailedRate;
+        double rangeNotSatisfiableRate;
+
+        public Config bandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Config latency(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        public Config supportRange(boolean supportRange) {
+            this.supportRange = supportRange;
+            return this;
+        }
+
+        /**
+         * Honour range requests of chunked resources too,like a dynamic endpoint.
+         */
+        public Config chunkedRange(boolean chunkedRange) {
+            this.chunkedRange = chunkedRange;
+            return this;
+        }
+
+        public Config disconnectRate(double disconnectRate) {
+            this.disconnectRate = disconnectRate;
+            return this;
+        }
+
+        public Config preconditionFailedRate(double preconditionFailedRate) {
+            this.preconditionFailedRate = preconditionFailedRate;
+            return this;
+        }
+
+        public Config rangeNotSatisfiableRate(double rangeNotSatisfiableRate) {
+            this.rangeNotSatisfiableRate = rangeNotSatisfiableRate;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.huxq17.download.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the result of each download of a load test run and formats the aggregate numbers.
+ */
+class LoadTestReport {
+    private final String name;
+    private final long startTime = System.currentTimeMillis();
+    private long endTime;
+    private final List<Long> completeTimes = new ArrayList<>();
+    private int succeeded;
+    private int failed;
+    private long bytesDownloaded;
+    private final Map<String, Integer> failures = new TreeMap<>();
+    private int transferThreadsPeak;
+
+    LoadTestReport(String name) {
+        this.name = name;
+    }
+
+    synchronized void onSuccess(long completeMillis, long contentLength) {
+        completeTimes.add(completeMillis);
+        succeeded++;
+        bytesDownloaded += contentLength;
+    }
+
+    synchronized void onFailed(long completeMillis, String errorCode) {
+        completeTimes.add(completeMillis);
+        failed++;
+        Integer count = failures.get(errorCode);
+        failures.put(errorCode, count == null ? 1 : count + 1);
+    }
+
+    synchronized int getCompletedCount() {
+        return succeeded + failed;
+    }
+
+    synchronized int getSucceeded() {
+        return succeeded;
+    }
+
+    synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Count the live threads of {@link com.huxq17.download.core.AsyncTransferEngine} and keep the peak.
+     */
+    synchronized void sampleTransferThreads() {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        Thread[] threads = new Thread[group.activeCount() * 2];
+        int count = group.enumerate(threads);
+        int transferThreads = 0;
+        for (int i = 0; i < count; i++) {
+            if (threads[i].getName().startsWith("AsyncTransferEngine-")) {
+                transferThreads++;
+            }
+        }
+        transferThreadsPeak = Math.max(transferThreadsPeak, transferThreads);
+    }
+
+    synchronized int getTransferThreadsPeak() {
+        return transferThreadsPeak;
+    }
+
+    synchronized void finish() {
+        endTime = System.currentTimeMillis();
+    }
+
+    synchronized long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    synchronized long percentile(double percentile) {
+        if (completeTimes.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(completeTimes);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    synchronized String format(FaultInjectingDispatcher dispatcher, long bytesReceived, int expectedRequests) {
+        long elapsed = Math.max(1, endTime - startTime);
+        return String.format(Locale.US, "[%s] %d succeeded,%d failed in %d ms\n"
+                        + "  throughput      %.2f MB/s\n"
+                        + "  time to complete p50=%d ms p99=%d ms\n"
+                        + "  requests        %d (%d retries)\n"
+                        + "  injected faults %d disconnects,%d x 412,%d x 416\n"
+                        + "  bytes wasted    %d\n"
+                        + "  transfer threads peak %d\n"
+                        + "  failures        %s",
+                name, succeeded, failed, elapsed,
+                bytesDownloaded * 1000d / elapsed / 1024 / 1024,
+                percentile(50), percentile(99),
+                dispatcher.requestCount.get(), Math.max(0, dispatcher.requestCount.get() - expectedRequests),
+                dispatcher.disconnectCount.get(), dispatcher.preconditionFailedCount.get(),
+                dispatcher.rangeNotSatisfiableCount.get(),
+                Math.max(0, bytesReceived - bytesDownloaded), transferThreadsPeak, failures);
+    }
+}